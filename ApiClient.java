@@ -0,0 +1,254 @@
+package com.fuellens.application;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Requests against the Maps web services and the pump service, parsed straight from the response stream.
+ *
+ * <p>All instances share one OkHttp client, so connections are pooled and reused across screens and
+ * multiplexed over HTTP/2 where the server offers it. OkHttp asks for gzip and inflates transparently,
+ * and an on-disk HTTP cache answers or revalidates requests according to the server's Cache-Control and
+ * ETag headers. Bodies are never buffered into a String: the parser reads the decompressed stream on the
+ * OkHttp worker thread and only the parsed result is posted to the callback executor. The base URL is a
+ * constructor argument so the client can be pointed at a local mock server.
+ */
+final class ApiClient {
+
+    private static final String TAG = "ApiClient";
+
+    private static final long HTTP_CACHE_BYTES = 10L * 1024 * 1024;
+
+    private static OkHttpClient sharedClient;
+
+    /** Reads a response body; runs on a network thread and may block. */
+    interface BodyParser<T> {
+        T parse(Reader body) throws IOException;
+    }
+
+    /** Reads a whole binary response body; runs on a network thread. */
+    interface BinaryParser<T> {
+        T parse(ByteBuffer body) throws IOException;
+    }
+
+    interface Callback<T> {
+        void onResult(T result);
+
+        void onError(Exception error);
+    }
+
+    interface TimingListener {
+        void onTiming(Timing timing);
+    }
+
+    /** Where a response came from. */
+    enum Source {
+        NETWORK,
+        // Served from the HTTP cache without touching the network
+        CACHE,
+        // Cached body confirmed unchanged by a 304 from the server
+        CONDITIONAL
+    }
+
+    /** Per-request timings in milliseconds. */
+    static final class Timing {
+        final String path;
+        final Source source;
+        final Protocol protocol;
+        // From sending the request to receiving the response headers; 0 for cache hits
+        final long headersMillis;
+        final long parseMillis;
+        final long totalMillis;
+
+        Timing(String path, Source source, Protocol protocol, long headersMillis, long parseMillis,
+               long totalMillis) {
+            this.path = path;
+            this.source = source;
+            this.protocol = protocol;
+            this.headersMillis = headersMillis;
+            this.parseMillis = parseMillis;
+            this.totalMillis = totalMillis;
+        }
+
+        @Override
+        public String toString() {
+            return path + " " + source + " " + protocol + " headers=" + headersMillis + "ms parse="
+                    + parseMillis + "ms total=" + totalMillis + "ms";
+        }
+    }
+
+    private final OkHttpClient client;
+    private final String baseUrl;
+    private final Executor callbackExecutor;
+    private volatile TimingListener timingListener = ApiClient::recordTiming;
+
+    ApiClient(Context context, String baseUrl, Executor callbackExecutor) {
+        this(sharedClient(new File(context.getApplicationContext().getCacheDir(), "http")), baseUrl,
+                callbackExecutor);
+    }
+
+    // For tests and tools that bring their own client, e.g. with a cache in a temporary directory
+    ApiClient(OkHttpClient client, String baseUrl, Executor callbackExecutor) {
+        this.client = client;
+        this.baseUrl = baseUrl;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    // One client per process: a second Cache on the same directory would corrupt the journal
+    private static synchronized OkHttpClient sharedClient(File cacheDir) {
+        if (sharedClient == null) {
+            sharedClient = new OkHttpClient.Builder()
+                    .cache(new Cache(cacheDir, HTTP_CACHE_BYTES))
+                    .connectionPool(new ConnectionPool(5, 5, TimeUnit.MINUTES))
+                    .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                    .connectTimeout(10, TimeUnit.SECONDS)
+                    .readTimeout(15, TimeUnit.SECONDS)
+                    .build();
+        }
+        return sharedClient;
+    }
+
+    void setTimingListener(TimingListener timingListener) {
+        this.timingListener = timingListener;
+    }
+
+    // Default listener: "/maps/api/place/nearbysearch/json" is recorded as "http.nearbysearch.*"
+    private static void recordTiming(Timing timing) {
+        Log.d(TAG, timing.toString());
+        String endpoint = timing.path.endsWith("/json")
+                ? timing.path.substring(0, timing.path.length() - "/json".length()) : timing.path;
+        endpoint = endpoint.substring(endpoint.lastIndexOf('/') + 1);
+
+        PerfMetrics metrics = PerfMetrics.global();
+        metrics.count("http." + endpoint + "." + timing.source.name().toLowerCase(Locale.ROOT));
+        if (timing.source != Source.CACHE) {
+            metrics.record("http." + endpoint + ".headers", timing.headersMillis);
+        }
+        metrics.record("http." + endpoint + ".parse", timing.parseMillis);
+        metrics.record("http." + endpoint + ".total", timing.totalMillis);
+    }
+
+    /**
+     * Fetches {@code baseUrl + pathAndQuery} and parses the body. Non-2xx responses and parse failures are
+     * reported through {@link Callback#onError}; requests cancelled with {@link #cancel} report nothing.
+     */
+    <T> void get(String pathAndQuery, Object tag, BodyParser<T> parser, Callback<T> callback) {
+        Request request = new Request.Builder()
+                .url(baseUrl + pathAndQuery)
+                .tag(tag)
+                .get()
+                .build();
+        enqueue(request, body -> parser.parse(body.charStream()), callback);
+    }
+
+    /**
+     * Like {@link #get(String, Object, BodyParser, Callback)} for a binary format named in the Accept header.
+     * The parser gets a buffer over the body bytes as received, without further copies.
+     */
+    <T> void get(String pathAndQuery, String accept, Object tag, BinaryParser<T> parser, Callback<T> callback) {
+        Request request = new Request.Builder()
+                .url(baseUrl + pathAndQuery)
+                .header("Accept", accept)
+                .tag(tag)
+                .get()
+                .build();
+        enqueue(request, body -> parser.parse(ByteBuffer.wrap(body.bytes())), callback);
+    }
+
+    /** Posts {@code body} to {@code baseUrl + path} and parses the response like {@link #get}. */
+    <T> void post(String path, String contentType, byte[] body, Object tag, BodyParser<T> parser,
+                  Callback<T> callback) {
+        Request request = new Request.Builder()
+                .url(baseUrl + path)
+                .tag(tag)
+                .post(RequestBody.create(body, MediaType.get(contentType)))
+                .build();
+        enqueue(request, response -> parser.parse(response.charStream()), callback);
+    }
+
+    private interface BodyReader<T> {
+        T read(ResponseBody body) throws IOException;
+    }
+
+    private <T> void enqueue(Request request, BodyReader<T> reader, Callback<T> callback) {
+        long startedAt = SystemClock.elapsedRealtime();
+
+        client.newCall(request).enqueue(new okhttp3.Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                if (call.isCanceled()) return;
+                callbackExecutor.execute(() -> callback.onError(e));
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (Response closing = response) {
+                    if (!closing.isSuccessful()) {
+                        throw new IOException("HTTP " + closing.code() + " for " + request.url().encodedPath());
+                    }
+                    ResponseBody body = closing.body();
+                    if (body == null) {
+                        throw new IOException("Empty body for " + request.url().encodedPath());
+                    }
+
+                    long parseStart = SystemClock.elapsedRealtime();
+                    T result = reader.read(body);
+                    long finishedAt = SystemClock.elapsedRealtime();
+                    if (call.isCanceled()) return;
+
+                    timingListener.onTiming(timing(closing, parseStart, finishedAt));
+                    callbackExecutor.execute(() -> callback.onResult(result));
+                } catch (Exception e) {
+                    if (call.isCanceled()) return;
+                    callbackExecutor.execute(() -> callback.onError(e));
+                }
+            }
+
+            private Timing timing(Response response, long parseStart, long finishedAt) {
+                Source source;
+                if (response.networkResponse() == null) {
+                    source = Source.CACHE;
+                } else if (response.cacheResponse() != null) {
+                    source = Source.CONDITIONAL;
+                } else {
+                    source = Source.NETWORK;
+                }
+                long headersMillis = source == Source.CACHE
+                        ? 0 : response.receivedResponseAtMillis() - response.sentRequestAtMillis();
+                return new Timing(request.url().encodedPath(), source, response.protocol(), headersMillis,
+                        finishedAt - parseStart, finishedAt - startedAt);
+            }
+        });
+    }
+
+    /** Cancels every queued or running request with this tag; their callbacks are not invoked. */
+    void cancel(Object tag) {
+        for (Call call : client.dispatcher().queuedCalls()) {
+            if (tag.equals(call.request().tag())) call.cancel();
+        }
+        for (Call call : client.dispatcher().runningCalls()) {
+            if (tag.equals(call.request().tag())) call.cancel();
+        }
+    }
+}
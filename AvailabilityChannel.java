@@ -0,0 +1,20 @@
+package com.fuellens.application;
+
+/**
+ * Transport for live per-pump availability updates. Implementations deliver callbacks on the main thread.
+ */
+interface AvailabilityChannel {
+
+    interface Listener {
+        void onUpdate(FuelAvailability availability);
+
+        void onError(String placeId, Exception error);
+    }
+
+    interface Subscription {
+        void cancel();
+    }
+
+    /** Starts listening to one pump; the current value, if any, is delivered first. */
+    Subscription subscribe(String placeId, Listener listener);
+}
@@ -0,0 +1,166 @@
+package com.fuellens.application;
+
+import android.os.Handler;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Queues an admin's availability edits and writes them to the backend in batches.
+ *
+ * <p>An edit is shown at once, one version above the value it was made on. Edits to a pump that has not
+ * been sent yet merge into a single write. Queued edits go out together, one batch at a time, once no edit
+ * has arrived for {@value #FLUSH_DELAY_MS} ms or a full batch has built up. The backend stores a write only
+ * while its version is newer than the stored one. So when two admins edit the same pump from the same
+ * version, the first write wins and the second gets the stored value back. The editor then shows that
+ * value and drops edits queued on top of its own rejected one. Failed batches are retried with backoff.
+ * Main thread only.
+ */
+final class AvailabilityEditor {
+
+    private static final String TAG = "AvailabilityEditor";
+
+    private static final long FLUSH_DELAY_MS = 300;
+    private static final long MIN_RETRY_DELAY_MS = 1000;
+    private static final long MAX_RETRY_DELAY_MS = 60000;
+
+    interface Listener {
+        /** Show this value for its pump now, whether or not its version is newer than the one shown. */
+        void onShow(FuelAvailability availability);
+
+        /** A batch was stored except for {@code conflicts}, the values other writers stored first. */
+        void onBatchWritten(int written, List<FuelAvailability> conflicts);
+    }
+
+    private final AvailabilityWriter writer;
+    private final Handler handler;
+    private final Function<String, FuelAvailability> shown;
+    private final Listener listener;
+    // Not yet sent, in the order pumps were first edited
+    private LinkedHashMap<String, FuelAvailability> pending = new LinkedHashMap<>();
+    // The batch being written, by place id; null while nothing is in flight
+    private Map<String, FuelAvailability> inFlight;
+    private long retryDelayMs = MIN_RETRY_DELAY_MS;
+    private boolean retryScheduled;
+    private final Runnable flush = this::flush;
+
+    /** {@code shown} returns the value currently on screen for a pump, or null if there is none. */
+    AvailabilityEditor(AvailabilityWriter writer, Handler handler, Function<String, FuelAvailability> shown,
+                       Listener listener) {
+        this.writer = writer;
+        this.handler = handler;
+        this.shown = shown;
+        this.listener = listener;
+    }
+
+    /** Sets one fuel to {@code level} at each pump, keeping the other fuels as shown. */
+    void edit(Collection<String> placeIds, FuelAvailability.Fuel fuel, FuelAvailability.Level level) {
+        long now = System.currentTimeMillis();
+        for (String placeId : placeIds) {
+            FuelAvailability queued = pending.get(placeId);
+            FuelAvailability edited;
+            if (queued != null) {
+                edited = queued.withLevel(fuel, level, queued.version, now);
+            } else {
+                // While an earlier edit is in flight this builds on it, one version further
+                FuelAvailability current = shown.apply(placeId);
+                if (current == null) {
+                    current = new FuelAvailability(placeId, FuelAvailability.Level.UNKNOWN,
+                            FuelAvailability.Level.UNKNOWN, FuelAvailability.Level.UNKNOWN, 0, 0);
+                }
+                edited = current.withLevel(fuel, level, current.version + 1, now);
+            }
+            pending.put(placeId, edited);
+            listener.onShow(edited);
+        }
+
+        // A retry waiting out its backoff takes these edits along
+        if (retryScheduled) return;
+        handler.removeCallbacks(flush);
+        if (pending.size() >= writer.maxBatchSize()) {
+            handler.post(flush);
+        } else {
+            handler.postDelayed(flush, FLUSH_DELAY_MS);
+        }
+    }
+
+    /** Edits not yet confirmed by the backend, including those in flight. */
+    int unsavedCount() {
+        return pending.size() + (inFlight != null ? inFlight.size() : 0);
+    }
+
+    private void flush() {
+        retryScheduled = false;
+        if (inFlight != null || pending.isEmpty()) return;
+
+        List<FuelAvailability> batch = new ArrayList<>(Math.min(pending.size(), writer.maxBatchSize()));
+        Map<String, FuelAvailability> sent = new LinkedHashMap<>();
+        Iterator<FuelAvailability> iterator = pending.values().iterator();
+        while (iterator.hasNext() && batch.size() < writer.maxBatchSize()) {
+            FuelAvailability update = iterator.next();
+            iterator.remove();
+            batch.add(update);
+            sent.put(update.placeId, update);
+        }
+        inFlight = sent;
+        Log.d(TAG, "Writing " + batch.size() + " availability edits");
+
+        writer.write(batch, new AvailabilityWriter.Callback() {
+            @Override
+            public void onResult(List<FuelAvailability> conflicts) {
+                if (inFlight != sent) return;
+                inFlight = null;
+                retryDelayMs = MIN_RETRY_DELAY_MS;
+
+                List<FuelAvailability> lost = new ArrayList<>();
+                for (FuelAvailability held : conflicts) {
+                    // A retried batch finds its own earlier write already stored
+                    if (held.sameState(sent.get(held.placeId))) continue;
+                    lost.add(held);
+                    pending.remove(held.placeId);
+                    listener.onShow(held);
+                }
+                listener.onBatchWritten(sent.size() - lost.size(), lost);
+                if (!pending.isEmpty()) handler.post(flush);
+            }
+
+            @Override
+            public void onError(Exception error) {
+                if (inFlight != sent) return;
+                inFlight = null;
+                requeue(sent);
+                Log.w(TAG, "Availability write failed, retrying in " + retryDelayMs + " ms", error);
+                handler.removeCallbacks(flush);
+                handler.postDelayed(flush, retryDelayMs);
+                retryScheduled = true;
+                retryDelayMs = Math.min(MAX_RETRY_DELAY_MS, retryDelayMs * 2);
+            }
+        });
+    }
+
+    // Puts a failed batch back in front. Later edits of the same pumps keep their levels but take the
+    // failed version, since the one they were built on may never have been stored.
+    private void requeue(Map<String, FuelAvailability> failed) {
+        LinkedHashMap<String, FuelAvailability> merged = new LinkedHashMap<>();
+        for (FuelAvailability update : failed.values()) {
+            FuelAvailability later = pending.remove(update.placeId);
+            if (later == null) {
+                merged.put(update.placeId, update);
+                continue;
+            }
+            FuelAvailability rebased = new FuelAvailability(later.placeId, later.petrol, later.diesel, later.cng,
+                    update.version, later.updatedAt);
+            merged.put(update.placeId, rebased);
+            // The next edit must build on the version that will actually be written
+            listener.onShow(rebased);
+        }
+        merged.putAll(pending);
+        pending = merged;
+    }
+}
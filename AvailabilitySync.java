@@ -0,0 +1,126 @@
+package com.fuellens.application;
+
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps live availability for the pumps currently shown on the map.
+ *
+ * <p>Only pumps passed to {@link #setVisiblePumps} are subscribed; pumps that leave the viewport are
+ * unsubscribed. Incoming updates are de-duplicated by version and buffered, and the listener is called at
+ * most once per frame with everything that changed since the previous frame. Main thread only.
+ */
+final class AvailabilitySync {
+
+    private static final String TAG = "AvailabilitySync";
+
+    interface Listener {
+        void onAvailabilityChanged(Map<String, FuelAvailability> changed);
+    }
+
+    private final AvailabilityChannel channel;
+    private final Choreographer choreographer;
+    private final Listener listener;
+    private final Map<String, AvailabilityChannel.Subscription> subscriptions = new HashMap<>();
+    private final Map<String, FuelAvailability> known = new HashMap<>();
+    private Map<String, FuelAvailability> pending = new HashMap<>();
+    private boolean frameScheduled;
+
+    private final AvailabilityChannel.Listener channelListener = new AvailabilityChannel.Listener() {
+        @Override
+        public void onUpdate(FuelAvailability availability) {
+            // Updates for pumps that already scrolled away are not worth a frame
+            if (subscriptions.containsKey(availability.placeId)) {
+                apply(availability);
+            }
+        }
+
+        @Override
+        public void onError(String placeId, Exception error) {
+            Log.w(TAG, "Availability listener failed for " + placeId, error);
+        }
+    };
+
+    private final Choreographer.FrameCallback flush = this::flush;
+
+    AvailabilitySync(AvailabilityChannel channel, Choreographer choreographer, Listener listener) {
+        this.channel = channel;
+        this.choreographer = choreographer;
+        this.listener = listener;
+    }
+
+    FuelAvailability get(String placeId) {
+        return known.get(placeId);
+    }
+
+    /** Subscribes to newly visible pumps and drops subscriptions for pumps no longer visible. */
+    void setVisiblePumps(Collection<String> placeIds) {
+        Set<String> visible = new HashSet<>(placeIds);
+
+        Iterator<Map.Entry<String, AvailabilityChannel.Subscription>> iterator = subscriptions.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, AvailabilityChannel.Subscription> entry = iterator.next();
+            if (!visible.contains(entry.getKey())) {
+                entry.getValue().cancel();
+                iterator.remove();
+            }
+        }
+
+        for (String placeId : visible) {
+            if (!subscriptions.containsKey(placeId)) {
+                subscriptions.put(placeId, channel.subscribe(placeId, channelListener));
+            }
+        }
+    }
+
+    /** Merges availability loaded from elsewhere, e.g. the offline store, without subscribing. */
+    void seed(Collection<FuelAvailability> availabilities) {
+        for (FuelAvailability availability : availabilities) {
+            apply(availability);
+        }
+    }
+
+    /**
+     * Shows this value whatever its version, e.g. an admin's edit before the backend has it, or the stored
+     * value that replaces such an edit after a conflict. Later updates still need a higher version.
+     */
+    void override(FuelAvailability availability) {
+        known.put(availability.placeId, availability);
+        pending.put(availability.placeId, availability);
+        if (!frameScheduled) {
+            frameScheduled = true;
+            choreographer.postFrameCallback(flush);
+        }
+    }
+
+    void stop() {
+        for (AvailabilityChannel.Subscription subscription : subscriptions.values()) {
+            subscription.cancel();
+        }
+        subscriptions.clear();
+        choreographer.removeFrameCallback(flush);
+        frameScheduled = false;
+        pending.clear();
+    }
+
+    private void flush(long frameTimeNanos) {
+        frameScheduled = false;
+        if (pending.isEmpty()) return;
+        Map<String, FuelAvailability> changed = pending;
+        pending = new HashMap<>();
+        listener.onAvailabilityChanged(changed);
+    }
+
+    private void apply(FuelAvailability availability) {
+        if (availability.isNewerThan(known.get(availability.placeId))) {
+            override(availability);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.fuellens.application;
+
+import java.util.List;
+
+/**
+ * Backend side of admin availability edits. Implementations deliver callbacks on the main thread.
+ */
+interface AvailabilityWriter {
+
+    interface Callback {
+        /**
+         * The batch was applied. Each update was stored unless the backend already held a version at least
+         * as new, in which case that held value is in {@code conflicts}.
+         */
+        void onResult(List<FuelAvailability> conflicts);
+
+        /** Nothing is known about the batch; some of it may have been stored. */
+        void onError(Exception error);
+    }
+
+    /** Most updates {@link #write} accepts at once. */
+    int maxBatchSize();
+
+    /** Stores each update whose version is newer than the backend's, in one request or transaction. */
+    void write(List<FuelAvailability> updates, Callback callback);
+}
@@ -0,0 +1,82 @@
+package com.fuellens.application;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.BitmapDescriptor;
+import com.google.android.gms.maps.model.BitmapDescriptorFactory;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.Marker;
+import com.google.android.gms.maps.model.MarkerOptions;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shows cluster bubbles for groups of stations, reconciled by cluster id like {@link StationMarkerLayer}.
+ * Each marker's tag is its {@link StationClusterer.Cluster} so taps can zoom into the group.
+ */
+final class ClusterMarkerLayer {
+
+    private static final int BUBBLE_SIZE_PX = 96;
+    private static final int BUBBLE_COLOR = 0xFF1976D2;
+
+    private final GoogleMap map;
+    private final MarkerIconRegistry icons;
+    private final Map<Long, Marker> markers = new HashMap<>();
+
+    ClusterMarkerLayer(GoogleMap map, MarkerIconRegistry icons) {
+        this.map = map;
+        this.icons = icons;
+    }
+
+    void render(List<StationClusterer.Cluster<FuelStationInfo>> clusters) {
+        Map<Long, StationClusterer.Cluster<FuelStationInfo>> incoming = new HashMap<>(clusters.size() * 2);
+        for (StationClusterer.Cluster<FuelStationInfo> cluster : clusters) {
+            incoming.put(cluster.id, cluster);
+        }
+
+        Iterator<Map.Entry<Long, Marker>> iterator = markers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Marker> entry = iterator.next();
+            if (!incoming.containsKey(entry.getKey())) {
+                entry.getValue().remove();
+                iterator.remove();
+            }
+        }
+
+        for (StationClusterer.Cluster<FuelStationInfo> cluster : incoming.values()) {
+            LatLng position = new LatLng(cluster.lat, cluster.lng);
+            Marker marker = markers.get(cluster.id);
+            if (marker == null) {
+                marker = map.addMarker(new MarkerOptions()
+                        .position(position)
+                        .anchor(0.5f, 0.5f)
+                        .icon(bubbleFor(cluster.size())));
+                if (marker == null) continue;
+                PerfMetrics.global().count("markers.created");
+                markers.put(cluster.id, marker);
+            } else {
+                Object previous = marker.getTag();
+                marker.setPosition(position);
+                if (!(previous instanceof StationClusterer.Cluster)
+                        || ((StationClusterer.Cluster<?>) previous).size() != cluster.size()) {
+                    marker.setIcon(bubbleFor(cluster.size()));
+                }
+            }
+            marker.setTag(cluster);
+        }
+    }
+
+    private BitmapDescriptor bubbleFor(int count) {
+        BitmapDescriptor bubble = icons.getClusterBubble(count, BUBBLE_SIZE_PX, BUBBLE_COLOR);
+        return bubble != null ? bubble : BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_AZURE);
+    }
+
+    void clear() {
+        for (Marker marker : markers.values()) {
+            marker.remove();
+        }
+        markers.clear();
+    }
+}
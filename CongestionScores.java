@@ -0,0 +1,168 @@
+package com.fuellens.application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Traffic samples per pump and the "effective time to fuel" ranking built from them.
+ *
+ * <p>A sample is a pump's drive time from the user with and without current traffic. The ratio of the
+ * two is how congested the way there is. Samples stay fresh for {@code ttlMillis}. All of them are
+ * dropped once the user is more than {@value #ORIGIN_TOLERANCE_METERS} m from where they were taken.
+ * The effective time to fuel is the drive time in traffic plus a penalty for what is known about the
+ * pump's fuel. A full tank adds nothing, while a low or unknown one adds a few minutes for the likely
+ * queue or wasted trip. Pumps that are out of every fuel they report, or that cannot be reached, rank
+ * last. This class has no Android dependencies. Not thread-safe.
+ */
+final class CongestionScores {
+
+    static final double ORIGIN_TOLERANCE_METERS = 500;
+    // Drive time in traffic over free-flow drive time from which the way counts as slow, then jammed
+    static final double MODERATE_RATIO = 1.25;
+    static final double HEAVY_RATIO = 1.6;
+    static final long LOW_FUEL_PENALTY_SECONDS = 300;
+    static final long UNKNOWN_FUEL_PENALTY_SECONDS = 120;
+    static final long UNREACHABLE = Long.MAX_VALUE;
+
+    enum Congestion {
+        LIGHT("light traffic"),
+        MODERATE("moderate traffic"),
+        HEAVY("heavy traffic");
+
+        final String label;
+
+        Congestion(String label) {
+            this.label = label;
+        }
+    }
+
+    /** Drive times to one pump at one moment; negative times mean no route was found. */
+    static final class Sample {
+        final String placeId;
+        final long driveSeconds;
+        final long trafficSeconds;
+        final long distanceMeters;
+        final long sampledAt;
+
+        Sample(String placeId, long driveSeconds, long trafficSeconds, long distanceMeters, long sampledAt) {
+            this.placeId = placeId;
+            this.driveSeconds = driveSeconds;
+            this.trafficSeconds = trafficSeconds;
+            this.distanceMeters = distanceMeters;
+            this.sampledAt = sampledAt;
+        }
+
+        static Sample unreachable(String placeId, long sampledAt) {
+            return new Sample(placeId, -1, -1, -1, sampledAt);
+        }
+
+        boolean isReachable() {
+            return trafficSeconds >= 0;
+        }
+
+        Congestion congestion() {
+            double ratio = driveSeconds > 0 ? trafficSeconds / (double) driveSeconds : 1;
+            if (ratio >= HEAVY_RATIO) return Congestion.HEAVY;
+            if (ratio >= MODERATE_RATIO) return Congestion.MODERATE;
+            return Congestion.LIGHT;
+        }
+    }
+
+    private final long ttlMillis;
+    private final Map<String, Sample> samples = new HashMap<>();
+    private double originLat = Double.NaN;
+    private double originLng = Double.NaN;
+
+    CongestionScores(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Returns the pumps without a fresh sample for a user at this point, in the given order. Forgets every
+     * sample first if the user has moved away from where they were taken.
+     */
+    List<String> stale(Collection<String> placeIds, double lat, double lng, long now) {
+        if (!isNearOrigin(lat, lng)) {
+            samples.clear();
+            originLat = lat;
+            originLng = lng;
+        }
+        List<String> stale = new ArrayList<>();
+        for (String placeId : placeIds) {
+            if (get(placeId, now) == null) stale.add(placeId);
+        }
+        return stale;
+    }
+
+    /** Stores samples taken from this point, unless the user has moved away from it meanwhile. */
+    void put(double lat, double lng, Collection<Sample> fresh) {
+        if (Double.isNaN(originLat)) {
+            originLat = lat;
+            originLng = lng;
+        } else if (!isNearOrigin(lat, lng)) {
+            return;
+        }
+        for (Sample sample : fresh) {
+            samples.put(sample.placeId, sample);
+        }
+    }
+
+    /** The pump's sample if it is still fresh, otherwise null. */
+    Sample get(String placeId, long now) {
+        Sample sample = samples.get(placeId);
+        return sample != null && now - sample.sampledAt < ttlMillis ? sample : null;
+    }
+
+    /** Drive time in traffic plus the fuel penalty, or {@link #UNREACHABLE}. */
+    static long effectiveSeconds(Sample sample, FuelAvailability availability) {
+        if (!sample.isReachable()) return UNREACHABLE;
+        switch (availability != null ? availability.best() : FuelAvailability.Level.UNKNOWN) {
+            case FULL:
+                return sample.trafficSeconds;
+            case LOW:
+                return sample.trafficSeconds + LOW_FUEL_PENALTY_SECONDS;
+            case EMPTY:
+                return UNREACHABLE;
+            default:
+                return sample.trafficSeconds + UNKNOWN_FUEL_PENALTY_SECONDS;
+        }
+    }
+
+    /**
+     * Orders the pumps that have a fresh sample by effective time to fuel, fastest first. Pumps without one
+     * are left out. Ties keep the given order.
+     */
+    List<String> rank(Collection<String> placeIds, Function<String, FuelAvailability> availability, long now) {
+        List<String> ranked = new ArrayList<>(placeIds.size());
+        List<Long> keys = new ArrayList<>(placeIds.size());
+        for (String placeId : placeIds) {
+            Sample sample = get(placeId, now);
+            if (sample != null) {
+                ranked.add(placeId);
+                keys.add(effectiveSeconds(sample, availability.apply(placeId)));
+            }
+        }
+        Integer[] order = new Integer[ranked.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(keys::get));
+
+        List<String> sorted = new ArrayList<>(order.length);
+        for (int i : order) {
+            sorted.add(ranked.get(i));
+        }
+        return sorted;
+    }
+
+    private boolean isNearOrigin(double lat, double lng) {
+        return !Double.isNaN(originLat)
+                && GeoUtils.distanceMeters(originLat, originLng, lat, lng) <= ORIGIN_TOLERANCE_METERS;
+    }
+}
@@ -0,0 +1,109 @@
+package com.fuellens.application;
+
+import android.os.Handler;
+import android.util.Log;
+
+import com.google.android.gms.maps.model.LatLng;
+
+/**
+ * Coalesces nearby-search triggers so only the latest one reaches the network and the map.
+ *
+ * <p>Requests made within the debounce window replace each other and only the last one fires. A fetch
+ * for practically the same point as the one already in flight is dropped, and a fetch for a new point
+ * cancels the superseded one through its token. Callers render a result only while
+ * {@link #isLatest(Object)} holds for its token, so a slow response can never overwrite a newer one.
+ * All methods must be called on the handler's thread.
+ */
+final class FetchScheduler {
+
+    private static final String TAG = "FetchScheduler";
+
+    /** Starts a fetch tagged with the given token. */
+    interface Fetcher {
+        void fetch(LatLng target, Object token);
+    }
+
+    /** Cancels whatever work was started for a token. */
+    interface Canceller {
+        void cancel(Object token);
+    }
+
+    private final Handler handler;
+    private final long debounceMs;
+    private final double dedupeMeters;
+    private final Fetcher fetcher;
+    private final Canceller canceller;
+    private final Runnable firePending = this::firePending;
+
+    private LatLng pendingTarget;
+    private LatLng inFlightTarget;
+    private Object inFlightToken;
+    private Object latestToken;
+    private int sequence;
+
+    FetchScheduler(Handler handler, long debounceMs, double dedupeMeters, Fetcher fetcher, Canceller canceller) {
+        this.handler = handler;
+        this.debounceMs = debounceMs;
+        this.dedupeMeters = dedupeMeters;
+        this.fetcher = fetcher;
+        this.canceller = canceller;
+    }
+
+    /** Schedules a fetch after the debounce window, replacing any fetch still waiting in it. */
+    void request(LatLng target) {
+        pendingTarget = target;
+        handler.removeCallbacks(firePending);
+        handler.postDelayed(firePending, debounceMs);
+    }
+
+    /** Fetches right away, dropping anything waiting in the debounce window. */
+    void requestNow(LatLng target) {
+        handler.removeCallbacks(firePending);
+        pendingTarget = target;
+        firePending();
+    }
+
+    boolean isLatest(Object token) {
+        return token == latestToken;
+    }
+
+    /** Marks the fetch for this token as finished, successfully or not. */
+    void complete(Object token) {
+        if (token == inFlightToken) {
+            inFlightToken = null;
+            inFlightTarget = null;
+        }
+    }
+
+    void cancelAll() {
+        handler.removeCallbacks(firePending);
+        pendingTarget = null;
+        if (inFlightToken != null) {
+            canceller.cancel(inFlightToken);
+        }
+        inFlightToken = null;
+        inFlightTarget = null;
+        latestToken = null;
+    }
+
+    private void firePending() {
+        LatLng target = pendingTarget;
+        pendingTarget = null;
+        if (target == null) return;
+
+        if (inFlightToken != null) {
+            if (GeoUtils.distanceMeters(inFlightTarget.latitude, inFlightTarget.longitude,
+                    target.latitude, target.longitude) <= dedupeMeters) {
+                Log.d(TAG, "Dropping duplicate fetch, one for the same area is in flight");
+                return;
+            }
+            canceller.cancel(inFlightToken);
+        }
+
+        Object token = TAG + "#" + (++sequence);
+        inFlightToken = token;
+        inFlightTarget = target;
+        latestToken = token;
+        fetcher.fetch(target, token);
+    }
+}
@@ -0,0 +1,71 @@
+package com.fuellens.application;
+
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * {@link AvailabilityChannel} backed by one Firestore document per pump in {@value #COLLECTION}, keyed by
+ * place id. Each document listener only fires when that pump changes, so visible pumps receive their own
+ * deltas rather than a snapshot of the whole area. Firestore is only obtained from the supplier on the
+ * first subscription, keeping its start-up cost off app launch. For local testing the supplier can return
+ * an instance pointed at the emulator with {@code useEmulator("10.0.2.2", 8080)}.
+ */
+final class FirestoreAvailabilityChannel implements AvailabilityChannel {
+
+    static final String COLLECTION = "pump_availability";
+
+    static final String FIELD_PETROL = "petrol";
+    static final String FIELD_DIESEL = "diesel";
+    static final String FIELD_CNG = "cng";
+    static final String FIELD_VERSION = "version";
+    static final String FIELD_UPDATED_AT = "updatedAt";
+
+    private final Supplier<FirebaseFirestore> firestoreSupplier;
+    private FirebaseFirestore firestore;
+
+    FirestoreAvailabilityChannel(Supplier<FirebaseFirestore> firestoreSupplier) {
+        this.firestoreSupplier = firestoreSupplier;
+    }
+
+    @Override
+    public Subscription subscribe(String placeId, Listener listener) {
+        if (firestore == null) {
+            firestore = firestoreSupplier.get();
+        }
+        ListenerRegistration registration = firestore.collection(COLLECTION).document(placeId)
+                .addSnapshotListener((snapshot, error) -> {
+                    if (error != null) {
+                        listener.onError(placeId, error);
+                    } else if (snapshot != null && snapshot.exists()) {
+                        listener.onUpdate(fromSnapshot(snapshot));
+                    }
+                });
+        return registration::remove;
+    }
+
+    static FuelAvailability fromSnapshot(DocumentSnapshot snapshot) {
+        Long version = snapshot.getLong(FIELD_VERSION);
+        Long updatedAt = snapshot.getLong(FIELD_UPDATED_AT);
+        return new FuelAvailability(snapshot.getId(),
+                FuelAvailability.Level.parse(snapshot.getString(FIELD_PETROL)),
+                FuelAvailability.Level.parse(snapshot.getString(FIELD_DIESEL)),
+                FuelAvailability.Level.parse(snapshot.getString(FIELD_CNG)),
+                version != null ? version : 0,
+                updatedAt != null ? updatedAt : 0);
+    }
+
+    static Map<String, Object> toFields(FuelAvailability availability) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put(FIELD_PETROL, availability.petrol.name());
+        fields.put(FIELD_DIESEL, availability.diesel.name());
+        fields.put(FIELD_CNG, availability.cng.name());
+        fields.put(FIELD_VERSION, availability.version);
+        fields.put(FIELD_UPDATED_AT, availability.updatedAt);
+        return fields;
+    }
+}
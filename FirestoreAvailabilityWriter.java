@@ -0,0 +1,63 @@
+package com.fuellens.application;
+
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * {@link AvailabilityWriter} for the documents {@link FirestoreAvailabilityChannel} listens to. Each batch
+ * runs as one transaction: every document is read first, and only those whose stored version is older than
+ * the update are written. Firestore retries the transaction if another writer touches one of the
+ * documents meanwhile, so the version check and the write cannot interleave with a concurrent admin.
+ */
+final class FirestoreAvailabilityWriter implements AvailabilityWriter {
+
+    // Firestore's limit on writes in one transaction
+    private static final int MAX_BATCH = 500;
+
+    private final Supplier<FirebaseFirestore> firestoreSupplier;
+    private FirebaseFirestore firestore;
+
+    FirestoreAvailabilityWriter(Supplier<FirebaseFirestore> firestoreSupplier) {
+        this.firestoreSupplier = firestoreSupplier;
+    }
+
+    @Override
+    public int maxBatchSize() {
+        return MAX_BATCH;
+    }
+
+    @Override
+    public void write(List<FuelAvailability> updates, Callback callback) {
+        if (firestore == null) {
+            firestore = firestoreSupplier.get();
+        }
+        CollectionReference collection = firestore.collection(FirestoreAvailabilityChannel.COLLECTION);
+        firestore.<List<FuelAvailability>>runTransaction(transaction -> {
+            // Transactions need all reads before the first write
+            List<DocumentSnapshot> held = new ArrayList<>(updates.size());
+            for (FuelAvailability update : updates) {
+                held.add(transaction.get(collection.document(update.placeId)));
+            }
+
+            List<FuelAvailability> conflicts = new ArrayList<>();
+            for (int i = 0; i < updates.size(); i++) {
+                FuelAvailability update = updates.get(i);
+                DocumentSnapshot snapshot = held.get(i);
+                if (snapshot.exists()) {
+                    FuelAvailability current = FirestoreAvailabilityChannel.fromSnapshot(snapshot);
+                    if (!update.isNewerThan(current)) {
+                        conflicts.add(current);
+                        continue;
+                    }
+                }
+                transaction.set(collection.document(update.placeId), FirestoreAvailabilityChannel.toFields(update));
+            }
+            return conflicts;
+        }).addOnSuccessListener(callback::onResult).addOnFailureListener(callback::onError);
+    }
+}
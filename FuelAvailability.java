@@ -0,0 +1,147 @@
+package com.fuellens.application;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable Petrol/Diesel/CNG availability of one pump at a given version.
+ * Versions only grow, so a snapshot with a lower version than the one already held is stale. Version 0
+ * means the document was written without one.
+ */
+public final class FuelAvailability {
+
+    enum Level {
+        UNKNOWN("—"),
+        EMPTY("Empty"),
+        LOW("Low"),
+        FULL("Full");
+
+        final String label;
+
+        Level(String label) {
+            this.label = label;
+        }
+
+        // Lenient parse for backend values; anything unrecognised is treated as unknown
+        static Level parse(String value) {
+            if (value == null) return UNKNOWN;
+            switch (value.toUpperCase(Locale.ROOT)) {
+                case "EMPTY":
+                    return EMPTY;
+                case "LOW":
+                    return LOW;
+                case "FULL":
+                    return FULL;
+                default:
+                    return UNKNOWN;
+            }
+        }
+    }
+
+    enum Fuel {
+        PETROL("Petrol"),
+        DIESEL("Diesel"),
+        CNG("CNG");
+
+        final String label;
+
+        Fuel(String label) {
+            this.label = label;
+        }
+    }
+
+    static final int BADGE_NONE = 0;
+    static final int BADGE_AVAILABLE = 0xFF2E7D32;
+    static final int BADGE_LOW = 0xFFF9A825;
+    static final int BADGE_EMPTY = 0xFFC62828;
+
+    final String placeId;
+    final Level petrol;
+    final Level diesel;
+    final Level cng;
+    final long version;
+    final long updatedAt;
+
+    FuelAvailability(String placeId, Level petrol, Level diesel, Level cng, long version, long updatedAt) {
+        this.placeId = placeId;
+        this.petrol = petrol;
+        this.diesel = diesel;
+        this.cng = cng;
+        this.version = version;
+        this.updatedAt = updatedAt;
+    }
+
+    /** A copy with one fuel set to {@code level}, at the given version and time. */
+    FuelAvailability withLevel(Fuel fuel, Level level, long version, long updatedAt) {
+        return new FuelAvailability(placeId, fuel == Fuel.PETROL ? level : petrol,
+                fuel == Fuel.DIESEL ? level : diesel, fuel == Fuel.CNG ? level : cng, version, updatedAt);
+    }
+
+    /** Same levels and version, ignoring when each was written. */
+    boolean sameState(FuelAvailability other) {
+        return other != null && placeId.equals(other.placeId) && version == other.version
+                && petrol == other.petrol && diesel == other.diesel && cng == other.cng;
+    }
+
+    /**
+     * Whether this snapshot should replace {@code other}. Versions decide when both have one. Documents
+     * written without a version (0) are ordered by {@code updatedAt} instead, and when that is missing too
+     * any change of levels counts as newer, so such pumps still update.
+     */
+    boolean isNewerThan(FuelAvailability other) {
+        if (other == null) return true;
+        if (version > 0 && other.version > 0) return version > other.version;
+        if (updatedAt > 0 && other.updatedAt > 0) return updatedAt > other.updatedAt;
+        return !sameState(other);
+    }
+
+    /**
+     * Those of {@code incoming} that should replace what {@code held} has for their pump, by
+     * {@link #isNewerThan}. {@code held} is updated with each of them, so later snapshots of a pump in the
+     * same batch are compared with earlier ones.
+     */
+    static List<FuelAvailability> keepNewer(Collection<FuelAvailability> incoming,
+                                            Map<String, FuelAvailability> held) {
+        List<FuelAvailability> newer = new ArrayList<>();
+        for (FuelAvailability availability : incoming) {
+            if (availability.isNewerThan(held.get(availability.placeId))) {
+                held.put(availability.placeId, availability);
+                newer.add(availability);
+            }
+        }
+        return newer;
+    }
+
+    /** The best level across all fuels; EMPTY means every known fuel is out. */
+    Level best() {
+        Level best = Level.UNKNOWN;
+        for (Level level : new Level[]{petrol, diesel, cng}) {
+            if (level.ordinal() > best.ordinal()) best = level;
+        }
+        return best;
+    }
+
+    /**
+     * Colour of the marker status badge: green while any fuel is full, amber when the best level is low,
+     * red when every known fuel is empty, and no badge when nothing is known.
+     */
+    int badgeColor() {
+        switch (best()) {
+            case FULL:
+                return BADGE_AVAILABLE;
+            case LOW:
+                return BADGE_LOW;
+            case EMPTY:
+                return BADGE_EMPTY;
+            default:
+                return BADGE_NONE;
+        }
+    }
+
+    String summary() {
+        return "Petrol: " + petrol.label + " · Diesel: " + diesel.label + " · CNG: " + cng.label;
+    }
+}
@@ -0,0 +1,54 @@
+package com.fuellens.application;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import java.util.Objects;
+
+/**
+ * Immutable details of a single fuel station returned by the Places API.
+ * Coordinates are kept as plain doubles so the caching and search code does not depend on the Maps SDK.
+ */
+public final class FuelStationInfo {
+
+    final String placeId;
+    final String name;
+    final String vicinity;
+    final double rating;
+    final int userRatingsTotal;
+    final double lat;
+    final double lng;
+
+    FuelStationInfo(String placeId, String name, String vicinity, double rating, int userRatingsTotal,
+                    double lat, double lng) {
+        this.placeId = placeId;
+        this.name = name;
+        this.vicinity = vicinity;
+        this.rating = rating;
+        this.userRatingsTotal = userRatingsTotal;
+        this.lat = lat;
+        this.lng = lng;
+    }
+
+    LatLng toLatLng() {
+        return new LatLng(lat, lng);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof FuelStationInfo)) return false;
+        FuelStationInfo other = (FuelStationInfo) o;
+        return Double.compare(rating, other.rating) == 0
+                && userRatingsTotal == other.userRatingsTotal
+                && Double.compare(lat, other.lat) == 0
+                && Double.compare(lng, other.lng) == 0
+                && Objects.equals(placeId, other.placeId)
+                && Objects.equals(name, other.name)
+                && Objects.equals(vicinity, other.vicinity);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(placeId, name, vicinity, rating, userRatingsTotal, lat, lng);
+    }
+}
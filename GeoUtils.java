@@ -0,0 +1,166 @@
+package com.fuellens.application;
+
+import java.util.Arrays;
+
+/**
+ * Distance, tiling and projection helpers shared by the station cache, search and map code.
+ * Tiles are fixed 0.01 degree cells (roughly 1.1 km north-south) addressed by a packed long key.
+ */
+final class GeoUtils {
+
+    static final double TILE_SIZE_DEGREES = 0.01;
+
+    static final double EARTH_RADIUS_METERS = 6371000.0;
+
+    private GeoUtils() {
+    }
+
+    // Great-circle distance between two coordinates using the haversine formula
+    static double distanceMeters(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
+    // Initial bearing in degrees clockwise from north for the great circle from point 1 to point 2
+    static double bearingDegrees(double lat1, double lng1, double lat2, double lng2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double y = Math.sin(dLng) * Math.cos(phi2);
+        double x = Math.cos(phi1) * Math.sin(phi2) - Math.sin(phi1) * Math.cos(phi2) * Math.cos(dLng);
+        return (Math.toDegrees(Math.atan2(y, x)) + 360) % 360;
+    }
+
+    /** The point {@code meters} away along the given bearing, as {lat, lng}. */
+    static double[] offset(double lat, double lng, double bearingDegrees, double meters) {
+        double angular = meters / EARTH_RADIUS_METERS;
+        double bearing = Math.toRadians(bearingDegrees);
+        double phi1 = Math.toRadians(lat);
+        double phi2 = Math.asin(Math.sin(phi1) * Math.cos(angular)
+                + Math.cos(phi1) * Math.sin(angular) * Math.cos(bearing));
+        double lambda = Math.toRadians(lng) + Math.atan2(Math.sin(bearing) * Math.sin(angular) * Math.cos(phi1),
+                Math.cos(angular) - Math.sin(phi1) * Math.sin(phi2));
+        double wrappedLng = (Math.toDegrees(lambda) + 540) % 360 - 180;
+        return new double[]{Math.toDegrees(phi2), wrappedLng};
+    }
+
+    static int tileRow(double lat) {
+        return (int) Math.floor(lat / TILE_SIZE_DEGREES);
+    }
+
+    static int tileColumn(double lng) {
+        return (int) Math.floor(lng / TILE_SIZE_DEGREES);
+    }
+
+    static long tileKey(int row, int column) {
+        return ((long) row << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    static long tileKey(double lat, double lng) {
+        return tileKey(tileRow(lat), tileColumn(lng));
+    }
+
+    static double tileCenterLat(long key) {
+        return ((int) (key >> 32) + 0.5) * TILE_SIZE_DEGREES;
+    }
+
+    static double tileCenterLng(long key) {
+        return ((int) key + 0.5) * TILE_SIZE_DEGREES;
+    }
+
+    /**
+     * Returns {south, west, north, east} of a box containing the given circle, padded by 1% so rounding
+     * never leaves part of the circle outside it.
+     */
+    static double[] boundingBox(double lat, double lng, double radiusMeters) {
+        double latSpan = Math.toDegrees(radiusMeters / EARTH_RADIUS_METERS) * 1.01;
+        // Measured at the edge nearest the pole, where a degree of longitude is shortest
+        double widestLat = Math.min(89.0, Math.abs(lat) + latSpan);
+        double lngSpan = latSpan / Math.cos(Math.toRadians(widestLat));
+        return new double[]{lat - latSpan, lng - lngSpan, lat + latSpan, lng + lngSpan};
+    }
+
+    /**
+     * Returns the keys of every tile that can contain a point within the radius: the tiles overlapping the
+     * circle's bounding box, less those whose nearest point is clearly out of reach.
+     */
+    static long[] tilesIntersecting(double lat, double lng, double radiusMeters) {
+        double[] box = boundingBox(lat, lng, radiusMeters);
+        int minRow = tileRow(box[0]);
+        int maxRow = tileRow(box[2]);
+        int minColumn = tileColumn(box[1]);
+        int maxColumn = tileColumn(box[3]);
+
+        long[] keys = new long[(maxRow - minRow + 1) * (maxColumn - minColumn + 1)];
+        int count = 0;
+        for (int row = minRow; row <= maxRow; row++) {
+            double nearestLat = Math.max(row * TILE_SIZE_DEGREES, Math.min(lat, (row + 1) * TILE_SIZE_DEGREES));
+            for (int column = minColumn; column <= maxColumn; column++) {
+                double nearestLng = Math.max(column * TILE_SIZE_DEGREES,
+                        Math.min(lng, (column + 1) * TILE_SIZE_DEGREES));
+                // Same 1% slack as the box, so a tile the circle only grazes is kept
+                if (distanceMeters(lat, lng, nearestLat, nearestLng) <= radiusMeters * 1.01) {
+                    keys[count++] = tileKey(row, column);
+                }
+            }
+        }
+        return Arrays.copyOf(keys, count);
+    }
+
+    /**
+     * Returns the keys of every tile lying entirely inside the given circle. A search of that circle has
+     * seen all of such a tile, so only these can be cached as complete; tiles on the edge are only partly
+     * searched.
+     */
+    static long[] tilesCovering(double lat, double lng, double radiusMeters) {
+        long[] keys = tilesIntersecting(lat, lng, radiusMeters);
+        int count = 0;
+        for (long key : keys) {
+            if (tileWithin(key, lat, lng, radiusMeters)) {
+                keys[count++] = key;
+            }
+        }
+        return Arrays.copyOf(keys, count);
+    }
+
+    static boolean tileWithin(long key, double lat, double lng, double radiusMeters) {
+        double south = (int) (key >> 32) * TILE_SIZE_DEGREES;
+        double west = (int) key * TILE_SIZE_DEGREES;
+        return boxWithin(south, west, south + TILE_SIZE_DEGREES, west + TILE_SIZE_DEGREES, lat, lng, radiusMeters);
+    }
+
+    /**
+     * Whether a box lies entirely inside the circle, tested at its corners. The circle is convex and a box
+     * no larger than a tile is too small for its edges to bow out measurably between corners.
+     */
+    static boolean boxWithin(double south, double west, double north, double east,
+                             double lat, double lng, double radiusMeters) {
+        return distanceMeters(lat, lng, south, west) <= radiusMeters
+                && distanceMeters(lat, lng, south, east) <= radiusMeters
+                && distanceMeters(lat, lng, north, west) <= radiusMeters
+                && distanceMeters(lat, lng, north, east) <= radiusMeters;
+    }
+
+    // Normalised Web Mercator coordinates: both axes run from 0 to 1, y growing southwards
+    static double mercatorX(double lng) {
+        return (lng + 180.0) / 360.0;
+    }
+
+    static double mercatorY(double lat) {
+        double clamped = Math.max(-85.05112878, Math.min(85.05112878, lat));
+        double sin = Math.sin(Math.toRadians(clamped));
+        return 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+    }
+
+    static double longitude(double x) {
+        return x * 360.0 - 180.0;
+    }
+
+    static double latitude(double y) {
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * y))));
+    }
+}
@@ -0,0 +1,144 @@
+package com.fuellens.application;
+
+import android.annotation.SuppressLint;
+import android.location.Location;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.Priority;
+import com.google.android.gms.maps.model.LatLng;
+
+/**
+ * Owns the app's one location subscription and tunes it to what the user is doing.
+ *
+ * <p>A standing user gets infrequent balanced-power fixes, a moving one more frequent balanced fixes, and
+ * GPS-grade high accuracy is only used while a route is being navigated. The request is only re-issued
+ * when that mode changes. Fixes are always reported, but a station re-fetch is only asked for once the
+ * user has left the area the last fetch covered. Main thread only.
+ */
+final class LocationTracker {
+
+    private static final String TAG = "LocationTracker";
+
+    // Above ~7 km/h the user is treated as driving rather than standing at a pump
+    private static final float MOVING_SPEED_MPS = 2f;
+
+    interface Listener {
+        /** Every accepted fix. {@code refetch} is set when it is far enough from the last fetch centre. */
+        void onLocation(Location location, LatLng latLng, boolean refetch);
+    }
+
+    enum Mode {
+        STATIONARY(Priority.PRIORITY_BALANCED_POWER_ACCURACY, 60_000, 30_000, 50f),
+        MOVING(Priority.PRIORITY_BALANCED_POWER_ACCURACY, 15_000, 10_000, 25f),
+        NAVIGATING(Priority.PRIORITY_HIGH_ACCURACY, 5_000, 2_000, 10f);
+
+        final int priority;
+        final long intervalMs;
+        final long fastestIntervalMs;
+        final float smallestDisplacementMeters;
+
+        Mode(int priority, long intervalMs, long fastestIntervalMs, float smallestDisplacementMeters) {
+            this.priority = priority;
+            this.intervalMs = intervalMs;
+            this.fastestIntervalMs = fastestIntervalMs;
+            this.smallestDisplacementMeters = smallestDisplacementMeters;
+        }
+
+        LocationRequest toRequest() {
+            return LocationRequest.create()
+                    .setPriority(priority)
+                    .setInterval(intervalMs)
+                    .setFastestInterval(fastestIntervalMs)
+                    .setSmallestDisplacement(smallestDisplacementMeters);
+        }
+    }
+
+    private final FusedLocationProviderClient client;
+    private final Looper looper;
+    private final double refetchDistanceMeters;
+    private final Listener listener;
+
+    private final LocationCallback callback = new LocationCallback() {
+        @Override
+        public void onLocationResult(@NonNull LocationResult result) {
+            Location location = result.getLastLocation();
+            if (location != null) {
+                onFix(location);
+            }
+        }
+    };
+
+    private boolean active;
+    private boolean navigating;
+    private Mode mode = Mode.STATIONARY;
+    private LatLng fetchCenter;
+
+    LocationTracker(FusedLocationProviderClient client, Looper looper, double refetchDistanceMeters,
+                    Listener listener) {
+        this.client = client;
+        this.looper = looper;
+        this.refetchDistanceMeters = refetchDistanceMeters;
+        this.listener = listener;
+    }
+
+    /** The request the tracker would use right now, e.g. for a location settings check. */
+    LocationRequest currentRequest() {
+        return mode.toRequest();
+    }
+
+    /** Registers the callback; calling it again while active is a no-op. Needs a location permission. */
+    @SuppressLint("MissingPermission")
+    void start() {
+        if (active) return;
+        active = true;
+        client.requestLocationUpdates(mode.toRequest(), callback, looper);
+    }
+
+    /** Releases the location subscription entirely, e.g. when the activity is paused. */
+    void stop() {
+        if (!active) return;
+        active = false;
+        client.removeLocationUpdates(callback);
+    }
+
+    /** Switches to high-accuracy updates while a route is on screen and back afterwards. */
+    void setNavigating(boolean navigating) {
+        this.navigating = navigating;
+        updateMode(navigating ? Mode.NAVIGATING : Mode.STATIONARY);
+    }
+
+    /** Feeds a fix obtained elsewhere, such as the last known location, through the same logic. */
+    void onFix(Location location) {
+        LatLng latLng = new LatLng(location.getLatitude(), location.getLongitude());
+
+        if (!navigating) {
+            boolean moving = location.hasSpeed() && location.getSpeed() >= MOVING_SPEED_MPS;
+            updateMode(moving ? Mode.MOVING : Mode.STATIONARY);
+        }
+
+        boolean refetch = fetchCenter == null || GeoUtils.distanceMeters(fetchCenter.latitude,
+                fetchCenter.longitude, latLng.latitude, latLng.longitude) > refetchDistanceMeters;
+        if (refetch) {
+            fetchCenter = latLng;
+        }
+        listener.onLocation(location, latLng, refetch);
+    }
+
+    // Re-issues the request with the same callback, which replaces the old one, only on a real change
+    @SuppressLint("MissingPermission")
+    private void updateMode(Mode newMode) {
+        if (newMode == mode) return;
+        Log.d(TAG, "Location mode " + mode + " -> " + newMode);
+        mode = newMode;
+        if (active) {
+            client.requestLocationUpdates(mode.toRequest(), callback, looper);
+        }
+    }
+}
@@ -4,27 +4,30 @@ import android.Manifest;
 import android.annotation.SuppressLint;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.location.Location;
+import android.net.ConnectivityManager;
+import android.net.Network;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.View;
 import android.widget.Button;
 import android.widget.ImageView;
+import android.widget.LinearLayout;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
+import androidx.lifecycle.Lifecycle;
 import androidx.appcompat.app.AppCompatActivity;
 
 
-import com.android.volley.Request;
-import com.android.volley.RequestQueue;
-import com.android.volley.toolbox.StringRequest;
-import com.android.volley.toolbox.Volley;
 import com.google.android.gms.common.api.ResolvableApiException;
 import com.google.android.gms.location.*;
 import com.google.android.gms.maps.*;
@@ -34,15 +37,14 @@ import com.google.android.libraries.places.api.Places;
 import com.google.android.libraries.places.api.model.Place;
 import com.google.android.libraries.places.widget.Autocomplete;
 import com.google.android.libraries.places.widget.AutocompleteActivity;
-import com.google.android.libraries.places.widget.AutocompleteSupportFragment;
-import com.google.android.libraries.places.widget.listener.PlaceSelectionListener;
 import com.google.android.libraries.places.widget.model.AutocompleteActivityMode;
-import com.google.maps.android.PolyUtil;
-
-import org.json.JSONArray;
-import org.json.JSONObject;
+import com.google.firebase.firestore.FirebaseFirestore;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MainActivity extends AppCompatActivity implements OnMapReadyCallback {
 
@@ -50,48 +52,248 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
     private static final int AUTOCOMPLETE_REQUEST_CODE = 1002;
     private static final int LOCATION_SETTINGS_REQUEST = 1001;
     private static final String TAG = "FuelFinderApp";
+    private static final String MAPS_BASE_URL = "https://maps.googleapis.com";
+    // Radius of areas prefetched ahead of the driver and of offline answers from the station store
+    private static final int SEARCH_RADIUS_METERS = 5000;
+    // Searches start small and widen ring by ring until enough pumps that may be open are in range
+    private static final int[] SEARCH_RING_RADII_METERS = {2000, SEARCH_RADIUS_METERS, 10000, 20000};
+    private static final int TARGET_OPEN_STATIONS = 8;
+    private static final int TARGET_TOTAL_STATIONS = 20;
+    private static final int STATION_CACHE_MAX_TILES = 3000;
+    private static final long STATION_CACHE_TTL_MS = 30 * 60 * 1000;
+    private static final long FETCH_DEBOUNCE_MS = 350;
+    private static final double FETCH_DEDUPE_METERS = 100;
+    // Places only accepts a next_page_token after a short delay; early requests fail with INVALID_REQUEST
+    private static final long PAGE_TOKEN_DELAY_MS = 2000;
+    private static final int MAX_PAGE_TOKEN_RETRIES = 2;
+    // Places returns at most three pages of 20; a ring that fills them may have left pumps out
+    private static final int PLACES_MAX_RESULTS = 60;
+    // Moving a quarter of the search radius away from the last fetch centre triggers a new fetch
+    private static final double LOCATION_REFETCH_METERS = SEARCH_RADIUS_METERS / 4.0;
+    private static final int STATION_ICON_SIZE_PX = 80;
+    private static final int USER_ICON_SIZE_PX = 100;
+    private static final int ROUTE_CACHE_SIZE = 32;
+    private static final long ROUTE_CACHE_TTL_MS = 10 * 60 * 1000;
+    // Visible stations sampled for traffic at a time, one Distance Matrix request
+    private static final int MAX_RANKED_STATIONS = RouteService.MAX_DESTINATIONS_PER_REQUEST;
+    // Traffic changes quickly, so samples are taken again after a few minutes
+    private static final long CONGESTION_TTL_MS = 3 * 60 * 1000;
+    // After a failed traffic request, every map move would ask again; wait this long, doubling per failure
+    private static final long MIN_CONGESTION_RETRY_DELAY_MS = 30 * 1000;
+    private static final long MAX_CONGESTION_RETRY_DELAY_MS = 10 * 60 * 1000;
+    // Stations listed as fastest to fuel; the first gets a larger marker
+    private static final int FASTEST_SHOWN = 3;
+    private static final int FASTEST_ICON_SIZE_PX = 104;
+    // Along-route prefetching may spend at most this many requests per window
+    private static final int PREFETCH_BUDGET_REQUESTS = 12;
+    private static final long PREFETCH_BUDGET_WINDOW_MS = 10 * 60 * 1000;
+    // From this zoom on every station gets its own marker
+    private static final float MAX_CLUSTER_ZOOM = 16f;
+    // Levels an admin can set, best first
+    private static final FuelAvailability.Level[] ADMIN_LEVELS = {
+            FuelAvailability.Level.FULL, FuelAvailability.Level.LOW, FuelAvailability.Level.EMPTY};
 
     private GoogleMap mMap;
     private FusedLocationProviderClient fusedLocationProviderClient;
+    private LocationTracker locationTracker;
+    // Set once location has been granted and enabled, so onResume knows to start tracking again
+    private boolean trackLocation;
     private LatLng userLatLng;
     private Marker userMarker;
     private Circle userCircle;
     private ImageView btnMyLocation, btnSearch, btnRefresh;
     private Button btnLogin, btnSignup;
-    private AutocompleteSupportFragment autocompleteFragment;
-    private RequestQueue requestQueue;
-    private List<Marker> fuelStationMarkers = new ArrayList<>();
+    private LinearLayout infoPanel;
+    private TextView tvStationCount;
+    private TextView searchBar;
+    private MapStatePreferences mapState;
+    private boolean fullyDrawnReported;
+    private ApiClient apiClient;
+    // Null unless a pump service URL is configured, in which case it answers searches before Places
+    @Nullable
+    private PumpServiceClient pumpService;
+    private FetchScheduler fetchScheduler;
+    private final SearchRings searchRings = new SearchRings(SEARCH_RING_RADII_METERS, TARGET_OPEN_STATIONS,
+            TARGET_TOTAL_STATIONS);
+    // Radius the last search ended at; the user circle shows it for searches around the user
+    private int searchedRadiusMeters = SEARCH_RING_RADII_METERS[0];
+    // Stations Places last reported closed, with when it did
+    private final Map<String, Long> reportedClosedAt = new HashMap<>();
+    private RouteService routeService;
+    private RoutePrefetcher routePrefetcher;
+    private final CongestionScores congestion = new CongestionScores(CONGESTION_TTL_MS);
+    // Stations drawn as their own marker, the ones whose traffic is sampled
+    private List<FuelStationInfo> visibleStations = Collections.emptyList();
+    private List<FuelStationInfo> fastestToFuel = Collections.emptyList();
+    private boolean congestionRequestInFlight;
+    private long congestionRetryAt;
+    private long congestionRetryDelayMs = MIN_CONGESTION_RETRY_DELAY_MS;
+    private StationMarkerLayer stationMarkers;
+    private ClusterMarkerLayer clusterMarkers;
+    private Marker searchLocationMarker;
+    private List<FuelStationInfo> currentStations = Collections.emptyList();
+    private int clusterGeneration;
     private Polyline currentRoute;
+    // The latest route asked for; answers to earlier ones are dropped, since a cached route may be drawn first
+    private Object routeRequest;
+    private RouteLevelOfDetail<LatLng> currentRouteDetail;
+    // The level currently drawn, compared by identity since equal levels share one list
+    private List<LatLng> shownRoutePoints;
+    private StationCache stationCache;
+    private StationStore stationStore;
+    // Set while the map shows saved stations because a search could not reach the network
+    @Nullable
+    private LatLng offlineSearchCenter;
+    private ConnectivityManager connectivityManager;
+    // Repeats the offline search once a network is back, refreshing the store with what changed meanwhile
+    private final ConnectivityManager.NetworkCallback networkCallback = new ConnectivityManager.NetworkCallback() {
+        @Override
+        public void onAvailable(@NonNull Network network) {
+            // Called on a connectivity thread
+            runOnMainThread(() -> {
+                if (offlineSearchCenter != null) {
+                    getNearbyPumps(offlineSearchCenter);
+                }
+            });
+        }
+    };
+    private MarkerIconRegistry markerIcons;
+    private AvailabilitySync availabilitySync;
+    private AvailabilityEditor availabilityEditor;
+    // Created on first use by the availability channel or writer
+    private FirebaseFirestore firestore;
+    private boolean adminMode;
+    // Pumps an admin tapped; with none selected, admin edits apply to every pump with its own marker
+    private final Set<String> selectedPumps = new HashSet<>();
+    private final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService clusterExecutor = Executors.newSingleThreadExecutor();
+    // Only touched on clusterExecutor; rebuilt whenever the station list changes
+    private StationClusterer<FuelStationInfo> stationClusterer;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final PerfMetrics metrics = PerfMetrics.global();
+    private PerfMetrics.Span locationSpan;
+    // Runs from the start of a fetch until its stations are on screen; moves to stationsSpan once
+    // the fetch has delivered the list being clustered
+    private PerfMetrics.Span fetchSpan;
+    private PerfMetrics.Span stationsSpan;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        // Initialize Places API
-        if (!Places.isInitialized()) {
-            Places.initialize(getApplicationContext(), getString(R.string.MAPS_API_KEY));
-        }
-
-        // Initialize components
+        // Initialize components; Places is only initialised once search is first used
+        initializeStationCache();
         initializeViews();
         initializeLocationServices();
         initializeMap();
         setupClickListeners();
-        setupAutoComplete();
+        restoreLastStations();
     }
 
     private void initializeViews() {
         btnMyLocation = findViewById(R.id.btnMyLocation);
         btnSearch = findViewById(R.id.btnSearch);
+        searchBar = findViewById(R.id.searchBar);
         btnRefresh = findViewById(R.id.btnRefresh);
         btnLogin = findViewById(R.id.btnLogin);
         btnSignup = findViewById(R.id.btnSignup);
-        requestQueue = Volley.newRequestQueue(this);
+        infoPanel = findViewById(R.id.infoPanel);
+        tvStationCount = findViewById(R.id.tvStationCount);
+        apiClient = new ApiClient(this, MAPS_BASE_URL, this::runOnMainThread);
+        fetchScheduler = new FetchScheduler(mainHandler, FETCH_DEBOUNCE_MS, FETCH_DEDUPE_METERS,
+                this::fetchNearbyPumps, apiClient::cancel);
+        routeService = new RouteService(apiClient, getString(R.string.MAPS_API_KEY), TAG,
+                ROUTE_CACHE_SIZE, ROUTE_CACHE_TTL_MS);
+        markerIcons = new MarkerIconRegistry(getResources());
+        routePrefetcher = new RoutePrefetcher(mainHandler, SEARCH_RADIUS_METERS, PREFETCH_BUDGET_REQUESTS,
+                PREFETCH_BUDGET_WINDOW_MS,
+                center -> stationCache.covers(center.latitude, center.longitude, SEARCH_RADIUS_METERS),
+                this::prefetchStations, apiClient::cancel);
+        String pumpServiceUrl = getString(R.string.PUMP_SERVICE_URL);
+        AvailabilityChannel availabilityChannel;
+        AvailabilityWriter availabilityWriter;
+        if (!pumpServiceUrl.isEmpty()) {
+            pumpService = new PumpServiceClient(new ApiClient(this, pumpServiceUrl, this::runOnMainThread), true);
+            availabilityChannel = new PumpServiceAvailabilityChannel(pumpService, mainHandler);
+            availabilityWriter = new PumpServiceAvailabilityWriter(pumpService);
+        } else {
+            // Firestore itself is only created when the first pump is subscribed or edited
+            availabilityChannel = new FirestoreAvailabilityChannel(this::firestore);
+            availabilityWriter = new FirestoreAvailabilityWriter(this::firestore);
+        }
+        availabilitySync = new AvailabilitySync(availabilityChannel, Choreographer.getInstance(),
+                this::onAvailabilityChanged);
+        availabilityEditor = new AvailabilityEditor(availabilityWriter, mainHandler, availabilitySync::get,
+                new AvailabilityEditor.Listener() {
+                    @Override
+                    public void onShow(FuelAvailability availability) {
+                        availabilitySync.override(availability);
+                    }
+
+                    @Override
+                    public void onBatchWritten(int written, List<FuelAvailability> conflicts) {
+                        onAvailabilityWritten(written, conflicts);
+                    }
+                });
+    }
+
+    // Points at the emulator when FIRESTORE_EMULATOR_HOST is set, e.g. "10.0.2.2:8080" from the Android emulator
+    private FirebaseFirestore firestore() {
+        if (firestore == null) {
+            firestore = FirebaseFirestore.getInstance();
+            String emulatorHost = getString(R.string.FIRESTORE_EMULATOR_HOST);
+            if (!emulatorHost.isEmpty()) {
+                int colon = emulatorHost.lastIndexOf(':');
+                firestore.useEmulator(emulatorHost.substring(0, colon),
+                        Integer.parseInt(emulatorHost.substring(colon + 1)));
+            }
+        }
+        return firestore;
+    }
+
+    private void initializeStationCache() {
+        // ~1 km tiles; the outer search ring alone spans about a thousand, a 5 km search about eighty
+        stationCache = new StationCache(new File(getCacheDir(), "stations.bin"), STATION_CACHE_MAX_TILES,
+                20000);
+        // Loaded off the main thread without holding the cache's lock; a lookup made meanwhile goes to the network
+        runInBackground(() -> {
+            try {
+                stationCache.load();
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to load station cache, starting empty", e);
+                stationCache.clear();
+            }
+        });
+        stationStore = new StationStore(this);
+        mapState = new MapStatePreferences(this);
+        connectivityManager = getSystemService(ConnectivityManager.class);
+    }
+
+    // Draws the stations of the last search straight away; the next location fix refreshes them
+    private void restoreLastStations() {
+        LatLng center = mapState.lastSearchCenter();
+        if (center == null) return;
+
+        runInBackground(() -> {
+            List<FuelStationInfo> stored = stationStore.queryRadius(center.latitude, center.longitude,
+                    SEARCH_RADIUS_METERS);
+            List<FuelAvailability> storedAvailability = stationStore.queryAvailability(stored);
+            runOnMainThread(() -> {
+                // A fresh search may already have answered
+                if (stored.isEmpty() || !currentStations.isEmpty()) return;
+                availabilitySync.seed(storedAvailability);
+                currentStations = stored;
+                clusterStations();
+                updateInfoPanel(stored.size(), false);
+            });
+        });
     }
 
     private void initializeLocationServices() {
         fusedLocationProviderClient = LocationServices.getFusedLocationProviderClient(this);
+        locationTracker = new LocationTracker(fusedLocationProviderClient, getMainLooper(),
+                LOCATION_REFETCH_METERS, this::onUserLocation);
     }
 
     private void initializeMap() {
@@ -112,6 +314,7 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
         });
 
         btnSearch.setOnClickListener(v -> openPlaceAutocomplete());
+        searchBar.setOnClickListener(v -> openPlaceAutocomplete());
 
         btnRefresh.setOnClickListener(v -> {
             clearMarkersAndRoutes();
@@ -124,54 +327,115 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
         });
 
         btnLogin.setOnClickListener(v -> {
+            if (adminMode) {
+                setAdminMode(false);
+                return;
+            }
             // TODO: Implement login functionality
             Toast.makeText(this, "Login feature coming soon!", Toast.LENGTH_SHORT).show();
         });
 
+        // Until sign-in exists, a long press on Login switches the admin tools on. Without an account behind
+        // it anyone could rewrite pump status, so release builds do not offer it
+        if (BuildConfig.DEBUG) {
+            btnLogin.setOnLongClickListener(v -> {
+                setAdminMode(!adminMode);
+                return true;
+            });
+        }
+
         btnSignup.setOnClickListener(v -> {
+            if (adminMode) {
+                showAdminEditDialog();
+                return;
+            }
             // TODO: Implement signup functionality
             Toast.makeText(this, "Signup feature coming soon!", Toast.LENGTH_SHORT).show();
         });
     }
 
-    private void setupAutoComplete() {
-        autocompleteFragment = (AutocompleteSupportFragment)
-                getSupportFragmentManager().findFragmentById(R.id.autocomplete_fragment);
+    private void setAdminMode(boolean enabled) {
+        adminMode = enabled;
+        selectedPumps.clear();
+        btnLogin.setText(enabled ? "Exit admin" : "Login");
+        updateAdminButton();
+        restyleStationMarkers();
+        if (enabled) {
+            Toast.makeText(this, "Admin mode: tap pumps to select them", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private void updateAdminButton() {
+        if (!adminMode) {
+            btnSignup.setText("Sign Up");
+        } else if (selectedPumps.isEmpty()) {
+            btnSignup.setText("Update all shown");
+        } else {
+            btnSignup.setText("Update " + selectedPumps.size() + " selected");
+        }
+    }
 
-        if (autocompleteFragment != null) {
-            autocompleteFragment.setPlaceFields(Arrays.asList(
-                    Place.Field.ID, Place.Field.NAME, Place.Field.LAT_LNG, Place.Field.ADDRESS));
+    private void toggleSelected(String placeId) {
+        if (!selectedPumps.remove(placeId)) {
+            selectedPumps.add(placeId);
+        }
+        updateAdminButton();
+        // Selecting the first pump or clearing the last one dims or undims all the others
+        restyleStationMarkers();
+    }
 
-            autocompleteFragment.setHint("Search for a location...");
+    private void restyleStationMarkers() {
+        if (stationMarkers != null) {
+            stationMarkers.refresh(stationMarkers.placeIds());
+        }
+    }
 
-            autocompleteFragment.setOnPlaceSelectedListener(new PlaceSelectionListener() {
-                @Override
-                public void onPlaceSelected(@NonNull Place place) {
-                    Log.d(TAG, "Place selected: " + place.getName());
-                    if (place.getLatLng() != null) {
-                        LatLng selectedLocation = place.getLatLng();
-                        mMap.animateCamera(CameraUpdateFactory.newLatLngZoom(selectedLocation, 15));
-                        getNearbyPumps(selectedLocation);
+    // Asks for a fuel, then a level, and queues that edit for every targeted pump
+    private void showAdminEditDialog() {
+        List<String> targets = selectedPumps.isEmpty() && stationMarkers != null
+                ? stationMarkers.placeIds() : new ArrayList<>(selectedPumps);
+        if (targets.isEmpty()) {
+            Toast.makeText(this, "No pumps on screen to update", Toast.LENGTH_SHORT).show();
+            return;
+        }
 
-                        // Add a temporary marker for searched location
-                        mMap.addMarker(new MarkerOptions()
-                                .position(selectedLocation)
-                                .title(place.getName())
-                                .snippet(place.getAddress())
-                                .icon(BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_GREEN)));
-                    }
-                }
+        FuelAvailability.Fuel[] fuels = FuelAvailability.Fuel.values();
+        CharSequence[] fuelLabels = new CharSequence[fuels.length];
+        for (int i = 0; i < fuels.length; i++) {
+            fuelLabels[i] = fuels[i].label;
+        }
+        CharSequence[] levelLabels = new CharSequence[ADMIN_LEVELS.length];
+        for (int i = 0; i < ADMIN_LEVELS.length; i++) {
+            levelLabels[i] = ADMIN_LEVELS[i].label;
+        }
 
-                @Override
-                public void onError(@NonNull com.google.android.gms.common.api.Status status) {
-                    Log.e(TAG, "Place selection error: " + status.getStatusMessage());
-                    Toast.makeText(MainActivity.this, "Error selecting place", Toast.LENGTH_SHORT).show();
-                }
-            });
+        new AlertDialog.Builder(this)
+                .setTitle("Update " + targets.size() + " pumps")
+                .setItems(fuelLabels, (fuelDialog, fuelIndex) -> new AlertDialog.Builder(this)
+                        .setTitle(fuels[fuelIndex].label + " at " + targets.size() + " pumps")
+                        .setItems(levelLabels, (levelDialog, levelIndex) -> availabilityEditor.edit(targets,
+                                fuels[fuelIndex], ADMIN_LEVELS[levelIndex]))
+                        .show())
+                .show();
+    }
+
+    private void onAvailabilityWritten(int written, List<FuelAvailability> conflicts) {
+        Log.d(TAG, "Saved " + written + " availability edits, " + conflicts.size() + " conflicts, "
+                + availabilityEditor.unsavedCount() + " still unsaved");
+        if (!conflicts.isEmpty()) {
+            Toast.makeText(this, conflicts.size() + " pumps were just updated by someone else; showing their status",
+                    Toast.LENGTH_LONG).show();
+        } else if (availabilityEditor.unsavedCount() == 0) {
+            Toast.makeText(this, "Saved " + written + " pump updates", Toast.LENGTH_SHORT).show();
         }
     }
 
     private void openPlaceAutocomplete() {
+        // Deferred from onCreate: most launches never search, and initialising Places is not free
+        if (!Places.isInitialized()) {
+            Places.initialize(getApplicationContext(), getString(R.string.MAPS_API_KEY));
+        }
+
         List<Place.Field> fields = Arrays.asList(
                 Place.Field.ID, Place.Field.NAME, Place.Field.LAT_LNG, Place.Field.ADDRESS);
 
@@ -183,6 +447,14 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
     @Override
     public void onMapReady(@NonNull GoogleMap googleMap) {
         this.mMap = googleMap;
+        stationMarkers = new StationMarkerLayer(mMap, this::createFuelStationMarkerOptions);
+        clusterMarkers = new ClusterMarkerLayer(mMap, markerIcons);
+
+        // Start where the user left off rather than at the default world view
+        CameraPosition lastCamera = mapState.lastCamera();
+        if (lastCamera != null) {
+            mMap.moveCamera(CameraUpdateFactory.newCameraPosition(lastCamera));
+        }
 
         // Configure map settings
         mMap.getUiSettings().setMyLocationButtonEnabled(false);
@@ -190,8 +462,9 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
         mMap.getUiSettings().setCompassEnabled(true);
         mMap.getUiSettings().setMapToolbarEnabled(true);
 
-        // Set map type
+        // Set map type, with live traffic around the pumps
         mMap.setMapType(GoogleMap.MAP_TYPE_NORMAL);
+        mMap.setTrafficEnabled(true);
 
         // Enable location if permission granted
         enableLocation();
@@ -202,10 +475,28 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
             getNearbyPumps(latLng);
 
             // Add a marker for clicked location
-            mMap.addMarker(new MarkerOptions()
-                    .position(latLng)
-                    .title("Selected Location")
-                    .icon(BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_ORANGE)));
+            showSearchLocationMarker(latLng, "Selected Location", null, BitmapDescriptorFactory.HUE_ORANGE);
+        });
+
+        // Recompute clusters and route detail for the new viewport once the camera settles
+        mMap.setOnCameraIdleListener(() -> {
+            clusterStations();
+            updateRouteDetail();
+        });
+
+        // Tapping a cluster zooms in far enough to split it; in admin mode tapping a pump selects it
+        mMap.setOnMarkerClickListener(marker -> {
+            if (adminMode && marker.getTag() instanceof FuelStationInfo) {
+                toggleSelected(((FuelStationInfo) marker.getTag()).placeId);
+                return true;
+            }
+            if (marker.getTag() instanceof StationClusterer.Cluster) {
+                float zoom = mMap.getCameraPosition().zoom;
+                mMap.animateCamera(CameraUpdateFactory.newLatLngZoom(marker.getPosition(),
+                        Math.min(zoom + 2, MAX_CLUSTER_ZOOM)));
+                return true;
+            }
+            return false;
         });
 
         // Set info window click listener
@@ -233,16 +524,12 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
         }
     }
 
-    @SuppressLint("MissingPermission")
     private void requestLocation() {
-        LocationRequest locationRequest = LocationRequest.create()
-                .setPriority(Priority.PRIORITY_HIGH_ACCURACY)
-                .setInterval(10000)
-                .setFastestInterval(5000)
-                .setMaxWaitTime(15000);
-
+        if (userLatLng == null && locationSpan == null) {
+            locationSpan = metrics.begin("location.first_fix");
+        }
         LocationSettingsRequest.Builder builder = new LocationSettingsRequest.Builder()
-                .addLocationRequest(locationRequest)
+                .addLocationRequest(locationTracker.currentRequest())
                 .setAlwaysShow(true);
 
         Task<LocationSettingsResponse> task = LocationServices.getSettingsClient(this)
@@ -250,7 +537,12 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
 
         task.addOnSuccessListener(locationSettingsResponse -> {
             Log.d(TAG, "Location settings satisfied");
+            trackLocation = true;
             getDeviceLocation();
+            // The check can finish after onPause; onResume then starts tracking, so nothing runs while paused
+            if (getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.RESUMED)) {
+                locationTracker.start();
+            }
         });
 
         task.addOnFailureListener(e -> {
@@ -272,12 +564,9 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
         fusedLocationProviderClient.getLastLocation()
                 .addOnSuccessListener(location -> {
                     if (location != null) {
-                        userLatLng = new LatLng(location.getLatitude(), location.getLongitude());
-                        showUserLocation(userLatLng);
-                        Log.d(TAG, "User location: " + userLatLng.toString());
+                        locationTracker.onFix(location);
                     } else {
-                        Log.d(TAG, "Last known location is null, requesting current location");
-                        requestCurrentLocation();
+                        Log.d(TAG, "Last known location is null, waiting for the first update");
                     }
                 })
                 .addOnFailureListener(e -> {
@@ -286,240 +575,732 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
                 });
     }
 
-    @SuppressLint("MissingPermission")
-    private void requestCurrentLocation() {
-        LocationRequest locationRequest = LocationRequest.create()
-                .setPriority(Priority.PRIORITY_HIGH_ACCURACY)
-                .setNumUpdates(1)
-                .setInterval(0);
-
-        fusedLocationProviderClient.requestLocationUpdates(locationRequest,
-                new LocationCallback() {
-                    @Override
-                    public void onLocationResult(@NonNull LocationResult locationResult) {
-                        Location location = locationResult.getLastLocation();
-                        if (location != null) {
-                            userLatLng = new LatLng(location.getLatitude(), location.getLongitude());
-                            showUserLocation(userLatLng);
-                        }
-                        fusedLocationProviderClient.removeLocationUpdates(this);
-                    }
-                }, getMainLooper());
+    private void onUserLocation(Location location, LatLng latLng, boolean refetch) {
+        if (locationSpan != null) {
+            locationSpan.end();
+            locationSpan = null;
+        }
+        userLatLng = latLng;
+        Log.d(TAG, "User location: " + latLng + (refetch ? ", refetching stations" : ""));
+        showUserLocation(latLng, refetch);
+        refreshCongestion();
+        routePrefetcher.onLocation(latLng, location.hasSpeed() ? location.getSpeed() : 0f,
+                location.hasBearing() ? location.getBearing() : Float.NaN);
     }
 
-    private void showUserLocation(LatLng latLng) {
+    private void showUserLocation(LatLng latLng, boolean refetch) {
         if (mMap == null) return;
 
-        // Remove existing user marker and circle
-        if (userMarker != null) userMarker.remove();
-        if (userCircle != null) userCircle.remove();
-
-        // Create custom marker icon for user location
-        try {
-            Bitmap icon = BitmapFactory.decodeResource(getResources(), R.drawable.ic_mylocation);
-            if (icon != null) {
-                // Resize icon if needed
-                Bitmap resizedIcon = Bitmap.createScaledBitmap(icon, 100, 100, false);
-                userMarker = mMap.addMarker(new MarkerOptions()
-                        .position(latLng)
-                        .title("Your Location")
-                        .snippet("You are here")
-                        .icon(BitmapDescriptorFactory.fromBitmap(resizedIcon)));
-            } else {
-                // Fallback to default marker
-                userMarker = mMap.addMarker(new MarkerOptions()
-                        .position(latLng)
-                        .title("Your Location")
-                        .snippet("You are here")
-                        .icon(BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_AZURE)));
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error creating user marker", e);
+        // Move the existing user marker and circle instead of recreating them
+        if (userMarker != null && userCircle != null) {
+            userMarker.setPosition(latLng);
+            userCircle.setCenter(latLng);
+        } else {
+            // First fix: create the user marker and bring the camera to it
+            mMap.animateCamera(CameraUpdateFactory.newLatLngZoom(latLng, 14));
+
+            // Create custom marker icon for user location
+            BitmapDescriptor icon = markerIcons.get(R.drawable.ic_mylocation, USER_ICON_SIZE_PX);
             userMarker = mMap.addMarker(new MarkerOptions()
                     .position(latLng)
                     .title("Your Location")
-                    .snippet("You are here"));
+                    .snippet("You are here")
+                    .icon(icon != null ? icon : BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_AZURE)));
+
+            // Add circle to show search radius
+            userCircle = mMap.addCircle(new CircleOptions()
+                    .center(latLng)
+                    .radius(searchedRadiusMeters)
+                    .strokeColor(0x550197F5)
+                    .fillColor(0x115197F5)
+                    .strokeWidth(3));
         }
 
-        // Add circle to show search radius
-        userCircle = mMap.addCircle(new CircleOptions()
-                .center(latLng)
-                .radius(5000) // 5km radius
-                .strokeColor(0x550197F5)
-                .fillColor(0x115197F5)
-                .strokeWidth(3));
+        // Search straight away when the user left the fetched area, a location fix is not part of a burst
+        if (refetch) {
+            fetchScheduler.requestNow(latLng);
+        }
+    }
 
-        // Move camera to user location
-        mMap.animateCamera(CameraUpdateFactory.newLatLngZoom(latLng, 14));
+    // Taps, searches and refreshes go through the scheduler so bursts collapse into one fetch
+    private void getNearbyPumps(LatLng latLng) {
+        fetchScheduler.request(latLng);
+    }
 
-        // Search for nearby fuel pumps
-        getNearbyPumps(latLng);
+    private void fetchNearbyPumps(LatLng latLng, Object token) {
+        if (fetchSpan != null) {
+            fetchSpan.cancel();
+        }
+        fetchSpan = metrics.begin("fetch.to_first_marker");
+        mapState.saveSearchCenter(latLng);
+        offlineSearchCenter = null;
+        searchRing(latLng, token, 0, Collections.emptyList());
     }
 
-    private void getNearbyPumps(LatLng latLng) {
-        String url = "https://maps.googleapis.com/maps/api/place/nearbysearch/json?" +
-                "location=" + latLng.latitude + "," + latLng.longitude +
-                "&radius=5000" +
-                "&type=gas_station" +
+    // One ring of a progressive search, answered from the cache when it covers the ring; inner holds the
+    // stations the smaller rings found
+    private void searchRing(LatLng latLng, Object token, int ring, List<FuelStationInfo> inner) {
+        int radius = searchRings.radius(ring);
+        List<FuelStationInfo> cached = stationCache.query(latLng.latitude, latLng.longitude, radius);
+        if (cached != null) {
+            Log.d(TAG, "Serving " + cached.size() + " fuel stations within " + radius + " m from cache");
+            onRingDone(latLng, token, ring, cached);
+            return;
+        }
+
+        if (pumpService != null) {
+            fetchFromPumpService(latLng, token, ring, inner);
+        } else {
+            fetchNearbyPage(latLng, token, ring, null, byPlaceId(inner), 0, 0);
+        }
+    }
+
+    // Shows a finished ring, then widens the search unless enough pumps were found or this was the last ring
+    private void onRingDone(LatLng latLng, Object token, int ring, List<FuelStationInfo> stations) {
+        if (!fetchScheduler.isLatest(token)) {
+            fetchScheduler.complete(token);
+            return;
+        }
+        searchedRadiusMeters = searchRings.radius(ring);
+        if (userCircle != null && GeoUtils.distanceMeters(latLng.latitude, latLng.longitude,
+                userLatLng.latitude, userLatLng.longitude) <= FETCH_DEDUPE_METERS) {
+            userCircle.setRadius(searchedRadiusMeters);
+        }
+
+        if (searchRings.shouldWiden(ring, stations, this::mayBeOpen)) {
+            Log.d(TAG, "Found " + stations.size() + " fuel stations within " + searchRings.radius(ring)
+                    + " m, widening the search");
+            showFuelStations(stations, true, false);
+            searchRing(latLng, token, ring + 1, stations);
+        } else {
+            fetchScheduler.complete(token);
+            showFuelStations(stations, false, false);
+        }
+    }
+
+    // Ends a failed search early with the stations found so far, telling the user the list is incomplete
+    private void finishSearch(Object token, List<FuelStationInfo> stations) {
+        fetchScheduler.complete(token);
+        if (fetchScheduler.isLatest(token)) {
+            showFuelStations(stations, false, true);
+        }
+    }
+
+    // Counts towards the search target unless Places lately reported it closed or every fuel is reported out
+    private boolean mayBeOpen(FuelStationInfo station) {
+        Long closedAt = reportedClosedAt.get(station.placeId);
+        if (closedAt != null && System.currentTimeMillis() - closedAt < STATION_CACHE_TTL_MS) {
+            return false;
+        }
+        FuelAvailability availability = availabilitySync.get(station.placeId);
+        return availability == null || availability.best() != FuelAvailability.Level.EMPTY;
+    }
+
+    private static LinkedHashMap<String, FuelStationInfo> byPlaceId(List<FuelStationInfo> stations) {
+        LinkedHashMap<String, FuelStationInfo> byPlaceId = new LinkedHashMap<>();
+        for (FuelStationInfo station : stations) {
+            byPlaceId.put(station.placeId, station);
+        }
+        return byPlaceId;
+    }
+
+    // One request for stations and their availability; Places remains the fallback where the service has none
+    private void fetchFromPumpService(LatLng latLng, Object token, int ring, List<FuelStationInfo> inner) {
+        pumpService.nearby(latLng.latitude, latLng.longitude, searchRings.radius(ring), token,
+                new ApiClient.Callback<PumpServiceClient.NearbyResult>() {
+                    @Override
+                    public void onResult(PumpServiceClient.NearbyResult result) {
+                        if (!fetchScheduler.isLatest(token)) {
+                            fetchScheduler.complete(token);
+                        } else if (result.stations.isEmpty()) {
+                            fetchNearbyPage(latLng, token, ring, null, byPlaceId(inner), 0, 0);
+                        } else {
+                            onPumpServiceResult(latLng, token, ring, inner, result);
+                        }
+                    }
+
+                    @Override
+                    public void onError(Exception error) {
+                        Log.w(TAG, "Pump service unavailable, searching Places instead", error);
+                        if (fetchScheduler.isLatest(token)) {
+                            fetchNearbyPage(latLng, token, ring, null, byPlaceId(inner), 0, 0);
+                        } else {
+                            fetchScheduler.complete(token);
+                        }
+                    }
+                });
+    }
+
+    private void onPumpServiceResult(LatLng latLng, Object token, int ring, List<FuelStationInfo> inner,
+                                     PumpServiceClient.NearbyResult result) {
+        availabilitySync.seed(result.availability);
+        int radius = searchRings.radius(ring);
+        // An answer cut at the limit may leave pumps out of the ring, so it is stored but not cached as covering it
+        boolean complete = result.stations.size() < PumpServiceClient.NEARBY_LIMIT;
+        runInBackground(() -> {
+            stationStore.upsert(result.stations);
+            stationStore.upsertAvailability(result.availability);
+            if (complete) {
+                stationCache.put(latLng.latitude, latLng.longitude, radius, result.stations, STATION_CACHE_TTL_MS);
+            }
+        });
+        LinkedHashMap<String, FuelStationInfo> stations = byPlaceId(result.stations);
+        for (FuelStationInfo station : inner) {
+            stations.putIfAbsent(station.placeId, station);
+        }
+        onRingDone(latLng, token, ring, new ArrayList<>(stations.values()));
+    }
+
+    private String nearbySearchPath(LatLng latLng, int radiusMeters, @Nullable String pageToken) {
+        return "/maps/api/place/nearbysearch/json?" +
+                (pageToken == null
+                        ? "location=" + latLng.latitude + "," + latLng.longitude +
+                          "&radius=" + radiusMeters +
+                          "&type=gas_station"
+                        : "pagetoken=" + pageToken) +
                 "&key=" + getString(R.string.MAPS_API_KEY);
+    }
 
-        StringRequest request = new StringRequest(Request.Method.GET, url,
-                response -> {
-                    try {
-                        JSONObject jsonResponse = new JSONObject(response);
-                        JSONArray results = jsonResponse.getJSONArray("results");
+    // Loads one page of results; onNearbyPage chains the next page while this fetch is still the latest.
+    // found counts the results this ring's earlier pages returned
+    private void fetchNearbyPage(LatLng latLng, Object token, int ring, @Nullable String pageToken,
+                                 LinkedHashMap<String, FuelStationInfo> collected, int found, int retries) {
+        apiClient.get(nearbySearchPath(latLng, searchRings.radius(ring), pageToken), token,
+                PlacesJsonParser::parseNearbySearch,
+                new ApiClient.Callback<PlacesJsonParser.NearbySearchResult>() {
+                    @Override
+                    public void onResult(PlacesJsonParser.NearbySearchResult result) {
+                        onNearbyPage(latLng, token, ring, pageToken, collected, found, retries, result);
+                    }
 
-                        // Clear existing fuel station markers
-                        clearFuelStationMarkers();
+                    @Override
+                    public void onError(Exception error) {
+                        Log.e(TAG, "Error while fetching fuel stations", error);
+                        // Only a failed first request falls back to saved stations; otherwise the stations
+                        // found so far stay
+                        if (ring == 0 && pageToken == null) {
+                            showStoredStations(latLng, token);
+                        } else {
+                            finishSearch(token, new ArrayList<>(collected.values()));
+                        }
+                    }
+                });
+    }
 
-                        Log.d(TAG, "Found " + results.length() + " fuel stations");
+    private void onNearbyPage(LatLng latLng, Object token, int ring, @Nullable String pageToken,
+                              LinkedHashMap<String, FuelStationInfo> collected, int found, int retries,
+                              PlacesJsonParser.NearbySearchResult result) {
+        // A newer search may have started while this one was parsing
+        if (!fetchScheduler.isLatest(token)) {
+            fetchScheduler.complete(token);
+            return;
+        }
 
-                        for (int i = 0; i < results.length(); i++) {
-                            JSONObject place = results.getJSONObject(i);
-                            String name = place.getString("name");
-                            String vicinity = place.optString("vicinity", "");
-                            double rating = place.optDouble("rating", 0.0);
+        if (pageToken != null && "INVALID_REQUEST".equals(result.status) && retries < MAX_PAGE_TOKEN_RETRIES) {
+            mainHandler.postDelayed(() -> fetchNextPage(latLng, token, ring, pageToken, collected, found,
+                    retries + 1), PAGE_TOKEN_DELAY_MS);
+            return;
+        }
 
-                            JSONObject geometry = place.getJSONObject("geometry");
-                            JSONObject location = geometry.getJSONObject("location");
-                            double lat = location.getDouble("lat");
-                            double lng = location.getDouble("lng");
+        long now = System.currentTimeMillis();
+        for (FuelStationInfo station : result.stations) {
+            collected.put(station.placeId, station);
+            if (result.closedPlaceIds.contains(station.placeId)) {
+                reportedClosedAt.put(station.placeId, now);
+            } else {
+                reportedClosedAt.remove(station.placeId);
+            }
+        }
+        if (!result.stations.isEmpty()) {
+            runInBackground(() -> stationStore.upsert(result.stations));
+        }
+        List<FuelStationInfo> stations = new ArrayList<>(collected.values());
+        int ringFound = found + result.stations.size();
+
+        if (result.isSuccessful() && result.nextPageToken != null) {
+            showFuelStations(stations, true, false);
+            mainHandler.postDelayed(() -> fetchNextPage(latLng, token, ring, result.nextPageToken, collected,
+                    ringFound, 0), PAGE_TOKEN_DELAY_MS);
+            return;
+        }
+        // Only remember and build on complete answers, not quota or key errors that come back as empty results
+        if (!result.isSuccessful()) {
+            finishSearch(token, stations);
+            return;
+        }
+        // A ring that ran into the Places limit would answer later searches without the pumps it missed; its
+        // stations are already in the station store
+        if (ringFound < PLACES_MAX_RESULTS) {
+            int radius = searchRings.radius(ring);
+            runInBackground(() -> stationCache.put(latLng.latitude, latLng.longitude, radius, stations,
+                    STATION_CACHE_TTL_MS));
+        }
+        onRingDone(latLng, token, ring, stations);
+    }
 
-                            LatLng stationLocation = new LatLng(lat, lng);
+    private void fetchNextPage(LatLng latLng, Object token, int ring, String pageToken,
+                               LinkedHashMap<String, FuelStationInfo> collected, int found, int retries) {
+        if (fetchScheduler.isLatest(token)) {
+            fetchNearbyPage(latLng, token, ring, pageToken, collected, found, retries);
+        } else {
+            fetchScheduler.complete(token);
+        }
+    }
 
-                            // Create marker with custom icon
-                            Marker marker = createFuelStationMarker(stationLocation, name, vicinity, rating);
-                            if (marker != null) {
-                                fuelStationMarkers.add(marker);
-                            }
+    // Fills the cache for an area ahead of the driver without touching what is on screen
+    private void prefetchStations(LatLng center, Object token, Runnable done) {
+        if (pumpService != null) {
+            pumpService.nearby(center.latitude, center.longitude, SEARCH_RADIUS_METERS, token,
+                    new ApiClient.Callback<PumpServiceClient.NearbyResult>() {
+                        @Override
+                        public void onResult(PumpServiceClient.NearbyResult result) {
+                            // A full answer may have been cut at the limit, so it does not cover the area
+                            storePrefetched(center, result.stations, result.availability,
+                                    result.stations.size() < PumpServiceClient.NEARBY_LIMIT, done);
                         }
 
-                        if (results.length() == 0) {
-                            Toast.makeText(this, "No fuel stations found within 5km", Toast.LENGTH_SHORT).show();
+                        @Override
+                        public void onError(Exception error) {
+                            Log.w(TAG, "Prefetch from the pump service failed", error);
+                            done.run();
+                        }
+                    });
+            return;
+        }
+
+        // A single page keeps the request budget predictable
+        apiClient.get(nearbySearchPath(center, SEARCH_RADIUS_METERS, null), token, PlacesJsonParser::parseNearbySearch,
+                new ApiClient.Callback<PlacesJsonParser.NearbySearchResult>() {
+                    @Override
+                    public void onResult(PlacesJsonParser.NearbySearchResult result) {
+                        if (result.isSuccessful()) {
+                            // Only a complete answer may mark the area as covered; a partial one still
+                            // helps the offline fallback
+                            storePrefetched(center, result.stations, Collections.emptyList(),
+                                    result.nextPageToken == null, done);
                         } else {
-                            Toast.makeText(this, "Found " + results.length() + " fuel stations", Toast.LENGTH_SHORT).show();
+                            done.run();
                         }
+                    }
 
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error parsing fuel stations response", e);
-                        Toast.makeText(this, "Error loading fuel stations", Toast.LENGTH_SHORT).show();
+                    @Override
+                    public void onError(Exception error) {
+                        Log.w(TAG, "Prefetch from Places failed", error);
+                        done.run();
                     }
-                },
-                error -> {
-                    Log.e(TAG, "Network error while fetching fuel stations", error);
-                    Toast.makeText(this, "Network error. Please check your connection.", Toast.LENGTH_SHORT).show();
                 });
+    }
 
-        requestQueue.add(request);
+    // Reports back only once the cache holds the area, so the next plan does not fetch it again
+    private void storePrefetched(LatLng center, List<FuelStationInfo> stations,
+                                 List<FuelAvailability> availability, boolean complete, Runnable done) {
+        runInBackground(() -> {
+            stationStore.upsert(stations);
+            stationStore.upsertAvailability(availability);
+            if (complete) {
+                stationCache.put(center.latitude, center.longitude, SEARCH_RADIUS_METERS, stations,
+                        STATION_CACHE_TTL_MS);
+            }
+            runOnMainThread(done);
+        });
     }
 
-    private Marker createFuelStationMarker(LatLng location, String name, String vicinity, double rating) {
-        try {
-            Bitmap fuelIcon = BitmapFactory.decodeResource(getResources(), R.drawable.fuel_icon);
-            String snippet = vicinity;
-            if (rating > 0) {
-                snippet += "\nRating: " + String.format("%.1f", rating) + "⭐";
+    // Offline fallback: answers the search from every station stored locally
+    private void showStoredStations(LatLng latLng, Object token) {
+        runInBackground(() -> {
+            List<FuelStationInfo> stored = stationStore.queryRadius(latLng.latitude, latLng.longitude,
+                    SEARCH_RADIUS_METERS);
+            List<FuelAvailability> storedAvailability = stationStore.queryAvailability(stored);
+            runOnMainThread(() -> {
+                fetchScheduler.complete(token);
+                if (!fetchScheduler.isLatest(token)) return;
+
+                offlineSearchCenter = latLng;
+                if (stored.isEmpty()) {
+                    Toast.makeText(this, "Network error. Please check your connection.", Toast.LENGTH_SHORT).show();
+                } else {
+                    availabilitySync.seed(storedAvailability);
+                    currentStations = stored;
+                    handOverFetchSpan(stored);
+                    clusterStations();
+                    updateInfoPanel(stored.size(), false);
+                    Toast.makeText(this, "Offline: showing " + stored.size() + " saved fuel stations",
+                            Toast.LENGTH_SHORT).show();
+                }
+            });
+        });
+    }
+
+    // Shows the stations found so far; while more pages are loading only the info panel count changes.
+    // An incomplete list is one a failed request cut short.
+    private void showFuelStations(List<FuelStationInfo> stations, boolean loadingMore, boolean incomplete) {
+        Log.d(TAG, "Found " + stations.size() + " fuel stations" + (loadingMore ? ", loading more" : ""));
+
+        currentStations = stations;
+        handOverFetchSpan(stations);
+        clusterStations();
+        updateInfoPanel(stations.size(), loadingMore);
+
+        if (loadingMore) {
+            return;
+        }
+        if (stations.isEmpty()) {
+            reportFullyDrawnOnce();
+            Toast.makeText(this, incomplete ? "Unable to load fuel stations. Please try again."
+                    : "No fuel stations found within " + searchedRadiusMeters / 1000 + "km", Toast.LENGTH_SHORT).show();
+        } else if (incomplete) {
+            Toast.makeText(this, "Found " + stations.size() + " fuel stations; some results could not be loaded",
+                    Toast.LENGTH_LONG).show();
+        } else {
+            Toast.makeText(this, "Found " + stations.size() + " fuel stations", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    // Samples traffic from the user to the visible pumps without a fresh sample, nearest first, in one request
+    private void refreshCongestion() {
+        if (userLatLng == null || congestionRequestInFlight) return;
+
+        LatLng origin = userLatLng;
+        long now = System.currentTimeMillis();
+        Set<String> stale = new HashSet<>(congestion.stale(placeIds(visibleStations), origin.latitude,
+                origin.longitude, now));
+        if (stale.isEmpty() || now < congestionRetryAt) {
+            applyCongestion();
+            return;
+        }
+        List<FuelStationInfo> candidates = new ArrayList<>(stale.size());
+        for (FuelStationInfo station : visibleStations) {
+            if (stale.contains(station.placeId)) candidates.add(station);
+        }
+        List<FuelStationInfo> batch = StationFilter.nearest(candidates, origin.latitude, origin.longitude,
+                MAX_RANKED_STATIONS);
+
+        congestionRequestInFlight = true;
+        routeService.rankByDriveTime(origin, batch, new RouteService.Callback<List<RouteService.Eta>>() {
+            @Override
+            public void onResult(List<RouteService.Eta> etas) {
+                congestionRequestInFlight = false;
+                congestionRetryDelayMs = MIN_CONGESTION_RETRY_DELAY_MS;
+                long sampledAt = System.currentTimeMillis();
+                Map<String, CongestionScores.Sample> samples = new HashMap<>(batch.size() * 2);
+                // Pumps without a route are remembered too, so they are not asked for again until the TTL
+                for (FuelStationInfo station : batch) {
+                    samples.put(station.placeId, CongestionScores.Sample.unreachable(station.placeId, sampledAt));
+                }
+                for (RouteService.Eta eta : etas) {
+                    samples.put(eta.station.placeId, new CongestionScores.Sample(eta.station.placeId,
+                            eta.durationSeconds, eta.durationInTrafficSeconds, eta.distanceMeters, sampledAt));
+                }
+                congestion.put(origin.latitude, origin.longitude, samples.values());
+                applyCongestion();
+            }
+
+            @Override
+            public void onError(Exception error) {
+                congestionRequestInFlight = false;
+                Log.w(TAG, "Unable to sample traffic to the visible pumps, pausing for "
+                        + congestionRetryDelayMs + " ms", error);
+                congestionRetryAt = System.currentTimeMillis() + congestionRetryDelayMs;
+                congestionRetryDelayMs = Math.min(MAX_CONGESTION_RETRY_DELAY_MS, congestionRetryDelayMs * 2);
             }
+        });
+    }
 
-            MarkerOptions markerOptions = new MarkerOptions()
-                    .position(location)
-                    .title(name)
-                    .snippet(snippet);
+    // Reorders the visible pumps by effective time to fuel and restyles the markers that depend on it
+    private void applyCongestion() {
+        long now = System.currentTimeMillis();
+        Map<String, FuelStationInfo> byPlaceId = new HashMap<>(visibleStations.size() * 2);
+        for (FuelStationInfo station : visibleStations) {
+            byPlaceId.put(station.placeId, station);
+        }
+        List<String> ranked = congestion.rank(placeIds(visibleStations), availabilitySync::get, now);
 
-            if (fuelIcon != null) {
-                Bitmap resizedIcon = Bitmap.createScaledBitmap(fuelIcon, 80, 80, false);
-                markerOptions.icon(BitmapDescriptorFactory.fromBitmap(resizedIcon));
-            } else {
-                markerOptions.icon(BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_RED));
+        List<FuelStationInfo> fastest = new ArrayList<>(FASTEST_SHOWN);
+        for (String placeId : ranked) {
+            if (fastest.size() == FASTEST_SHOWN || CongestionScores.effectiveSeconds(congestion.get(placeId, now),
+                    availabilitySync.get(placeId)) == CongestionScores.UNREACHABLE) {
+                break;
             }
+            fastest.add(byPlaceId.get(placeId));
+        }
 
-            Marker marker = mMap.addMarker(markerOptions);
-            marker.setTag(location);
-            return marker;
+        Set<String> changed = new HashSet<>(ranked);
+        changed.addAll(placeIds(fastestToFuel));
+        fastestToFuel = fastest;
+        if (stationMarkers != null) {
+            stationMarkers.refresh(changed);
+        }
+        updateInfoPanel(currentStations.size(), false);
+    }
+
+    private static List<String> placeIds(List<FuelStationInfo> stations) {
+        List<String> placeIds = new ArrayList<>(stations.size());
+        for (FuelStationInfo station : stations) {
+            placeIds.add(station.placeId);
+        }
+        return placeIds;
+    }
+
+    private static String formatMinutes(long seconds) {
+        return Math.max(1, Math.round(seconds / 60.0)) + " min";
+    }
 
-        } catch (Exception e) {
-            Log.e(TAG, "Error creating fuel station marker", e);
-            return null;
+    private void updateInfoPanel(int stationCount, boolean loadingMore) {
+        if (infoPanel == null || tvStationCount == null) return;
+
+        if (stationCount > 0 || loadingMore) {
+            String text = "Fuel Stations Found: " + stationCount + (loadingMore ? " (loading more…)" : "");
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < fastestToFuel.size(); i++) {
+                FuelStationInfo station = fastestToFuel.get(i);
+                CongestionScores.Sample sample = congestion.get(station.placeId, now);
+                if (sample == null) continue;
+                text += (i == 0 ? "\nFastest to fuel:" : "") + "\n" + (i + 1) + ". " + station.name + " · "
+                        + formatMinutes(sample.trafficSeconds) + ", " + sample.congestion().label;
+            }
+            tvStationCount.setText(text);
+            infoPanel.setVisibility(View.VISIBLE);
+        } else {
+            infoPanel.setVisibility(View.GONE);
         }
     }
 
-    private void clearFuelStationMarkers() {
-        for (Marker marker : fuelStationMarkers) {
-            marker.remove();
+    // The fetch's stations are about to be clustered; the span ends once they are rendered
+    private void handOverFetchSpan(List<FuelStationInfo> stations) {
+        if (fetchSpan == null) return;
+        if (stations.isEmpty()) {
+            fetchSpan.cancel();
+        } else {
+            stationsSpan = fetchSpan;
         }
-        fuelStationMarkers.clear();
+        fetchSpan = null;
     }
 
+    // Clusters the visible stations in the background and renders the result if it is still the latest
+    private void clusterStations() {
+        if (mMap == null || isDestroyed()) return;
+
+        int generation = ++clusterGeneration;
+        List<FuelStationInfo> stations = currentStations;
+        float zoom = mMap.getCameraPosition().zoom;
+        LatLngBounds bounds = mMap.getProjection().getVisibleRegion().latLngBounds;
+
+        PerfMetrics.Span renderSpan = stationsSpan;
+
+        clusterExecutor.execute(() -> {
+            PerfMetrics.Span clusterSpan = metrics.begin("stations.cluster");
+            if (stationClusterer == null || stationClusterer.source() != stations) {
+                stationClusterer = new StationClusterer<>(stations, station -> station.lat, station -> station.lng);
+            }
+            List<StationClusterer.Cluster<FuelStationInfo>> clusters = stationClusterer.cluster(zoom,
+                    bounds.southwest.latitude, bounds.southwest.longitude,
+                    bounds.northeast.latitude, bounds.northeast.longitude);
+
+            List<FuelStationInfo> singles = new ArrayList<>();
+            List<String> singleIds = new ArrayList<>();
+            List<StationClusterer.Cluster<FuelStationInfo>> groups = new ArrayList<>();
+            for (StationClusterer.Cluster<FuelStationInfo> cluster : clusters) {
+                if (cluster.size() == 1 || zoom >= MAX_CLUSTER_ZOOM) {
+                    singles.addAll(cluster.items);
+                    for (FuelStationInfo station : cluster.items) {
+                        singleIds.add(station.placeId);
+                    }
+                } else {
+                    groups.add(cluster);
+                }
+            }
+            clusterSpan.end();
+
+            runOnMainThread(() -> {
+                if (generation != clusterGeneration) return;
+                // Only markers whose station or cluster appeared, disappeared or changed are touched
+                metrics.measure("markers.render", () -> {
+                    stationMarkers.render(singles);
+                    clusterMarkers.render(groups);
+                });
+                if (renderSpan != null && renderSpan == stationsSpan) {
+                    renderSpan.end();
+                    stationsSpan = null;
+                }
+                if (!singles.isEmpty() || !groups.isEmpty()) {
+                    reportFullyDrawnOnce();
+                }
+                // Live availability and traffic are only worth following for pumps drawn as their own marker
+                availabilitySync.setVisiblePumps(singleIds);
+                visibleStations = singles;
+                refreshCongestion();
+            });
+        });
+    }
+
+    // Restyles only the markers whose availability changed since the last frame
+    private void onAvailabilityChanged(Map<String, FuelAvailability> changed) {
+        if (stationMarkers != null) {
+            stationMarkers.refresh(changed.keySet());
+        }
+        // Fuel levels count towards the effective time to fuel
+        long now = System.currentTimeMillis();
+        for (String placeId : changed.keySet()) {
+            if (congestion.get(placeId, now) != null) {
+                applyCongestion();
+                break;
+            }
+        }
+        List<FuelAvailability> updates = new ArrayList<>(changed.values());
+        runInBackground(() -> stationStore.upsertAvailability(updates));
+    }
+
+    // The launch is complete once the first stations are on the map, or a search has found none
+    private void reportFullyDrawnOnce() {
+        if (!fullyDrawnReported) {
+            fullyDrawnReported = true;
+            reportFullyDrawn();
+        }
+    }
+
+    private MarkerOptions createFuelStationMarkerOptions(FuelStationInfo station) {
+        String snippet = station.vicinity;
+        if (station.rating > 0) {
+            snippet += "\nRating: " + String.format("%.1f", station.rating) + "⭐";
+        }
+
+        CongestionScores.Sample sample = congestion.get(station.placeId, System.currentTimeMillis());
+        if (sample != null && sample.isReachable()) {
+            snippet += "\nDrive: " + formatMinutes(sample.trafficSeconds) + " (" + sample.congestion().label + ", "
+                    + String.format("%.1f km", sample.distanceMeters / 1000.0) + ")";
+        }
+        // The pumps fastest to fuel are drawn on top, the very fastest one larger
+        int fuelRank = fastestToFuel.indexOf(station);
+        int iconSize = fuelRank == 0 ? FASTEST_ICON_SIZE_PX : STATION_ICON_SIZE_PX;
+
+        FuelAvailability availability = availabilitySync.get(station.placeId);
+        BitmapDescriptor fuelIcon;
+        if (availability != null && availability.badgeColor() != FuelAvailability.BADGE_NONE) {
+            snippet += "\n" + availability.summary();
+            fuelIcon = markerIcons.getWithBadge(R.drawable.fuel_icon, iconSize, availability.badgeColor());
+        } else {
+            fuelIcon = markerIcons.get(R.drawable.fuel_icon, iconSize);
+        }
+        // While an admin has pumps selected, the others fade back
+        boolean dimmed = adminMode && !selectedPumps.isEmpty() && !selectedPumps.contains(station.placeId);
+        return new MarkerOptions()
+                .position(station.toLatLng())
+                .title(station.name)
+                .snippet(snippet)
+                .alpha(dimmed ? 0.4f : 1f)
+                .zIndex(fuelRank >= 0 ? FASTEST_SHOWN - fuelRank : 0)
+                .icon(fuelIcon != null ? fuelIcon : BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_RED));
+    }
+
+    // Places or moves the single marker for a tapped or searched location
+    private void showSearchLocationMarker(LatLng latLng, String title, @Nullable String snippet, float hue) {
+        if (searchLocationMarker != null) {
+            searchLocationMarker.setPosition(latLng);
+            searchLocationMarker.setTitle(title);
+            searchLocationMarker.setSnippet(snippet);
+            searchLocationMarker.setIcon(BitmapDescriptorFactory.defaultMarker(hue));
+        } else {
+            searchLocationMarker = mMap.addMarker(new MarkerOptions()
+                    .position(latLng)
+                    .title(title)
+                    .snippet(snippet)
+                    .icon(BitmapDescriptorFactory.defaultMarker(hue)));
+        }
+    }
+
+    // Drops the current route and search marker; station and user markers are reconciled, not rebuilt
     private void clearMarkersAndRoutes() {
-        clearFuelStationMarkers();
+        routeRequest = null;
         if (currentRoute != null) {
             currentRoute.remove();
             currentRoute = null;
+            currentRouteDetail = null;
+            locationTracker.setNavigating(false);
+            routePrefetcher.setRoute(null);
         }
-        mMap.clear();
-        // Re-add user location if available
-        if (userLatLng != null) {
-            showUserLocation(userLatLng);
+        if (searchLocationMarker != null) {
+            searchLocationMarker.remove();
+            searchLocationMarker = null;
         }
     }
 
+    // Repeat taps on the same pump are answered from the route cache without a request
     private void drawRoute(LatLng origin, LatLng destination) {
-        String url = "https://maps.googleapis.com/maps/api/directions/json?" +
-                "origin=" + origin.latitude + "," + origin.longitude +
-                "&destination=" + destination.latitude + "," + destination.longitude +
-                "&mode=driving" +
-                "&key=" + getString(R.string.MAPS_API_KEY);
+        Object request = new Object();
+        routeRequest = request;
+        routeService.route(origin, destination, new RouteService.Callback<RouteService.Route>() {
+            @Override
+            public void onResult(RouteService.Route route) {
+                if (request == routeRequest) {
+                    showRoute(route);
+                }
+            }
 
-        StringRequest request = new StringRequest(Request.Method.GET, url,
-                response -> {
-                    try {
-                        JSONObject jsonResponse = new JSONObject(response);
-                        JSONArray routes = jsonResponse.getJSONArray("routes");
-
-                        if (routes.length() > 0) {
-                            // Remove existing route
-                            if (currentRoute != null) {
-                                currentRoute.remove();
-                            }
-
-                            JSONObject route = routes.getJSONObject(0);
-                            String encodedPolyline = route.getJSONObject("overview_polyline").getString("points");
-
-                            // Get route info
-                            JSONArray legs = route.getJSONArray("legs");
-                            if (legs.length() > 0) {
-                                JSONObject leg = legs.getJSONObject(0);
-                                String distance = leg.getJSONObject("distance").getString("text");
-                                String duration = leg.getJSONObject("duration").getString("text");
-
-                                Toast.makeText(this, "Distance: " + distance + ", Duration: " + duration,
-                                        Toast.LENGTH_LONG).show();
-                            }
-
-                            // Decode and draw polyline
-                            List<LatLng> path = PolyUtil.decode(encodedPolyline);
-                            currentRoute = mMap.addPolyline(new PolylineOptions()
-                                    .addAll(path)
-                                    .color(0xFF1976D2)
-                                    .width(8)
-                                    .pattern(Arrays.asList(new Dash(10), new Gap(5))));
-
-                            Log.d(TAG, "Route drawn successfully");
-                        } else {
-                            Toast.makeText(this, "No route found", Toast.LENGTH_SHORT).show();
-                        }
+            @Override
+            public void onError(Exception error) {
+                if (request != routeRequest) return;
+                Log.e(TAG, "Error while fetching directions", error);
+                Toast.makeText(MainActivity.this, "Network error while getting directions",
+                        Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
 
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error parsing directions response", e);
-                        Toast.makeText(this, "Error drawing route", Toast.LENGTH_SHORT).show();
-                    }
-                },
-                error -> {
-                    Log.e(TAG, "Network error while fetching directions", error);
-                    Toast.makeText(this, "Network error while getting directions", Toast.LENGTH_SHORT).show();
-                });
+    private void showRoute(RouteService.Route routeWithDetail) {
+        PlacesJsonParser.RouteResult route = routeWithDetail.result;
+        if (!route.hasRoute()) {
+            Toast.makeText(this, "No route found", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        // Remove existing route
+        if (currentRoute != null) {
+            currentRoute.remove();
+        }
 
-        requestQueue.add(request);
+        if (route.distanceText != null && route.durationText != null) {
+            Toast.makeText(this, "Distance: " + route.distanceText + ", Duration: " + route.durationText,
+                    Toast.LENGTH_LONG).show();
+        }
+
+        currentRouteDetail = routeWithDetail.detail;
+        shownRoutePoints = currentRouteDetail.forZoom(mMap.getCameraPosition().zoom);
+        currentRoute = mMap.addPolyline(new PolylineOptions()
+                .addAll(shownRoutePoints)
+                .color(0xFF1976D2)
+                .width(8)
+                .pattern(Arrays.asList(new Dash(10), new Gap(5))));
+        locationTracker.setNavigating(true);
+        routePrefetcher.setRoute(currentRouteDetail.source());
+
+        Log.d(TAG, "Route drawn with " + shownRoutePoints.size() + " of " + route.path.size() + " points");
+    }
+
+    // Swaps in the route's simplification for the new zoom, if it differs from the one drawn
+    private void updateRouteDetail() {
+        if (currentRoute == null || currentRouteDetail == null) return;
+
+        List<LatLng> points = currentRouteDetail.forZoom(mMap.getCameraPosition().zoom);
+        if (points != shownRoutePoints) {
+            shownRoutePoints = points;
+            currentRoute.setPoints(points);
+        }
+    }
+
+    // Callbacks can still arrive after onDestroy has shut the executor down, so their work is dropped
+    private void runInBackground(Runnable task) {
+        if (!isDestroyed()) {
+            backgroundExecutor.execute(task);
+        }
+    }
+
+    // Posts background results back to the UI thread, dropping them if the activity has gone away meanwhile
+    private void runOnMainThread(Runnable action) {
+        mainHandler.post(() -> {
+            if (!isDestroyed()) {
+                action.run();
+            }
+        });
     }
 
     @Override
@@ -543,11 +1324,8 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
                     getNearbyPumps(selectedLocation);
 
                     // Add marker for searched place
-                    mMap.addMarker(new MarkerOptions()
-                            .position(selectedLocation)
-                            .title(place.getName())
-                            .snippet(place.getAddress())
-                            .icon(BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_GREEN)));
+                    showSearchLocationMarker(selectedLocation, place.getName(), place.getAddress(),
+                            BitmapDescriptorFactory.HUE_GREEN);
                 }
             } else if (resultCode == AutocompleteActivity.RESULT_ERROR && data != null) {
                 com.google.android.gms.common.api.Status status = Autocomplete.getStatusFromIntent(data);
@@ -577,17 +1355,78 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (requestQueue != null) {
-            requestQueue.cancelAll(TAG);
+        if (fetchScheduler != null) {
+            fetchScheduler.cancelAll();
+        }
+        if (apiClient != null) {
+            apiClient.cancel(TAG);
+        }
+        // Writes already queued still reach the store, so it closes as the executor's last task
+        backgroundExecutor.execute(stationStore::close);
+        backgroundExecutor.shutdown();
+        clusterExecutor.shutdownNow();
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // Resubscribes the visible pumps dropped in onStop
+        if (mMap != null) {
+            clusterStations();
+        }
+        // Reports the current network straight away, so returning online while stopped also refetches
+        connectivityManager.registerDefaultNetworkCallback(networkCallback);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // No live availability while the map is not on screen; a render still in flight is dropped too
+        clusterGeneration++;
+        availabilitySync.stop();
+        connectivityManager.unregisterNetworkCallback(networkCallback);
+        if (mMap != null) {
+            mapState.saveCamera(mMap.getCameraPosition());
+        }
+        // The metrics are snapshotted here, so the dump matches the moment the activity stopped
+        String metricsDump = BuildConfig.DEBUG ? metrics.dump() : null;
+        // Writing thousands of stations is disk work, so it stays off the main thread, as does the dump
+        runInBackground(() -> {
+            try {
+                stationCache.save();
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to persist station cache", e);
+            }
+            if (metricsDump != null) {
+                // adb shell run-as com.fuellens.application cat files/perf/metrics.txt
+                PerfMetrics.dumpToLog(metricsDump);
+                try {
+                    PerfMetrics.dumpToFile(metricsDump, new File(getFilesDir(), "perf/metrics.txt"));
+                } catch (IOException e) {
+                    Log.w(TAG, "Unable to write performance metrics", e);
+                }
+            }
+        });
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (trackLocation) {
+            locationTracker.start();
+        }
+        if (BuildConfig.DEBUG) {
+            metrics.startFrameTracking();
         }
     }
 
     @Override
     protected void onPause() {
         super.onPause();
-        // Stop location updates to save battery
-        if (fusedLocationProviderClient != null) {
-            fusedLocationProviderClient.removeLocationUpdates(new LocationCallback() {});
-        }
+        // Release location updates entirely to save battery; onResume picks them up again
+        locationTracker.stop();
+        routePrefetcher.stop();
+        metrics.stopFrameTracking();
     }
 }
\ No newline at end of file
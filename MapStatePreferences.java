@@ -0,0 +1,57 @@
+package com.fuellens.application;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.google.android.gms.maps.model.CameraPosition;
+import com.google.android.gms.maps.model.LatLng;
+
+/**
+ * Remembers where the map was left and where stations were last searched, so the next launch can
+ * place the camera and draw the stored stations before any location fix or network request.
+ */
+final class MapStatePreferences {
+
+    private static final String PREFS_NAME = "map_state";
+    private static final String KEY_CAMERA_LAT = "camera_lat";
+    private static final String KEY_CAMERA_LNG = "camera_lng";
+    private static final String KEY_CAMERA_ZOOM = "camera_zoom";
+    private static final String KEY_SEARCH_LAT = "search_lat";
+    private static final String KEY_SEARCH_LNG = "search_lng";
+
+    private final SharedPreferences preferences;
+
+    MapStatePreferences(Context context) {
+        this.preferences = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /** Returns the camera saved by {@link #saveCamera}, or null on first launch. */
+    CameraPosition lastCamera() {
+        if (!preferences.contains(KEY_CAMERA_LAT)) return null;
+        LatLng target = new LatLng(Double.longBitsToDouble(preferences.getLong(KEY_CAMERA_LAT, 0)),
+                Double.longBitsToDouble(preferences.getLong(KEY_CAMERA_LNG, 0)));
+        return CameraPosition.fromLatLngZoom(target, preferences.getFloat(KEY_CAMERA_ZOOM, 14));
+    }
+
+    void saveCamera(CameraPosition camera) {
+        preferences.edit()
+                .putLong(KEY_CAMERA_LAT, Double.doubleToRawLongBits(camera.target.latitude))
+                .putLong(KEY_CAMERA_LNG, Double.doubleToRawLongBits(camera.target.longitude))
+                .putFloat(KEY_CAMERA_ZOOM, camera.zoom)
+                .apply();
+    }
+
+    /** Returns the centre of the last station search, or null if there has been none. */
+    LatLng lastSearchCenter() {
+        if (!preferences.contains(KEY_SEARCH_LAT)) return null;
+        return new LatLng(Double.longBitsToDouble(preferences.getLong(KEY_SEARCH_LAT, 0)),
+                Double.longBitsToDouble(preferences.getLong(KEY_SEARCH_LNG, 0)));
+    }
+
+    void saveSearchCenter(LatLng center) {
+        preferences.edit()
+                .putLong(KEY_SEARCH_LAT, Double.doubleToRawLongBits(center.latitude))
+                .putLong(KEY_SEARCH_LNG, Double.doubleToRawLongBits(center.longitude))
+                .apply();
+    }
+}
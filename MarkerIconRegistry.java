@@ -0,0 +1,168 @@
+package com.fuellens.application;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.Log;
+
+import com.google.android.gms.maps.model.BitmapDescriptor;
+import com.google.android.gms.maps.model.BitmapDescriptorFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decodes marker icons once and hands out shared {@link BitmapDescriptor}s.
+ *
+ * <p>Drawables are decoded straight to the requested pixel size using inSampleSize and
+ * inDensity/inTargetDensity, instead of decoding at full resolution and scaling a copy. Status variants
+ * (the base icon with a coloured badge) are generated on first use and reused for every later marker.
+ * Must be used on the main thread, after the map has been initialised.
+ */
+final class MarkerIconRegistry {
+
+    private static final String TAG = "MarkerIconRegistry";
+
+    private final Resources resources;
+    private final Map<String, BitmapDescriptor> descriptors = new HashMap<>();
+    private final Map<String, Bitmap> bitmaps = new HashMap<>();
+
+    MarkerIconRegistry(Resources resources) {
+        this.resources = resources;
+    }
+
+    /** Returns the drawable as a square icon of the given size, or null if it cannot be decoded. */
+    BitmapDescriptor get(int drawableRes, int sizePx) {
+        String key = drawableRes + ":" + sizePx;
+        BitmapDescriptor descriptor = descriptors.get(key);
+        if (descriptor == null) {
+            Bitmap bitmap = decode(drawableRes, sizePx);
+            if (bitmap == null) {
+                return null;
+            }
+            descriptor = BitmapDescriptorFactory.fromBitmap(bitmap);
+            descriptors.put(key, descriptor);
+        }
+        return descriptor;
+    }
+
+    /**
+     * Returns the icon with a filled status badge of the given colour in its bottom-right corner,
+     * or null if the base drawable cannot be decoded.
+     */
+    BitmapDescriptor getWithBadge(int drawableRes, int sizePx, int badgeColor) {
+        String key = drawableRes + ":" + sizePx + ":" + badgeColor;
+        BitmapDescriptor descriptor = descriptors.get(key);
+        if (descriptor == null) {
+            Bitmap base = decode(drawableRes, sizePx);
+            if (base == null) {
+                return null;
+            }
+            Bitmap badged = base.copy(Bitmap.Config.ARGB_8888, true);
+            PerfMetrics.global().count("bitmaps.allocated");
+            Canvas canvas = new Canvas(badged);
+            float radius = sizePx / 6f;
+            Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            paint.setColor(0xFFFFFFFF);
+            canvas.drawCircle(sizePx - radius, sizePx - radius, radius, paint);
+            paint.setColor(badgeColor);
+            canvas.drawCircle(sizePx - radius, sizePx - radius, radius * 0.7f, paint);
+
+            descriptor = BitmapDescriptorFactory.fromBitmap(badged);
+            descriptors.put(key, descriptor);
+        }
+        return descriptor;
+    }
+
+    /**
+     * Returns a round cluster bubble labelled with the count. Counts are bucketed ("10+", "50+", ...)
+     * so only a handful of bubbles are ever generated.
+     */
+    BitmapDescriptor getClusterBubble(int count, int sizePx, int color) {
+        String label = clusterLabel(count);
+        String key = "cluster:" + label + ":" + sizePx + ":" + color;
+        BitmapDescriptor descriptor = descriptors.get(key);
+        if (descriptor == null) {
+            Bitmap bubble = Bitmap.createBitmap(sizePx, sizePx, Bitmap.Config.ARGB_8888);
+            PerfMetrics.global().count("bitmaps.allocated");
+            Canvas canvas = new Canvas(bubble);
+            float center = sizePx / 2f;
+            Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            paint.setColor(0xFFFFFFFF);
+            canvas.drawCircle(center, center, center, paint);
+            paint.setColor(color);
+            canvas.drawCircle(center, center, center * 0.85f, paint);
+
+            paint.setColor(0xFFFFFFFF);
+            paint.setTextAlign(Paint.Align.CENTER);
+            paint.setFakeBoldText(true);
+            paint.setTextSize(sizePx * (label.length() > 3 ? 0.28f : 0.36f));
+            canvas.drawText(label, center, center - (paint.descent() + paint.ascent()) / 2, paint);
+
+            descriptor = BitmapDescriptorFactory.fromBitmap(bubble);
+            descriptors.put(key, descriptor);
+        }
+        return descriptor;
+    }
+
+    private static String clusterLabel(int count) {
+        if (count < 10) return String.valueOf(count);
+        int[] buckets = {10000, 5000, 1000, 500, 100, 50, 20, 10};
+        for (int bucket : buckets) {
+            if (count >= bucket) return bucket + "+";
+        }
+        return String.valueOf(count);
+    }
+
+    void clear() {
+        descriptors.clear();
+        bitmaps.clear();
+    }
+
+    // Decodes the drawable to exactly sizePx wide, reusing an earlier decode of the same size
+    private Bitmap decode(int drawableRes, int sizePx) {
+        String key = drawableRes + ":" + sizePx;
+        Bitmap bitmap = bitmaps.get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        options.inScaled = false;
+        BitmapFactory.decodeResource(resources, drawableRes, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            Log.w(TAG, "Unable to read bounds of drawable " + drawableRes);
+            return null;
+        }
+
+        // Subsample by powers of two while staying at or above the target, then let the decoder
+        // scale the remainder by treating the source width as its density
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= sizePx && options.outHeight / (sampleSize * 2) >= sizePx) {
+            sampleSize *= 2;
+        }
+        int sampledWidth = options.outWidth / sampleSize;
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inScaled = true;
+        options.inDensity = sampledWidth;
+        options.inTargetDensity = sizePx;
+        bitmap = BitmapFactory.decodeResource(resources, drawableRes, options);
+        if (bitmap == null) {
+            Log.w(TAG, "Unable to decode drawable " + drawableRes);
+            return null;
+        }
+
+        // Non-square sources keep their aspect ratio from the decoder; only then fall back to a scaled copy
+        if (bitmap.getWidth() != sizePx || bitmap.getHeight() != sizePx) {
+            bitmap = Bitmap.createScaledBitmap(bitmap, sizePx, sizePx, true);
+        }
+        PerfMetrics.global().count("bitmaps.allocated");
+        bitmaps.put(key, bitmap);
+        return bitmap;
+    }
+}
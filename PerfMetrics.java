@@ -0,0 +1,231 @@
+package com.fuellens.application;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide latency histograms and counters for the fetch-to-marker pipeline.
+ *
+ * <p>Spans measure a named stage and also show up as trace sections in systrace/Perfetto; spans that
+ * cross threads use async sections where the platform has them. Durations go into fixed log-scale
+ * histograms, so after a name's first sample recording allocates nothing and memory stays constant
+ * however long the app runs, at the cost of percentiles being accurate to about 10%. {@link #dump()}
+ * reports count, p50, p95, p99 and max per span plus every counter, for logcat or a file pulled from a
+ * test device. Thread-safe.
+ */
+final class PerfMetrics {
+
+    private static final String TAG = "PerfMetrics";
+
+    private static final PerfMetrics GLOBAL = new PerfMetrics();
+
+    private final Map<String, Histogram> histograms = new TreeMap<>();
+    private final Map<String, AtomicLong> counters = new TreeMap<>();
+    private final AtomicInteger nextCookie = new AtomicInteger();
+
+    // Main thread only
+    private Choreographer.FrameCallback frameCallback;
+
+    static PerfMetrics global() {
+        return GLOBAL;
+    }
+
+    /** A running measurement; end it exactly once, or cancel it if the work was abandoned. */
+    final class Span {
+        private final String name;
+        private final int cookie;
+        private final long startNanos;
+        private boolean finished;
+
+        private Span(String name) {
+            this.name = name;
+            this.cookie = nextCookie.incrementAndGet();
+            this.startNanos = SystemClock.elapsedRealtimeNanos();
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                Trace.beginAsyncSection(name, cookie);
+            }
+        }
+
+        /** Records the elapsed time; returns it in milliseconds. */
+        synchronized double end() {
+            if (finished) return 0;
+            finished = true;
+            endTrace();
+            double millis = (SystemClock.elapsedRealtimeNanos() - startNanos) / 1e6;
+            record(name, millis);
+            return millis;
+        }
+
+        synchronized void cancel() {
+            if (finished) return;
+            finished = true;
+            endTrace();
+        }
+
+        private void endTrace() {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                Trace.endAsyncSection(name, cookie);
+            }
+        }
+    }
+
+    Span begin(String name) {
+        return new Span(name);
+    }
+
+    /** Runs a same-thread stage inside a trace section and records how long it took. */
+    void measure(String name, Runnable stage) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        Trace.beginSection(name);
+        try {
+            stage.run();
+        } finally {
+            Trace.endSection();
+            record(name, (SystemClock.elapsedRealtimeNanos() - start) / 1e6);
+        }
+    }
+
+    void record(String name, double millis) {
+        Histogram histogram;
+        synchronized (histograms) {
+            histogram = histograms.get(name);
+            if (histogram == null) {
+                histogram = new Histogram();
+                histograms.put(name, histogram);
+            }
+        }
+        histogram.add(millis);
+    }
+
+    void count(String name) {
+        add(name, 1);
+    }
+
+    void add(String name, long delta) {
+        AtomicLong counter;
+        synchronized (counters) {
+            counter = counters.get(name);
+            if (counter == null) {
+                counter = new AtomicLong();
+                counters.put(name, counter);
+            }
+        }
+        counter.addAndGet(delta);
+    }
+
+    /**
+     * Records the interval between consecutive frames as "frame.interval" until stopped. This keeps a
+     * frame callback posted on every vsync, so it is meant for test builds only. Main thread only.
+     */
+    void startFrameTracking() {
+        if (frameCallback != null) return;
+        Choreographer choreographer = Choreographer.getInstance();
+        frameCallback = new Choreographer.FrameCallback() {
+            private long lastFrameNanos;
+
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                if (frameCallback != this) return;
+                if (lastFrameNanos != 0) {
+                    record("frame.interval", (frameTimeNanos - lastFrameNanos) / 1e6);
+                }
+                lastFrameNanos = frameTimeNanos;
+                choreographer.postFrameCallback(this);
+            }
+        };
+        choreographer.postFrameCallback(frameCallback);
+    }
+
+    void stopFrameTracking() {
+        if (frameCallback == null) return;
+        Choreographer.getInstance().removeFrameCallback(frameCallback);
+        frameCallback = null;
+    }
+
+    String dump() {
+        StringBuilder out = new StringBuilder();
+        synchronized (histograms) {
+            for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+                out.append(entry.getKey()).append(' ').append(entry.getValue().summary()).append('\n');
+            }
+        }
+        synchronized (counters) {
+            for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+                out.append(entry.getKey()).append(" = ").append(entry.getValue().get()).append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    static void dumpToLog(String dump) {
+        for (String line : dump.split("\n")) {
+            if (!line.isEmpty()) Log.i(TAG, line);
+        }
+    }
+
+    /** Writes a {@link #dump()} taken earlier, so the file can be written off the thread that took it. */
+    static void dumpToFile(String dump, File file) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create " + parent);
+        }
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(dump);
+        }
+    }
+
+    /**
+     * Log-linear histogram of millisecond durations: {@value #SUB_BUCKETS} buckets per power of two from
+     * {@value #MIN_MILLIS} ms up, values below or above the range land in the first or last bucket.
+     */
+    static final class Histogram {
+        private static final double MIN_MILLIS = 0.05;
+        private static final int SUB_BUCKETS = 8;
+        // 0.05 ms * 2^21 is about 105 s
+        private static final int BUCKETS = 21 * SUB_BUCKETS;
+
+        private final long[] counts = new long[BUCKETS];
+        private long total;
+        private double max;
+
+        synchronized void add(double millis) {
+            int bucket = millis <= MIN_MILLIS
+                    ? 0 : (int) (Math.log(millis / MIN_MILLIS) / Math.log(2) * SUB_BUCKETS);
+            counts[Math.min(BUCKETS - 1, bucket)]++;
+            total++;
+            max = Math.max(max, millis);
+        }
+
+        /** Upper bound of the bucket holding the given quantile, capped at the largest value seen. */
+        synchronized double percentile(double quantile) {
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(max, MIN_MILLIS * Math.pow(2, (i + 1) / (double) SUB_BUCKETS));
+                }
+            }
+            return max;
+        }
+
+        synchronized String summary() {
+            return String.format(Locale.ROOT, "n=%d p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms",
+                    total, percentile(0.50), percentile(0.95), percentile(0.99), max);
+        }
+    }
+}
@@ -0,0 +1,486 @@
+package com.fuellens.application;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Streaming decoders for the Places nearby search, Directions and Distance Matrix responses.
+ *
+ * <p>Responses are read token by token with {@link JsonReader} straight into the app's own model, so no
+ * intermediate JSONObject tree is built. Fields the app does not use are skipped without being decoded.
+ * These methods do blocking work and are meant to run on a background executor.
+ */
+final class PlacesJsonParser {
+
+    private PlacesJsonParser() {
+    }
+
+    /** Decoded nearby search response page. */
+    static final class NearbySearchResult {
+        final String status;
+        final List<FuelStationInfo> stations;
+        // Token for the next page of up to 20 results, or null on the last page
+        final String nextPageToken;
+        // Stations Places reports as closed right now or for good; only true at the time of the request
+        final Set<String> closedPlaceIds;
+
+        NearbySearchResult(String status, List<FuelStationInfo> stations, String nextPageToken,
+                           Set<String> closedPlaceIds) {
+            this.status = status;
+            this.stations = Collections.unmodifiableList(stations);
+            this.nextPageToken = nextPageToken;
+            this.closedPlaceIds = Collections.unmodifiableSet(closedPlaceIds);
+        }
+
+        // Quota and key errors also arrive as an empty result list, so callers check this before trusting it
+        boolean isSuccessful() {
+            return "OK".equals(status) || "ZERO_RESULTS".equals(status);
+        }
+    }
+
+    /** First route of a Directions response, with the overview polyline already decoded. */
+    static final class RouteResult {
+        final String status;
+        final List<LatLng> path;
+        final String distanceText;
+        final String durationText;
+
+        RouteResult(String status, List<LatLng> path, String distanceText, String durationText) {
+            this.status = status;
+            this.path = Collections.unmodifiableList(path);
+            this.distanceText = distanceText;
+            this.durationText = durationText;
+        }
+
+        boolean hasRoute() {
+            return !path.isEmpty();
+        }
+    }
+
+    /** One origin row of a Distance Matrix response, with an element per destination in request order. */
+    static final class DistanceMatrixResult {
+        final String status;
+        final List<MatrixElement> elements;
+
+        DistanceMatrixResult(String status, List<MatrixElement> elements) {
+            this.status = status;
+            this.elements = Collections.unmodifiableList(elements);
+        }
+
+        boolean isSuccessful() {
+            return "OK".equals(status);
+        }
+    }
+
+    /** Drive distance and time to one destination; only meaningful when {@link #isFound()} holds. */
+    static final class MatrixElement {
+        final String status;
+        final long distanceMeters;
+        final String distanceText;
+        final long durationSeconds;
+        final String durationText;
+        // Under current traffic; equal to durationSeconds when the request had no departure time
+        final long durationInTrafficSeconds;
+
+        MatrixElement(String status, long distanceMeters, String distanceText,
+                      long durationSeconds, String durationText, long durationInTrafficSeconds) {
+            this.status = status;
+            this.distanceMeters = distanceMeters;
+            this.distanceText = distanceText;
+            this.durationSeconds = durationSeconds;
+            this.durationText = durationText;
+            this.durationInTrafficSeconds = durationInTrafficSeconds;
+        }
+
+        boolean isFound() {
+            return "OK".equals(status);
+        }
+    }
+
+    static NearbySearchResult parseNearbySearch(Reader source) throws IOException {
+        String status = "";
+        String nextPageToken = null;
+        List<FuelStationInfo> stations = new ArrayList<>();
+        Set<String> closedPlaceIds = new HashSet<>();
+
+        try (JsonReader reader = new JsonReader(source)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "status":
+                        status = reader.nextString();
+                        break;
+                    case "next_page_token":
+                        nextPageToken = reader.nextString();
+                        break;
+                    case "results":
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            FuelStationInfo station = readStation(reader, closedPlaceIds);
+                            if (station != null) {
+                                stations.add(station);
+                            }
+                        }
+                        reader.endArray();
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+        }
+        return new NearbySearchResult(status, stations, nextPageToken, closedPlaceIds);
+    }
+
+    // Returns null for entries without a name or location, which cannot be shown on the map. Adds the
+    // place id to closedPlaceIds when the entry says it is closed now or no longer operating.
+    private static FuelStationInfo readStation(JsonReader reader, Set<String> closedPlaceIds) throws IOException {
+        String placeId = "";
+        String name = null;
+        String vicinity = "";
+        double rating = 0.0;
+        int userRatingsTotal = 0;
+        double[] location = null;
+        boolean closed = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (field) {
+                case "place_id":
+                    placeId = reader.nextString();
+                    break;
+                case "name":
+                    name = reader.nextString();
+                    break;
+                case "vicinity":
+                    vicinity = reader.nextString();
+                    break;
+                case "rating":
+                    rating = reader.nextDouble();
+                    break;
+                case "user_ratings_total":
+                    userRatingsTotal = reader.nextInt();
+                    break;
+                case "geometry":
+                    location = readGeometryLocation(reader);
+                    break;
+                case "business_status":
+                    closed |= !"OPERATIONAL".equals(reader.nextString());
+                    break;
+                case "opening_hours":
+                    closed |= readClosedNow(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (name == null || location == null) {
+            return null;
+        }
+        // Markers and caches are keyed by place id, so entries without one get a stable stand-in
+        if (placeId.isEmpty()) {
+            placeId = location[0] + "," + location[1];
+        }
+        if (closed) {
+            closedPlaceIds.add(placeId);
+        }
+        return new FuelStationInfo(placeId, name, vicinity, rating, userRatingsTotal, location[0], location[1]);
+    }
+
+    // Stations without opening hours count as open
+    private static boolean readClosedNow(JsonReader reader) throws IOException {
+        boolean closed = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("open_now".equals(reader.nextName()) && reader.peek() == JsonToken.BOOLEAN) {
+                closed = !reader.nextBoolean();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return closed;
+    }
+
+    private static double[] readGeometryLocation(JsonReader reader) throws IOException {
+        double[] location = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("location".equals(reader.nextName())) {
+                location = readLatLng(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return location;
+    }
+
+    private static double[] readLatLng(JsonReader reader) throws IOException {
+        double lat = Double.NaN;
+        double lng = Double.NaN;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "lat":
+                    lat = reader.nextDouble();
+                    break;
+                case "lng":
+                    lng = reader.nextDouble();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return Double.isNaN(lat) || Double.isNaN(lng) ? null : new double[]{lat, lng};
+    }
+
+    static RouteResult parseDirections(Reader source) throws IOException {
+        String status = "";
+        String encodedPolyline = null;
+        String[] legText = {null, null};
+
+        try (JsonReader reader = new JsonReader(source)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "status":
+                        status = reader.nextString();
+                        break;
+                    case "routes":
+                        reader.beginArray();
+                        // Only the first route is drawn, later alternatives are skipped unread
+                        if (reader.hasNext()) {
+                            encodedPolyline = readRoute(reader, legText);
+                        }
+                        while (reader.hasNext()) {
+                            reader.skipValue();
+                        }
+                        reader.endArray();
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+        }
+
+        List<LatLng> path = encodedPolyline != null
+                ? decodePolyline(encodedPolyline) : Collections.<LatLng>emptyList();
+        return new RouteResult(status, path, legText[0], legText[1]);
+    }
+
+    /**
+     * Decodes an encoded polyline: each coordinate is the delta from the previous one in 1e-5 degrees,
+     * zig-zag signed and written as 5-bit groups offset by 63. Malformed trailing data ends the path.
+     */
+    static List<LatLng> decodePolyline(String encoded) {
+        int length = encoded.length();
+        // Every point takes at least two characters
+        List<LatLng> path = new ArrayList<>(length / 2);
+        int index = 0;
+        int lat = 0;
+        int lng = 0;
+        int[] delta = new int[2];
+        while (index < length) {
+            for (int axis = 0; axis < 2; axis++) {
+                int result = 0;
+                int shift = 0;
+                int chunk;
+                do {
+                    if (index >= length) return path;
+                    chunk = encoded.charAt(index++) - 63;
+                    result |= (chunk & 0x1f) << shift;
+                    shift += 5;
+                } while (chunk >= 0x20);
+                delta[axis] = (result & 1) != 0 ? ~(result >> 1) : result >> 1;
+            }
+            lat += delta[0];
+            lng += delta[1];
+            path.add(new LatLng(lat * 1e-5, lng * 1e-5));
+        }
+        return path;
+    }
+
+    // Reads one route object, returning its overview polyline and filling legText with the first leg's texts
+    private static String readRoute(JsonReader reader, String[] legText) throws IOException {
+        String encodedPolyline = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "overview_polyline":
+                    encodedPolyline = readStringField(reader, "points");
+                    break;
+                case "legs":
+                    reader.beginArray();
+                    if (reader.hasNext()) {
+                        readLeg(reader, legText);
+                    }
+                    while (reader.hasNext()) {
+                        reader.skipValue();
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return encodedPolyline;
+    }
+
+    private static void readLeg(JsonReader reader, String[] legText) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "distance":
+                    legText[0] = readStringField(reader, "text");
+                    break;
+                case "duration":
+                    legText[1] = readStringField(reader, "text");
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+    }
+
+    // Reads an object and returns the string value of a single field, skipping everything else
+    private static String readStringField(JsonReader reader, String field) throws IOException {
+        String value = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (field.equals(reader.nextName()) && reader.peek() == JsonToken.STRING) {
+                value = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return value;
+    }
+
+    static DistanceMatrixResult parseDistanceMatrix(Reader source) throws IOException {
+        String status = "";
+        List<MatrixElement> elements = new ArrayList<>();
+
+        try (JsonReader reader = new JsonReader(source)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "status":
+                        status = reader.nextString();
+                        break;
+                    case "rows":
+                        reader.beginArray();
+                        // Requests are made from a single origin, so only the first row is read
+                        if (reader.hasNext()) {
+                            readMatrixRow(reader, elements);
+                        }
+                        while (reader.hasNext()) {
+                            reader.skipValue();
+                        }
+                        reader.endArray();
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+        }
+        return new DistanceMatrixResult(status, elements);
+    }
+
+    private static void readMatrixRow(JsonReader reader, List<MatrixElement> elements) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("elements".equals(reader.nextName())) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    elements.add(readMatrixElement(reader));
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static MatrixElement readMatrixElement(JsonReader reader) throws IOException {
+        String status = "";
+        // Index 0 holds the distance, index 1 the duration, index 2 the duration in traffic if present
+        String[] texts = {null, null, null};
+        long[] values = {0, 0, -1};
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "status":
+                    status = reader.nextString();
+                    break;
+                case "distance":
+                    readTextAndValue(reader, texts, values, 0);
+                    break;
+                case "duration":
+                    readTextAndValue(reader, texts, values, 1);
+                    break;
+                case "duration_in_traffic":
+                    readTextAndValue(reader, texts, values, 2);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return new MatrixElement(status, values[0], texts[0], values[1], texts[1],
+                values[2] >= 0 ? values[2] : values[1]);
+    }
+
+    // Reads a {"text": ..., "value": ...} object into texts[index] and values[index]
+    private static void readTextAndValue(JsonReader reader, String[] texts, long[] values, int index)
+            throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "text":
+                    texts[index] = reader.nextString();
+                    break;
+                case "value":
+                    values[index] = reader.nextLong();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+    }
+}
@@ -0,0 +1,109 @@
+package com.fuellens.application;
+
+import android.os.Handler;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link AvailabilityChannel} backed by the pump service's change feed.
+ *
+ * <p>All subscribed pumps share one long poll: each response carries the changes to any of them and a
+ * cursor for the next poll, so a screen of pumps costs one open request instead of one listener each.
+ * Subscriptions made in the same main-thread turn are coalesced into one restart of the poll, which first
+ * fetches the current values and then follows changes from there. Failed polls are retried with a growing
+ * delay. Main thread only.
+ */
+final class PumpServiceAvailabilityChannel implements AvailabilityChannel {
+
+    private static final String TAG = "PumpServiceChannel";
+
+    private static final long MIN_RETRY_DELAY_MS = 1000;
+    private static final long MAX_RETRY_DELAY_MS = 60000;
+
+    private final PumpServiceClient client;
+    private final Handler mainHandler;
+    private final Map<String, Listener> listeners = new HashMap<>();
+    // Tag of the poll in flight; every restart gets a fresh one so stale responses are recognised
+    private Object pollTag;
+    private long cursor = -1;
+    private long retryDelayMs = MIN_RETRY_DELAY_MS;
+    private boolean restartPending;
+
+    private final Runnable restart = this::restart;
+
+    PumpServiceAvailabilityChannel(PumpServiceClient client, Handler mainHandler) {
+        this.client = client;
+        this.mainHandler = mainHandler;
+    }
+
+    @Override
+    public Subscription subscribe(String placeId, Listener listener) {
+        // Such pumps can only come from Places, the service never has availability for them
+        if (!PumpServiceClient.isServable(placeId)) {
+            return () -> { };
+        }
+        listeners.put(placeId, listener);
+        scheduleRestart();
+        return () -> {
+            if (listeners.remove(placeId, listener)) {
+                scheduleRestart();
+            }
+        };
+    }
+
+    private void scheduleRestart() {
+        if (restartPending) return;
+        restartPending = true;
+        mainHandler.removeCallbacks(restart);
+        mainHandler.post(restart);
+    }
+
+    private void restart() {
+        restartPending = false;
+        if (pollTag != null) {
+            client.cancel(pollTag);
+            pollTag = null;
+        }
+        // Newly followed pumps need their current values, so start over from a snapshot
+        cursor = -1;
+        if (!listeners.isEmpty()) {
+            poll();
+        }
+    }
+
+    private void poll() {
+        Object tag = new Object();
+        pollTag = tag;
+        client.changes(new ArrayList<>(listeners.keySet()), cursor, tag,
+                new ApiClient.Callback<PumpServiceClient.Changes>() {
+                    @Override
+                    public void onResult(PumpServiceClient.Changes result) {
+                        if (pollTag != tag) return;
+                        retryDelayMs = MIN_RETRY_DELAY_MS;
+                        cursor = result.cursor;
+                        for (FuelAvailability availability : result.changes) {
+                            Listener listener = listeners.get(availability.placeId);
+                            if (listener != null) {
+                                listener.onUpdate(availability);
+                            }
+                        }
+                        // A listener may have unsubscribed everything
+                        if (pollTag == tag && !listeners.isEmpty()) {
+                            poll();
+                        }
+                    }
+
+                    @Override
+                    public void onError(Exception error) {
+                        if (pollTag != tag) return;
+                        pollTag = null;
+                        Log.w(TAG, "Availability poll failed, retrying in " + retryDelayMs + " ms", error);
+                        mainHandler.postDelayed(restart, retryDelayMs);
+                        retryDelayMs = Math.min(MAX_RETRY_DELAY_MS, retryDelayMs * 2);
+                    }
+                });
+    }
+}
@@ -0,0 +1,40 @@
+package com.fuellens.application;
+
+import java.util.List;
+
+/**
+ * {@link AvailabilityWriter} that posts batches to the pump service, which stores each line only if its
+ * version is newer than the held one and returns the held value otherwise.
+ */
+final class PumpServiceAvailabilityWriter implements AvailabilityWriter {
+
+    private static final String TAG = "PumpServiceAvailabilityWriter";
+    // Keeps one request body around 50 KB
+    private static final int MAX_BATCH = 1000;
+
+    private final PumpServiceClient client;
+
+    PumpServiceAvailabilityWriter(PumpServiceClient client) {
+        this.client = client;
+    }
+
+    @Override
+    public int maxBatchSize() {
+        return MAX_BATCH;
+    }
+
+    @Override
+    public void write(List<FuelAvailability> updates, Callback callback) {
+        client.postAvailability(updates, TAG, new ApiClient.Callback<List<FuelAvailability>>() {
+            @Override
+            public void onResult(List<FuelAvailability> conflicts) {
+                callback.onResult(conflicts);
+            }
+
+            @Override
+            public void onError(Exception error) {
+                callback.onError(error);
+            }
+        });
+    }
+}
@@ -0,0 +1,305 @@
+package com.fuellens.application;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Client for the FuelLens pump service in {@code server/}, which answers nearby searches from its own
+ * index together with each pump's availability and streams availability changes by long polling.
+ *
+ * <p>Requests go through an {@link ApiClient} pointed at the service, so they share the app's connection
+ * pool and are parsed off the main thread. Results are delivered on the ApiClient's callback executor.
+ * Responses use the compact {@link PumpWireDecoder} format unless the client is created for JSON, which
+ * the service also speaks and which is easier to inspect.
+ */
+final class PumpServiceClient {
+
+    /** Longest a change poll waits on the server; well under the client's read timeout. */
+    static final long POLL_WAIT_MS = 10000;
+
+    /** Most pumps a nearby search asks for; an answer this long may leave pumps out of the area. */
+    static final int NEARBY_LIMIT = 60;
+
+    /** Pumps from a nearby search, nearest first, and the availability of those that have any. */
+    static final class NearbyResult {
+        final List<FuelStationInfo> stations;
+        final List<FuelAvailability> availability;
+
+        NearbyResult(List<FuelStationInfo> stations, List<FuelAvailability> availability) {
+            this.stations = Collections.unmodifiableList(stations);
+            this.availability = Collections.unmodifiableList(availability);
+        }
+    }
+
+    /** Availability changes and the cursor to pass to the next poll. */
+    static final class Changes {
+        final List<FuelAvailability> changes;
+        final long cursor;
+
+        Changes(List<FuelAvailability> changes, long cursor) {
+            this.changes = Collections.unmodifiableList(changes);
+            this.cursor = cursor;
+        }
+    }
+
+    private final ApiClient apiClient;
+    private final boolean binary;
+
+    PumpServiceClient(ApiClient apiClient, boolean binary) {
+        this.apiClient = apiClient;
+        this.binary = binary;
+    }
+
+    void nearby(double lat, double lng, int radiusMeters, Object tag, ApiClient.Callback<NearbyResult> callback) {
+        String path = String.format(Locale.ROOT, "/pumps?lat=%.6f&lng=%.6f&radius=%d&limit=%d", lat, lng,
+                radiusMeters, NEARBY_LIMIT);
+        if (binary) {
+            apiClient.get(path, PumpWireDecoder.CONTENT_TYPE, tag, body -> {
+                PumpWireDecoder.Pumps pumps = PumpWireDecoder.decodePumps(body);
+                return new NearbyResult(pumps.toStations(), pumps.availability());
+            }, callback);
+        } else {
+            apiClient.get(path, tag, PumpServiceClient::parseNearby, callback);
+        }
+    }
+
+    /**
+     * Current availability of the given pumps when {@code cursor} is negative, otherwise waits up to
+     * {@link #POLL_WAIT_MS} for any of them to change after the cursor. Empty changes mean the wait ran out.
+     * Ids go into a comma separated list as they are, which real place ids allow; see {@link #isServable}.
+     */
+    void changes(Collection<String> placeIds, long cursor, Object tag, ApiClient.Callback<Changes> callback) {
+        // Binary changes refer back to the ids by position, so keep the order they are sent in
+        List<String> ids = new ArrayList<>(placeIds);
+        StringBuilder path = new StringBuilder("/availability?ids=");
+        boolean first = true;
+        for (String placeId : ids) {
+            if (!first) path.append(',');
+            path.append(placeId);
+            first = false;
+        }
+        if (cursor >= 0) {
+            path.append("&cursor=").append(cursor).append("&wait=").append(POLL_WAIT_MS);
+        }
+        if (binary) {
+            apiClient.get(path.toString(), PumpWireDecoder.CONTENT_TYPE, tag,
+                    body -> PumpWireDecoder.decodeChanges(body, ids), callback);
+        } else {
+            apiClient.get(path.toString(), tag, PumpServiceClient::parseChanges, callback);
+        }
+    }
+
+    /**
+     * Posts availability updates in one request. The service stores each one whose version is newer than
+     * what it holds; the callback gets the held values of the rest.
+     */
+    void postAvailability(List<FuelAvailability> updates, Object tag,
+                          ApiClient.Callback<List<FuelAvailability>> callback) {
+        StringBuilder body = new StringBuilder(updates.size() * 48);
+        for (FuelAvailability update : updates) {
+            body.append(update.placeId).append('\t')
+                    .append(update.petrol.name()).append('\t')
+                    .append(update.diesel.name()).append('\t')
+                    .append(update.cng.name()).append('\t')
+                    .append(update.version).append('\n');
+        }
+        apiClient.post("/availability", "text/tab-separated-values; charset=utf-8",
+                body.toString().getBytes(StandardCharsets.UTF_8), tag, PumpServiceClient::parseConflicts, callback);
+    }
+
+    /**
+     * Whether the service can know this pump. Stations Places returned without a place id are keyed by
+     * their "lat,lng" instead, which the service never holds and which cannot go into an id list.
+     */
+    static boolean isServable(String placeId) {
+        for (int i = 0; i < placeId.length(); i++) {
+            char c = placeId.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '-' && c != '_') return false;
+        }
+        return !placeId.isEmpty();
+    }
+
+    void cancel(Object tag) {
+        apiClient.cancel(tag);
+    }
+
+    static NearbyResult parseNearby(Reader source) throws IOException {
+        List<FuelStationInfo> stations = new ArrayList<>();
+        List<FuelAvailability> availability = new ArrayList<>();
+
+        try (JsonReader reader = new JsonReader(source)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("pumps".equals(reader.nextName())) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        readPump(reader, stations, availability);
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        return new NearbyResult(stations, availability);
+    }
+
+    static Changes parseChanges(Reader source) throws IOException {
+        List<FuelAvailability> changes = new ArrayList<>();
+        long cursor = -1;
+
+        try (JsonReader reader = new JsonReader(source)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "cursor":
+                        cursor = reader.nextLong();
+                        break;
+                    case "changes":
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            changes.add(readAvailability(reader));
+                        }
+                        reader.endArray();
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+        }
+        if (cursor < 0) {
+            throw new IOException("Change response without a cursor");
+        }
+        return new Changes(changes, cursor);
+    }
+
+    static List<FuelAvailability> parseConflicts(Reader source) throws IOException {
+        List<FuelAvailability> conflicts = new ArrayList<>();
+
+        try (JsonReader reader = new JsonReader(source)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("conflicts".equals(reader.nextName())) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        conflicts.add(readAvailability(reader));
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        return conflicts;
+    }
+
+    private static void readPump(JsonReader reader, List<FuelStationInfo> stations,
+                                 List<FuelAvailability> availability) throws IOException {
+        String placeId = null;
+        String name = "";
+        String vicinity = "";
+        double rating = 0.0;
+        int userRatingsTotal = 0;
+        double lat = 0;
+        double lng = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "placeId":
+                    placeId = reader.nextString();
+                    break;
+                case "name":
+                    name = reader.nextString();
+                    break;
+                case "vicinity":
+                    vicinity = reader.nextString();
+                    break;
+                case "rating":
+                    rating = reader.nextDouble();
+                    break;
+                case "userRatingsTotal":
+                    userRatingsTotal = reader.nextInt();
+                    break;
+                case "lat":
+                    lat = reader.nextDouble();
+                    break;
+                case "lng":
+                    lng = reader.nextDouble();
+                    break;
+                case "availability":
+                    availability.add(readAvailability(reader));
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (placeId == null) {
+            throw new IOException("Pump without a place id");
+        }
+        stations.add(new FuelStationInfo(placeId, name, vicinity, rating, userRatingsTotal, lat, lng));
+    }
+
+    private static FuelAvailability readAvailability(JsonReader reader) throws IOException {
+        String placeId = null;
+        FuelAvailability.Level petrol = FuelAvailability.Level.UNKNOWN;
+        FuelAvailability.Level diesel = FuelAvailability.Level.UNKNOWN;
+        FuelAvailability.Level cng = FuelAvailability.Level.UNKNOWN;
+        long version = 0;
+        long updatedAt = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (field) {
+                case "placeId":
+                    placeId = reader.nextString();
+                    break;
+                case "petrol":
+                    petrol = FuelAvailability.Level.parse(reader.nextString());
+                    break;
+                case "diesel":
+                    diesel = FuelAvailability.Level.parse(reader.nextString());
+                    break;
+                case "cng":
+                    cng = FuelAvailability.Level.parse(reader.nextString());
+                    break;
+                case "version":
+                    version = reader.nextLong();
+                    break;
+                case "updatedAt":
+                    updatedAt = reader.nextLong();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (placeId == null) {
+            throw new IOException("Availability without a place id");
+        }
+        return new FuelAvailability(placeId, petrol, diesel, cng, version, updatedAt);
+    }
+}
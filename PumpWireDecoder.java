@@ -0,0 +1,221 @@
+package com.fuellens.application;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decoder for the pump service's binary wire format, described in the server's WireFormat.
+ *
+ * <p>Messages are read in place from a {@link ByteBuffer} into primitive arrays. Coordinates stay fixed
+ * point, fuel levels stay packed in one status byte, and every name and vicinity is decoded once from the
+ * dictionary, so pumps with the same brand name share a String. Per pump, only the place id becomes an
+ * object. {@link Pumps#toStations()} and {@link Pumps#availability()} then build the app's model. This
+ * class has no Android dependencies.
+ */
+final class PumpWireDecoder {
+
+    static final String CONTENT_TYPE = "application/x-fuellens-wire";
+
+    private static final int VERSION = 1;
+    private static final int KIND_PUMPS = 1;
+    private static final int KIND_CHANGES = 2;
+    private static final int HAS_AVAILABILITY = 0x80;
+    private static final FuelAvailability.Level[] LEVELS = {
+            FuelAvailability.Level.UNKNOWN, FuelAvailability.Level.EMPTY,
+            FuelAvailability.Level.LOW, FuelAvailability.Level.FULL};
+
+    private PumpWireDecoder() {
+    }
+
+    /** Decoded nearby pumps, one array slot per pump in the server's order. */
+    static final class Pumps {
+        final int count;
+        final String[] placeIds;
+        final int[] latE6;
+        final int[] lngE6;
+        final String[] dictionary;
+        final int[] nameIndexes;
+        final int[] vicinityIndexes;
+        final byte[] ratingTenths;
+        final int[] userRatingsTotals;
+        // Packed fuel levels as sent; see hasAvailability
+        final byte[] statuses;
+        final long[] versions;
+        final long[] updatedAts;
+
+        Pumps(int count, String[] dictionary) {
+            this.count = count;
+            this.dictionary = dictionary;
+            this.placeIds = new String[count];
+            this.latE6 = new int[count];
+            this.lngE6 = new int[count];
+            this.nameIndexes = new int[count];
+            this.vicinityIndexes = new int[count];
+            this.ratingTenths = new byte[count];
+            this.userRatingsTotals = new int[count];
+            this.statuses = new byte[count];
+            this.versions = new long[count];
+            this.updatedAts = new long[count];
+        }
+
+        boolean hasAvailability(int i) {
+            return (statuses[i] & HAS_AVAILABILITY) != 0;
+        }
+
+        List<FuelStationInfo> toStations() {
+            List<FuelStationInfo> stations = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                stations.add(new FuelStationInfo(placeIds[i], dictionary[nameIndexes[i]],
+                        dictionary[vicinityIndexes[i]], ratingTenths[i] / 10.0, userRatingsTotals[i],
+                        latE6[i] / 1e6, lngE6[i] / 1e6));
+            }
+            return stations;
+        }
+
+        List<FuelAvailability> availability() {
+            List<FuelAvailability> availability = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                if (hasAvailability(i)) {
+                    availability.add(toAvailability(placeIds[i], statuses[i], versions[i], updatedAts[i]));
+                }
+            }
+            return availability;
+        }
+    }
+
+    static Pumps decodePumps(ByteBuffer in) throws IOException {
+        try {
+            readHeader(in, KIND_PUMPS);
+            int centerLatE6 = in.getInt();
+            int centerLngE6 = in.getInt();
+            long baseUpdatedAt = in.getLong();
+
+            String[] dictionary = new String[count(in)];
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = readString(in);
+            }
+
+            Pumps pumps = new Pumps(count(in), dictionary);
+            for (int i = 0; i < pumps.count; i++) {
+                pumps.placeIds[i] = readString(in);
+                pumps.latE6[i] = centerLatE6 + (int) readSignedVarint(in);
+                pumps.lngE6[i] = centerLngE6 + (int) readSignedVarint(in);
+                pumps.nameIndexes[i] = index(in, dictionary.length);
+                pumps.vicinityIndexes[i] = index(in, dictionary.length);
+                pumps.ratingTenths[i] = in.get();
+                pumps.userRatingsTotals[i] = (int) readVarint(in);
+                pumps.statuses[i] = in.get();
+                if (pumps.hasAvailability(i)) {
+                    pumps.versions[i] = readVarint(in);
+                    pumps.updatedAts[i] = baseUpdatedAt + readSignedVarint(in);
+                }
+            }
+            return pumps;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated pump message", e);
+        }
+    }
+
+    /**
+     * Decodes a change message. Pumps are mostly referenced by their position in {@code requestedIds},
+     * which must be the ids in the order the request listed them.
+     */
+    static PumpServiceClient.Changes decodeChanges(ByteBuffer in, List<String> requestedIds) throws IOException {
+        try {
+            readHeader(in, KIND_CHANGES);
+            long cursor = readVarint(in);
+            long baseUpdatedAt = in.getLong();
+
+            int count = count(in);
+            List<FuelAvailability> changes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int reference = (int) readVarint(in);
+                String placeId;
+                if (reference == 0) {
+                    placeId = readString(in);
+                } else if (reference <= requestedIds.size()) {
+                    placeId = requestedIds.get(reference - 1);
+                } else {
+                    throw new IOException("Change refers to id " + reference + " of " + requestedIds.size());
+                }
+                byte status = in.get();
+                long version = readVarint(in);
+                long updatedAt = baseUpdatedAt + readSignedVarint(in);
+                changes.add(toAvailability(placeId, status, version, updatedAt));
+            }
+            return new PumpServiceClient.Changes(changes, cursor);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated change message", e);
+        }
+    }
+
+    private static FuelAvailability toAvailability(String placeId, byte status, long version, long updatedAt) {
+        return new FuelAvailability(placeId, LEVELS[status & 0x3], LEVELS[(status >> 2) & 0x3],
+                LEVELS[(status >> 4) & 0x3], version, updatedAt);
+    }
+
+    private static void readHeader(ByteBuffer in, int kind) throws IOException {
+        if (in.get() != 'F' || in.get() != 'L') {
+            throw new IOException("Not a pump service message");
+        }
+        int version = in.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported wire format version " + version);
+        }
+        int actualKind = in.get();
+        if (actualKind != kind) {
+            throw new IOException("Expected message kind " + kind + " but got " + actualKind);
+        }
+    }
+
+    // Every element takes at least one byte, so a count beyond the remaining bytes is corrupt
+    private static int count(ByteBuffer in) throws IOException {
+        long count = readVarint(in);
+        if (count > in.remaining()) {
+            throw new IOException("Count " + count + " exceeds message size");
+        }
+        return (int) count;
+    }
+
+    private static int index(ByteBuffer in, int size) throws IOException {
+        long index = readVarint(in);
+        if (index >= size) {
+            throw new IOException("Dictionary index " + index + " of " + size);
+        }
+        return (int) index;
+    }
+
+    private static long readVarint(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static long readSignedVarint(ByteBuffer in) throws IOException {
+        long raw = readVarint(in);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    // Decodes straight from the backing array when there is one, so the String is the only copy
+    private static String readString(ByteBuffer in) throws IOException {
+        int length = count(in);
+        String value;
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,124 @@
+package com.fuellens.application;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Precomputed Douglas-Peucker simplifications of a path, one per integer map zoom.
+ *
+ * <p>The path is projected once to normalised Web Mercator and a single Douglas-Peucker pass ranks every
+ * point by the deviation at which it would be kept. Each level then keeps only the points whose rank
+ * exceeds the given tolerance in screen pixels at that zoom, so zoomed-out routes draw a fraction of the
+ * decoded points with no visible difference. Levels with the same point count share one list, which lets
+ * callers skip redrawing when the zoom changes but the level does not. An instance is immutable after
+ * construction and can be queried from any thread.
+ *
+ * <p>This class has no Android dependencies.
+ */
+final class RouteLevelOfDetail<T> {
+
+    static final int MAX_ZOOM = 21;
+
+    private static final double TILE_PX = 256.0;
+
+    private final List<T> source;
+    private final List<List<T>> levels;
+
+    RouteLevelOfDetail(List<T> path, ToDoubleFunction<T> latOf, ToDoubleFunction<T> lngOf, double tolerancePx) {
+        this.source = path;
+        int count = path.size();
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        for (int i = 0; i < count; i++) {
+            T point = path.get(i);
+            xs[i] = GeoUtils.mercatorX(lngOf.applyAsDouble(point));
+            ys[i] = GeoUtils.mercatorY(latOf.applyAsDouble(point));
+        }
+        double[] ranks = rank(xs, ys);
+
+        List<List<T>> built = new ArrayList<>(MAX_ZOOM + 1);
+        List<T> previous = null;
+        for (int zoom = 0; zoom <= MAX_ZOOM; zoom++) {
+            double tolerance = tolerancePx / (TILE_PX * Math.pow(2, zoom));
+            List<T> level = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                if (ranks[i] > tolerance) {
+                    level.add(path.get(i));
+                }
+            }
+            // Ranks only ever admit more points as the tolerance shrinks, so equal size means equal content
+            if (previous != null && previous.size() == level.size()) {
+                built.add(previous);
+            } else {
+                previous = Collections.unmodifiableList(level);
+                built.add(previous);
+            }
+        }
+        this.levels = Collections.unmodifiableList(built);
+    }
+
+    /** The simplified path to draw at a map zoom; rounds up so the drawn detail is never too coarse. */
+    List<T> forZoom(float zoom) {
+        int level = (int) Math.ceil(zoom);
+        return levels.get(Math.max(0, Math.min(MAX_ZOOM, level)));
+    }
+
+    List<T> source() {
+        return source;
+    }
+
+    /**
+     * Douglas-Peucker ranks: the deviation from the simplified line at which each point becomes necessary.
+     * Endpoints are always kept. A point's rank is capped by its parent's so that every tolerance selects
+     * a superset of what any larger tolerance selects. Iterative, so long routes cannot overflow the stack.
+     */
+    static double[] rank(double[] xs, double[] ys) {
+        int count = xs.length;
+        double[] ranks = new double[count];
+        if (count == 0) return ranks;
+        ranks[0] = Double.POSITIVE_INFINITY;
+        ranks[count - 1] = Double.POSITIVE_INFINITY;
+
+        // Each entry is {first, last, parent rank}
+        Deque<double[]> segments = new ArrayDeque<>();
+        segments.push(new double[]{0, count - 1, Double.POSITIVE_INFINITY});
+        while (!segments.isEmpty()) {
+            double[] segment = segments.pop();
+            int first = (int) segment[0];
+            int last = (int) segment[1];
+            if (last - first < 2) continue;
+
+            int farthest = -1;
+            double maxDistance = -1;
+            for (int i = first + 1; i < last; i++) {
+                double distance = segmentDistance(xs[i], ys[i], xs[first], ys[first], xs[last], ys[last]);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    farthest = i;
+                }
+            }
+
+            double rank = Math.min(maxDistance, segment[2]);
+            ranks[farthest] = rank;
+            segments.push(new double[]{first, farthest, rank});
+            segments.push(new double[]{farthest, last, rank});
+        }
+        return ranks;
+    }
+
+    // Distance from point p to the segment a-b, falling back to the endpoints outside it
+    private static double segmentDistance(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : ((px - ax) * dx + (py - ay) * dy) / lengthSquared;
+        t = Math.max(0, Math.min(1, t));
+        double ex = px - (ax + t * dx);
+        double ey = py - (ay + t * dy);
+        return Math.sqrt(ex * ex + ey * ey);
+    }
+}
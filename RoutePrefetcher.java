@@ -0,0 +1,218 @@
+package com.fuellens.application;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Fetches stations ahead of a moving driver so each new area is already cached when they reach it.
+ *
+ * <p>On every fix the search areas ahead are planned: one every search radius along the active route
+ * from the driver's position on it, or straight along their heading when there is no route or they have
+ * left it. The areas reach as far as about {@value #LOOKAHEAD_SECONDS} seconds at the current speed.
+ * Areas the cache already covers are skipped. The rest are fetched nearest first, one request at a
+ * time, with at most {@code budgetRequests} requests in any {@code budgetWindowMs}, so a long drive cannot
+ * eat the quota or the user's data. A standing user triggers nothing. Main thread only.
+ */
+final class RoutePrefetcher {
+
+    private static final String TAG = "RoutePrefetcher";
+
+    private static final float MIN_SPEED_MPS = 5f;
+    private static final long LOOKAHEAD_SECONDS = 600;
+    private static final double MAX_LOOKAHEAD_METERS = 30000;
+    // Farther than this from every route point counts as having left the route
+    private static final double OFF_ROUTE_METERS = 1000;
+    // Route points searched past the last known position before falling back to a full scan
+    private static final int PROGRESS_WINDOW = 200;
+
+    /** Whether the station cache can already answer a search at this point. */
+    interface Coverage {
+        boolean isCovered(LatLng center);
+    }
+
+    /** Fetches and caches one area; must call {@code done} on the main thread however it ends. */
+    interface Fetcher {
+        void fetch(LatLng center, Object token, Runnable done);
+    }
+
+    private final Handler handler;
+    private final double spacingMeters;
+    private final int budgetRequests;
+    private final long budgetWindowMs;
+    private final Coverage coverage;
+    private final Fetcher fetcher;
+    private final FetchScheduler.Canceller canceller;
+    // Start times of requests inside the budget window, oldest first
+    private final Deque<Long> recentRequests = new ArrayDeque<>();
+    private final Runnable fireNext = this::fireNext;
+
+    private List<LatLng> route;
+    // Distance along the route to each of its points
+    private double[] routeDistances;
+    private int routeProgress;
+    private LatLng lastPosition;
+    private List<LatLng> planned = new ArrayList<>();
+    private Object inFlightToken;
+    private int sequence;
+
+    RoutePrefetcher(Handler handler, double spacingMeters, int budgetRequests, long budgetWindowMs,
+                    Coverage coverage, Fetcher fetcher, FetchScheduler.Canceller canceller) {
+        this.handler = handler;
+        this.spacingMeters = spacingMeters;
+        this.budgetRequests = budgetRequests;
+        this.budgetWindowMs = budgetWindowMs;
+        this.coverage = coverage;
+        this.fetcher = fetcher;
+        this.canceller = canceller;
+    }
+
+    /** Follows this route from now on; null goes back to prefetching along the heading. */
+    void setRoute(List<LatLng> path) {
+        route = path != null && path.size() >= 2 ? path : null;
+        routeProgress = 0;
+        routeDistances = null;
+        if (route == null) return;
+
+        routeDistances = new double[route.size()];
+        for (int i = 1; i < route.size(); i++) {
+            LatLng from = route.get(i - 1);
+            LatLng to = route.get(i);
+            routeDistances[i] = routeDistances[i - 1]
+                    + GeoUtils.distanceMeters(from.latitude, from.longitude, to.latitude, to.longitude);
+        }
+    }
+
+    /** Replans from a new fix. Speed is in metres per second, bearing in degrees or NaN if unknown. */
+    void onLocation(LatLng position, float speedMps, float bearingDegrees) {
+        LatLng previous = lastPosition;
+        lastPosition = position;
+        // Without a bearing from the fix, the direction of travel since the last one will do
+        if (Float.isNaN(bearingDegrees) && previous != null && !previous.equals(position)) {
+            bearingDegrees = (float) GeoUtils.bearingDegrees(previous.latitude, previous.longitude,
+                    position.latitude, position.longitude);
+        }
+        if (speedMps < MIN_SPEED_MPS) {
+            planned = new ArrayList<>();
+            return;
+        }
+        double lookahead = Math.min(MAX_LOOKAHEAD_METERS,
+                Math.max(2 * spacingMeters, speedMps * LOOKAHEAD_SECONDS));
+
+        List<LatLng> ahead = route != null ? aheadOnRoute(position, lookahead) : null;
+        if (ahead == null && !Float.isNaN(bearingDegrees)) {
+            ahead = aheadOnHeading(position, bearingDegrees, lookahead);
+        }
+        List<LatLng> uncovered = new ArrayList<>();
+        if (ahead != null) {
+            for (LatLng center : ahead) {
+                if (!coverage.isCovered(center)) uncovered.add(center);
+            }
+        }
+        planned = uncovered;
+        if (inFlightToken == null) {
+            handler.removeCallbacks(fireNext);
+            fireNext();
+        }
+    }
+
+    /** Drops the plan and cancels the request in flight, e.g. when the app goes to the background. */
+    void stop() {
+        handler.removeCallbacks(fireNext);
+        planned = new ArrayList<>();
+        if (inFlightToken != null) {
+            canceller.cancel(inFlightToken);
+            inFlightToken = null;
+        }
+    }
+
+    private void fireNext() {
+        if (planned.isEmpty() || inFlightToken != null) return;
+
+        long now = SystemClock.elapsedRealtime();
+        while (!recentRequests.isEmpty() && recentRequests.peekFirst() <= now - budgetWindowMs) {
+            recentRequests.pollFirst();
+        }
+        if (recentRequests.size() >= budgetRequests) {
+            // Try again once the oldest request leaves the window
+            handler.postDelayed(fireNext, recentRequests.peekFirst() + budgetWindowMs - now);
+            return;
+        }
+
+        LatLng center = planned.remove(0);
+        // A fetch for the user's own position may have covered it since the plan was made
+        if (coverage.isCovered(center)) {
+            fireNext();
+            return;
+        }
+        recentRequests.addLast(now);
+        Object token = TAG + "#" + (++sequence);
+        inFlightToken = token;
+        Log.d(TAG, "Prefetching stations around " + center);
+        fetcher.fetch(center, token, () -> {
+            if (inFlightToken != token) return;
+            inFlightToken = null;
+            fireNext();
+        });
+    }
+
+    // Search centres every spacing along the route ahead, or null if the position is off the route
+    private List<LatLng> aheadOnRoute(LatLng position, double lookahead) {
+        int nearest = nearestRoutePoint(position, routeProgress,
+                Math.min(route.size(), routeProgress + PROGRESS_WINDOW));
+        if (distanceTo(position, nearest) > OFF_ROUTE_METERS) {
+            nearest = nearestRoutePoint(position, 0, route.size());
+            if (distanceTo(position, nearest) > OFF_ROUTE_METERS) return null;
+        }
+        routeProgress = nearest;
+
+        List<LatLng> centers = new ArrayList<>();
+        double start = routeDistances[nearest];
+        double end = Math.min(routeDistances[routeDistances.length - 1], start + lookahead);
+        int segment = nearest;
+        for (double along = start + spacingMeters; along <= end; along += spacingMeters) {
+            while (routeDistances[segment + 1] < along) segment++;
+            LatLng from = route.get(segment);
+            LatLng to = route.get(segment + 1);
+            double length = routeDistances[segment + 1] - routeDistances[segment];
+            double t = length == 0 ? 0 : (along - routeDistances[segment]) / length;
+            centers.add(new LatLng(from.latitude + t * (to.latitude - from.latitude),
+                    from.longitude + t * (to.longitude - from.longitude)));
+        }
+        return centers;
+    }
+
+    private List<LatLng> aheadOnHeading(LatLng position, float bearingDegrees, double lookahead) {
+        List<LatLng> centers = new ArrayList<>();
+        for (double along = spacingMeters; along <= lookahead; along += spacingMeters) {
+            double[] point = GeoUtils.offset(position.latitude, position.longitude, bearingDegrees, along);
+            centers.add(new LatLng(point[0], point[1]));
+        }
+        return centers;
+    }
+
+    private int nearestRoutePoint(LatLng position, int from, int to) {
+        int nearest = from;
+        double best = Double.MAX_VALUE;
+        for (int i = from; i < to; i++) {
+            double distance = distanceTo(position, i);
+            if (distance < best) {
+                best = distance;
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+
+    private double distanceTo(LatLng position, int routeIndex) {
+        LatLng point = route.get(routeIndex);
+        return GeoUtils.distanceMeters(position.latitude, position.longitude, point.latitude, point.longitude);
+    }
+}
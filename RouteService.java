@@ -0,0 +1,229 @@
+package com.fuellens.application;
+
+import android.util.Log;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Directions and drive-time lookups with a short-lived route cache.
+ *
+ * <p>Each route is decoded and its {@link RouteLevelOfDetail} pyramid built on the network thread,
+ * so the map only ever draws the simplified path for the current zoom. Routes are cached by origin
+ * snapped to ~100 m and the exact destination, so tapping the same pump again, or another pump's info
+ * window and then back, draws instantly without a request. Drive times for a whole set of pumps are
+ * fetched with Distance Matrix requests of up to {@value #MAX_DESTINATIONS_PER_REQUEST} destinations
+ * each, one call for a typical result page instead of one Directions call per pump, and are asked for
+ * departure now so that they reflect current traffic. Callbacks run on the {@link ApiClient}'s callback
+ * executor, the main thread, and the cache itself is only touched there.
+ */
+final class RouteService {
+
+    private static final String TAG = "RouteService";
+
+    /** Distance Matrix limit on destinations for a single origin. */
+    static final int MAX_DESTINATIONS_PER_REQUEST = 25;
+
+    // 0.001 degrees is ~110 m, close enough that the drawn route would start at the same road
+    private static final double ORIGIN_SNAP_DEGREES = 0.001;
+    // Half a pixel of deviation is invisible under the route's stroke width
+    private static final double ROUTE_TOLERANCE_PX = 0.5;
+
+    interface Callback<T> {
+        void onResult(T result);
+
+        void onError(Exception error);
+    }
+
+    /** Drive time and distance from the ranking origin to one station. */
+    static final class Eta {
+        final FuelStationInfo station;
+        final long durationSeconds;
+        final long durationInTrafficSeconds;
+        final long distanceMeters;
+        final String durationText;
+        final String distanceText;
+
+        Eta(FuelStationInfo station, PlacesJsonParser.MatrixElement element) {
+            this.station = station;
+            this.durationSeconds = element.durationSeconds;
+            this.durationInTrafficSeconds = element.durationInTrafficSeconds;
+            this.distanceMeters = element.distanceMeters;
+            this.durationText = element.durationText;
+            this.distanceText = element.distanceText;
+        }
+    }
+
+    /** A Directions route with its path simplified for every zoom level. */
+    static final class Route {
+        final PlacesJsonParser.RouteResult result;
+        final RouteLevelOfDetail<LatLng> detail;
+
+        Route(PlacesJsonParser.RouteResult result) {
+            this.result = result;
+            this.detail = new RouteLevelOfDetail<>(result.path, point -> point.latitude, point -> point.longitude,
+                    ROUTE_TOLERANCE_PX);
+        }
+    }
+
+    private static final class CachedRoute {
+        final Route route;
+        final long expiresAt;
+
+        CachedRoute(Route route, long expiresAt) {
+            this.route = route;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final ApiClient apiClient;
+    private final String apiKey;
+    private final Object requestTag;
+    private final long routeTtlMillis;
+    private final Map<String, CachedRoute> routes;
+
+    RouteService(ApiClient apiClient, String apiKey, Object requestTag, int maxRoutes, long routeTtlMillis) {
+        this.apiClient = apiClient;
+        this.apiKey = apiKey;
+        this.requestTag = requestTag;
+        this.routeTtlMillis = routeTtlMillis;
+        this.routes = new LinkedHashMap<String, CachedRoute>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedRoute> eldest) {
+                return size() > maxRoutes;
+            }
+        };
+    }
+
+    /** Delivers the driving route, synchronously when it is cached. Routes that were not found are not cached. */
+    void route(LatLng origin, LatLng destination, Callback<Route> callback) {
+        String key = routeKey(origin, destination);
+        CachedRoute cached = routes.get(key);
+        if (cached != null && cached.expiresAt > System.currentTimeMillis()) {
+            Log.d(TAG, "Serving route from cache");
+            callback.onResult(cached.route);
+            return;
+        }
+
+        String path = "/maps/api/directions/json?" +
+                "origin=" + origin.latitude + "," + origin.longitude +
+                "&destination=" + destination.latitude + "," + destination.longitude +
+                "&mode=driving" +
+                "&key=" + apiKey;
+
+        apiClient.get(path, requestTag, body -> new Route(PlacesJsonParser.parseDirections(body)),
+                new ApiClient.Callback<Route>() {
+                    @Override
+                    public void onResult(Route route) {
+                        if (route.result.hasRoute()) {
+                            routes.put(key, new CachedRoute(route, System.currentTimeMillis() + routeTtlMillis));
+                        }
+                        callback.onResult(route);
+                    }
+
+                    @Override
+                    public void onError(Exception error) {
+                        callback.onError(error);
+                    }
+                });
+    }
+
+    /**
+     * Fetches drive times to all stations and delivers the reachable ones, fastest in current traffic first.
+     * Stations are sent in batches of {@value #MAX_DESTINATIONS_PER_REQUEST}; any failed batch fails the
+     * whole ranking.
+     */
+    void rankByDriveTime(LatLng origin, List<FuelStationInfo> stations, Callback<List<Eta>> callback) {
+        if (stations.isEmpty()) {
+            callback.onResult(Collections.emptyList());
+            return;
+        }
+
+        int batches = (stations.size() + MAX_DESTINATIONS_PER_REQUEST - 1) / MAX_DESTINATIONS_PER_REQUEST;
+        List<Eta> etas = new ArrayList<>(stations.size());
+        // Remaining batch count; set to -1 once an error has been reported
+        int[] pending = {batches};
+
+        for (int start = 0; start < stations.size(); start += MAX_DESTINATIONS_PER_REQUEST) {
+            List<FuelStationInfo> batch = stations.subList(start,
+                    Math.min(stations.size(), start + MAX_DESTINATIONS_PER_REQUEST));
+            fetchMatrix(origin, batch, new Callback<List<Eta>>() {
+                @Override
+                public void onResult(List<Eta> result) {
+                    if (pending[0] < 0) return;
+                    etas.addAll(result);
+                    if (--pending[0] == 0) {
+                        etas.sort((a, b) -> Long.compare(a.durationInTrafficSeconds, b.durationInTrafficSeconds));
+                        callback.onResult(etas);
+                    }
+                }
+
+                @Override
+                public void onError(Exception error) {
+                    if (pending[0] < 0) return;
+                    pending[0] = -1;
+                    callback.onError(error);
+                }
+            });
+        }
+    }
+
+    private void fetchMatrix(LatLng origin, List<FuelStationInfo> batch, Callback<List<Eta>> callback) {
+        StringBuilder destinations = new StringBuilder();
+        for (FuelStationInfo station : batch) {
+            if (destinations.length() > 0) destinations.append("%7C");
+            destinations.append(station.lat).append(',').append(station.lng);
+        }
+        String path = "/maps/api/distancematrix/json?" +
+                "origins=" + origin.latitude + "," + origin.longitude +
+                "&destinations=" + destinations +
+                "&mode=driving" +
+                "&departure_time=now" +
+                "&key=" + apiKey;
+
+        apiClient.get(path, requestTag, PlacesJsonParser::parseDistanceMatrix,
+                new ApiClient.Callback<PlacesJsonParser.DistanceMatrixResult>() {
+                    @Override
+                    public void onResult(PlacesJsonParser.DistanceMatrixResult result) {
+                        if (!result.isSuccessful()) {
+                            callback.onError(new IOException("Distance Matrix status " + result.status));
+                            return;
+                        }
+                        List<Eta> etas = new ArrayList<>(batch.size());
+                        Iterator<PlacesJsonParser.MatrixElement> elements = result.elements.iterator();
+                        for (FuelStationInfo station : batch) {
+                            if (!elements.hasNext()) break;
+                            PlacesJsonParser.MatrixElement element = elements.next();
+                            if (element.isFound()) {
+                                etas.add(new Eta(station, element));
+                            }
+                        }
+                        callback.onResult(etas);
+                    }
+
+                    @Override
+                    public void onError(Exception error) {
+                        callback.onError(error);
+                    }
+                });
+    }
+
+    void clear() {
+        routes.clear();
+    }
+
+    private static String routeKey(LatLng origin, LatLng destination) {
+        return String.format(Locale.ROOT, "%d,%d>%.5f,%.5f",
+                Math.round(origin.latitude / ORIGIN_SNAP_DEGREES),
+                Math.round(origin.longitude / ORIGIN_SNAP_DEGREES),
+                destination.latitude, destination.longitude);
+    }
+}
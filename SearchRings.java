@@ -0,0 +1,41 @@
+package com.fuellens.application;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Radii of a progressive nearby search and the rule for when it stops widening.
+ *
+ * <p>A search starts with the smallest ring, so nearby stations show up after one small request. It moves
+ * to the next ring only while the stations found so far fall short of the targets: fewer than
+ * {@code targetOpen} that may be open and fewer than {@code targetTotal} overall. Cities are then served
+ * by the first ring, while sparse areas keep widening until they find pumps or reach the last ring. This
+ * class has no Android dependencies.
+ */
+final class SearchRings {
+
+    private final int[] radiiMeters;
+    private final int targetOpen;
+    private final int targetTotal;
+
+    /** {@code radiiMeters} must be ascending. */
+    SearchRings(int[] radiiMeters, int targetOpen, int targetTotal) {
+        this.radiiMeters = radiiMeters.clone();
+        this.targetOpen = targetOpen;
+        this.targetTotal = targetTotal;
+    }
+
+    int radius(int ring) {
+        return radiiMeters[ring];
+    }
+
+    /** Whether a search that found these stations within {@code ring} goes on to the next ring. */
+    boolean shouldWiden(int ring, List<FuelStationInfo> stations, Predicate<FuelStationInfo> mayBeOpen) {
+        if (ring + 1 >= radiiMeters.length || stations.size() >= targetTotal) return false;
+        int open = 0;
+        for (FuelStationInfo station : stations) {
+            if (mayBeOpen.test(station) && ++open >= targetOpen) return false;
+        }
+        return true;
+    }
+}
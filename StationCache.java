@@ -0,0 +1,390 @@
+package com.fuellens.application;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Geo-tiled cache of nearby search results.
+ *
+ * <p>Each search marks the tiles it reached as covered until its TTL expires. A tile lying entirely inside
+ * the search circle is covered in full; a tile on the circle's edge keeps the circle and only covers the
+ * part inside it. A later search is answered locally when, in every tile it reaches, the part it needs is
+ * still covered. Tiles are kept in access order and evicted least-recently-used once the tile or station
+ * budget is exceeded, and the whole cache can be persisted to a compact binary file between sessions.
+ * Loading and saving do their file I/O without holding the lock that queries take. Stations are held as
+ * rows of a {@link StationTable} rather than as objects, and a query only builds {@link FuelStationInfo}
+ * objects for the stations it returns, so the budget can run to tens of thousands.
+ */
+final class StationCache {
+
+    private static final int FILE_MAGIC = 0x46534332; // "FSC2"
+    private static final double FULL_TILE = -1;
+
+    private final File file;
+    private final int maxTiles;
+    private final int maxStations;
+    // Replaced as a whole by load(), which builds them without holding the cache's lock
+    private LinkedHashMap<Long, Tile> tiles = newTileMap();
+    private StationTable table = new StationTable();
+    // Serialises load() and save() on the file; queries never wait on it
+    private final Object fileLock = new Object();
+    // Reused by query, which is synchronized
+    private int[] scratchRows = new int[256];
+    private double[] scratchDistances = new double[256];
+    private boolean dirty;
+
+    private static final class Tile {
+        final long expiresAt;
+        final int[] rows;
+        // The search circle of a tile on its edge; FULL_TILE for a tile the search covered entirely
+        final double lat;
+        final double lng;
+        final double radiusMeters;
+
+        Tile(long expiresAt, int[] rows, double lat, double lng, double radiusMeters) {
+            this.expiresAt = expiresAt;
+            this.rows = rows;
+            this.lat = lat;
+            this.lng = lng;
+            this.radiusMeters = radiusMeters;
+        }
+
+        boolean isFull() {
+            return radiusMeters == FULL_TILE;
+        }
+
+        // Whether this tile holds every station that a search of the given circle can find inside it
+        boolean answers(long key, double[] box, double lat, double lng, int radiusMeters, long now) {
+            if (expiresAt <= now) return false;
+            if (isFull()) return true;
+            // The search lies within the one that filled the tile
+            if (GeoUtils.distanceMeters(this.lat, this.lng, lat, lng) + radiusMeters <= this.radiusMeters) {
+                return true;
+            }
+            // Or at least the part of the tile it can reach does
+            double south = (int) (key >> 32) * GeoUtils.TILE_SIZE_DEGREES;
+            double west = (int) key * GeoUtils.TILE_SIZE_DEGREES;
+            return GeoUtils.boxWithin(Math.max(south, box[0]), Math.max(west, box[1]),
+                    Math.min(south + GeoUtils.TILE_SIZE_DEGREES, box[2]),
+                    Math.min(west + GeoUtils.TILE_SIZE_DEGREES, box[3]), this.lat, this.lng, this.radiusMeters);
+        }
+    }
+
+    // A tile copied out for save(), so the file can be written without holding the cache's lock
+    private static final class TileSnapshot {
+        final long key;
+        final long expiresAt;
+        final double lat;
+        final double lng;
+        final double radiusMeters;
+        final FuelStationInfo[] stations;
+
+        TileSnapshot(long key, Tile tile, FuelStationInfo[] stations) {
+            this.key = key;
+            this.expiresAt = tile.expiresAt;
+            this.lat = tile.lat;
+            this.lng = tile.lng;
+            this.radiusMeters = tile.radiusMeters;
+            this.stations = stations;
+        }
+    }
+
+    StationCache(File file, int maxTiles, int maxStations) {
+        this.file = file;
+        this.maxTiles = maxTiles;
+        this.maxStations = maxStations;
+    }
+
+    /**
+     * Returns the cached stations within the radius nearest first, or null when any tile of the area is
+     * missing or expired and the caller has to go to the network.
+     */
+    synchronized List<FuelStationInfo> query(double lat, double lng, int radiusMeters) {
+        long now = System.currentTimeMillis();
+        long[] keys = GeoUtils.tilesIntersecting(lat, lng, radiusMeters);
+        double[] box = GeoUtils.boundingBox(lat, lng, radiusMeters);
+        Tile[] hits = new Tile[keys.length];
+        int candidates = 0;
+        for (int i = 0; i < keys.length; i++) {
+            Tile tile = tiles.get(keys[i]);
+            if (tile == null || !tile.answers(keys[i], box, lat, lng, radiusMeters, now)) {
+                return null;
+            }
+            hits[i] = tile;
+            candidates += tile.rows.length;
+        }
+
+        if (scratchRows.length < candidates) {
+            scratchRows = new int[Math.max(candidates, scratchRows.length * 2)];
+            scratchDistances = new double[scratchRows.length];
+        }
+        int count = 0;
+        for (Tile tile : hits) {
+            System.arraycopy(tile.rows, 0, scratchRows, count, tile.rows.length);
+            count += tile.rows.length;
+        }
+        count = table.filterWithin(scratchRows, count, new StationFilter.Radius(lat, lng, radiusMeters),
+                scratchRows);
+        table.sortByDistance(scratchRows, count, lat, lng, scratchDistances);
+
+        List<FuelStationInfo> result = new ArrayList<>(count);
+        Set<String> seen = new HashSet<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            int row = scratchRows[i];
+            if (seen.add(table.placeId(row))) {
+                result.add(table.station(row));
+            }
+        }
+        return result;
+    }
+
+    /** Whether {@link #query} would answer this search locally, without building the result. */
+    synchronized boolean covers(double lat, double lng, int radiusMeters) {
+        long now = System.currentTimeMillis();
+        double[] box = GeoUtils.boundingBox(lat, lng, radiusMeters);
+        for (long key : GeoUtils.tilesIntersecting(lat, lng, radiusMeters)) {
+            Tile tile = tiles.get(key);
+            if (tile == null || !tile.answers(key, box, lat, lng, radiusMeters, now)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stores the complete result of a search around the given point, marking the tiles it reached as fresh
+     * for {@code ttlMillis}. An edge tile does not replace a fresh tile that is covered in full, and
+     * stations outside the tiles that were stored are not cached.
+     */
+    synchronized void put(double lat, double lng, int radiusMeters, List<FuelStationInfo> stations,
+                          long ttlMillis) {
+        long now = System.currentTimeMillis();
+        long expiresAt = now + ttlMillis;
+        long[] reached = GeoUtils.tilesIntersecting(lat, lng, radiusMeters);
+        long[] keys = new long[reached.length];
+        boolean[] full = new boolean[reached.length];
+        int count = 0;
+        for (long key : reached) {
+            boolean within = GeoUtils.tileWithin(key, lat, lng, radiusMeters);
+            Tile existing = tiles.get(key);
+            if (within || existing == null || !existing.isFull() || existing.expiresAt <= now) {
+                keys[count] = key;
+                full[count++] = within;
+            }
+        }
+        Map<Long, Integer> slots = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            slots.put(keys[i], i);
+        }
+        // Bucket each station by tile slot first, so every tile gets an exactly sized row array
+        int[] slotOf = new int[stations.size()];
+        int[] sizes = new int[count];
+        for (int i = 0; i < slotOf.length; i++) {
+            FuelStationInfo station = stations.get(i);
+            Integer slot = slots.get(GeoUtils.tileKey(station.lat, station.lng));
+            slotOf[i] = slot != null ? slot : -1;
+            if (slot != null) sizes[slot]++;
+        }
+        int[][] rows = new int[count][];
+        for (int slot = 0; slot < count; slot++) {
+            rows[slot] = new int[sizes[slot]];
+            sizes[slot] = 0;
+        }
+        for (int i = 0; i < slotOf.length; i++) {
+            int slot = slotOf[i];
+            if (slot >= 0) {
+                rows[slot][sizes[slot]++] = table.add(stations.get(i));
+            }
+        }
+
+        for (int slot = 0; slot < count; slot++) {
+            putTile(keys[slot], full[slot] ? new Tile(expiresAt, rows[slot], 0, 0, FULL_TILE)
+                    : new Tile(expiresAt, rows[slot], lat, lng, radiusMeters));
+        }
+        evict();
+        dirty = true;
+    }
+
+    synchronized void clear() {
+        tiles.clear();
+        table.clear();
+        dirty = true;
+    }
+
+    private void putTile(long key, Tile tile) {
+        Tile previous = tiles.put(key, tile);
+        if (previous != null) {
+            removeRows(previous);
+        }
+    }
+
+    private void evict() {
+        Iterator<Tile> iterator = tiles.values().iterator();
+        while ((tiles.size() > maxTiles || table.size() > maxStations) && iterator.hasNext()) {
+            removeRows(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    private void removeRows(Tile tile) {
+        for (int row : tile.rows) {
+            table.remove(row);
+        }
+    }
+
+    private static LinkedHashMap<Long, Tile> newTileMap() {
+        return new LinkedHashMap<>(64, 0.75f, true);
+    }
+
+    // Reads the cache file written by save(), dropping tiles that have already expired; files in an older
+    // format are ignored and the cache starts empty. The file is decoded into a new table without holding
+    // the cache's lock, so queries made meanwhile answer from what the cache already holds.
+    void load() throws IOException {
+        synchronized (fileLock) {
+            if (!file.exists()) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            StationTable loadedTable = new StationTable();
+            LinkedHashMap<Long, Tile> loadedTiles = newTileMap();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readInt() != FILE_MAGIC) {
+                    return;
+                }
+                int tileCount = in.readInt();
+                for (int i = 0; i < tileCount; i++) {
+                    long key = in.readLong();
+                    long expiresAt = in.readLong();
+                    double tileLat = in.readDouble();
+                    double tileLng = in.readDouble();
+                    double radiusMeters = in.readDouble();
+                    int count = in.readInt();
+                    boolean live = expiresAt > now;
+                    int[] rows = new int[live ? count : 0];
+                    for (int j = 0; j < count; j++) {
+                        String placeId = in.readUTF();
+                        String name = in.readUTF();
+                        String vicinity = in.readUTF();
+                        float rating = in.readFloat();
+                        int userRatingsTotal = in.readInt();
+                        double lat = in.readDouble();
+                        double lng = in.readDouble();
+                        if (live) {
+                            rows[j] = loadedTable.add(placeId, name, vicinity, rating, userRatingsTotal, lat, lng);
+                        }
+                    }
+                    if (live) {
+                        loadedTiles.put(key, new Tile(expiresAt, rows, tileLat, tileLng, radiusMeters));
+                    }
+                }
+            }
+            swapIn(loadedTable, loadedTiles, now);
+        }
+    }
+
+    // Replaces the cache with what load() read, keeping the tiles stored while it was reading since they
+    // are newer than the file
+    private synchronized void swapIn(StationTable loadedTable, LinkedHashMap<Long, Tile> loadedTiles, long now) {
+        boolean changed = false;
+        for (Map.Entry<Long, Tile> entry : tiles.entrySet()) {
+            Tile tile = entry.getValue();
+            if (tile.expiresAt <= now) continue;
+            int[] rows = new int[tile.rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = loadedTable.add(table.station(tile.rows[i]));
+            }
+            Tile previous = loadedTiles.put(entry.getKey(),
+                    new Tile(tile.expiresAt, rows, tile.lat, tile.lng, tile.radiusMeters));
+            if (previous != null) {
+                for (int row : previous.rows) {
+                    loadedTable.remove(row);
+                }
+            }
+            changed = true;
+        }
+        table = loadedTable;
+        tiles = loadedTiles;
+        evict();
+        dirty = changed;
+    }
+
+    // Writes all unexpired tiles to disk; a no-op when nothing changed since the last load or save. Only
+    // copying them out holds the cache's lock, the file is written after it is released.
+    void save() throws IOException {
+        synchronized (fileLock) {
+            List<TileSnapshot> live = snapshot();
+            if (live == null) {
+                return;
+            }
+
+            File temp = new File(file.getPath() + ".tmp");
+            try {
+                try (DataOutputStream out =
+                             new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                    out.writeInt(FILE_MAGIC);
+                    out.writeInt(live.size());
+                    for (TileSnapshot tile : live) {
+                        out.writeLong(tile.key);
+                        out.writeLong(tile.expiresAt);
+                        out.writeDouble(tile.lat);
+                        out.writeDouble(tile.lng);
+                        out.writeDouble(tile.radiusMeters);
+                        out.writeInt(tile.stations.length);
+                        for (FuelStationInfo station : tile.stations) {
+                            out.writeUTF(station.placeId);
+                            out.writeUTF(station.name);
+                            out.writeUTF(station.vicinity);
+                            out.writeFloat((float) station.rating);
+                            out.writeInt(station.userRatingsTotal);
+                            out.writeDouble(station.lat);
+                            out.writeDouble(station.lng);
+                        }
+                    }
+                }
+                if (!temp.renameTo(file)) {
+                    throw new IOException("Unable to replace " + file);
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    dirty = true;
+                }
+                throw e;
+            }
+        }
+    }
+
+    // The unexpired tiles with their stations, or null when nothing changed since the last load or save
+    private synchronized List<TileSnapshot> snapshot() {
+        if (!dirty) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        List<TileSnapshot> live = new ArrayList<>();
+        for (Map.Entry<Long, Tile> entry : tiles.entrySet()) {
+            Tile tile = entry.getValue();
+            if (tile.expiresAt > now) {
+                FuelStationInfo[] stations = new FuelStationInfo[tile.rows.length];
+                for (int i = 0; i < stations.length; i++) {
+                    stations[i] = table.station(tile.rows[i]);
+                }
+                live.add(new TileSnapshot(entry.getKey(), tile, stations));
+            }
+        }
+        dirty = false;
+        return live;
+    }
+}
@@ -0,0 +1,211 @@
+package com.fuellens.application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Grid-based marker clustering over a fixed spatial index.
+ *
+ * <p>Items are projected once into normalised Web Mercator coordinates and bucketed into a coarse grid
+ * so viewport queries only visit nearby cells. Clustering for a zoom level then groups the items in the
+ * viewport by screen-space cell of {@link #CLUSTER_CELL_PX} pixels, which is linear in the number of
+ * visible items. An instance is immutable after construction and can be queried from any thread.
+ *
+ * <p>This class has no Android dependencies.
+ */
+final class StationClusterer<T> {
+
+    /** Width of a clustering cell in screen pixels at the requested zoom. */
+    static final int CLUSTER_CELL_PX = 96;
+
+    // 2^10 x 2^10 index cells, about 39 km wide at the equator
+    private static final int INDEX_LEVEL = 10;
+    private static final int INDEX_SIZE = 1 << INDEX_LEVEL;
+    private static final double TILE_PX = 256.0;
+
+    /** A group of items, or a single item when {@link #size()} is one. */
+    static final class Cluster<T> {
+        final long id;
+        final double lat;
+        final double lng;
+        final List<T> items;
+
+        Cluster(long id, double lat, double lng, List<T> items) {
+            this.id = id;
+            this.lat = lat;
+            this.lng = lng;
+            this.items = items;
+        }
+
+        int size() {
+            return items.size();
+        }
+    }
+
+    private final List<T> source;
+    private final List<T> items;
+    private final double[] xs;
+    private final double[] ys;
+    private final Map<Long, int[]> index;
+
+    StationClusterer(List<T> items, ToDoubleFunction<T> latOf, ToDoubleFunction<T> lngOf) {
+        int count = items.size();
+        this.source = items;
+        this.items = new ArrayList<>(items);
+        this.xs = new double[count];
+        this.ys = new double[count];
+
+        Map<Long, List<Integer>> buckets = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            T item = this.items.get(i);
+            xs[i] = GeoUtils.mercatorX(lngOf.applyAsDouble(item));
+            ys[i] = GeoUtils.mercatorY(latOf.applyAsDouble(item));
+            long key = cellKey(cell(xs[i], INDEX_SIZE), cell(ys[i], INDEX_SIZE));
+            List<Integer> bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = new ArrayList<>();
+                buckets.put(key, bucket);
+            }
+            bucket.add(i);
+        }
+
+        this.index = new HashMap<>(buckets.size() * 2);
+        for (Map.Entry<Long, List<Integer>> entry : buckets.entrySet()) {
+            List<Integer> bucket = entry.getValue();
+            int[] members = new int[bucket.size()];
+            for (int i = 0; i < members.length; i++) {
+                members[i] = bucket.get(i);
+            }
+            index.put(entry.getKey(), members);
+        }
+    }
+
+    int size() {
+        return items.size();
+    }
+
+    // The list this index was built from, so callers can tell whether it is still current
+    List<T> source() {
+        return source;
+    }
+
+    /**
+     * Clusters the items inside the given bounds for a map zoom level. Clusters are identified by their
+     * screen cell, so the same group keeps the same id between calls at the same zoom.
+     */
+    List<Cluster<T>> cluster(float zoom, double south, double west, double north, double east) {
+        double minX = GeoUtils.mercatorX(west);
+        double maxX = GeoUtils.mercatorX(east);
+        double minY = GeoUtils.mercatorY(north);
+        double maxY = GeoUtils.mercatorY(south);
+        // Viewport crossing the antimeridian: cluster the whole width rather than splitting the query
+        if (minX > maxX) {
+            minX = 0;
+            maxX = 1;
+        }
+
+        double worldPx = TILE_PX * Math.pow(2, zoom);
+        long cellsPerSide = Math.max(1, (long) Math.ceil(worldPx / CLUSTER_CELL_PX));
+
+        Map<Long, Accumulator> groups = new HashMap<>();
+        int[] visible = query(minX, minY, maxX, maxY);
+        for (int i : visible) {
+            long key = cellKey(cell(xs[i], cellsPerSide), cell(ys[i], cellsPerSide));
+            Accumulator group = groups.get(key);
+            if (group == null) {
+                group = new Accumulator();
+                groups.put(key, group);
+            }
+            group.add(i, xs[i], ys[i]);
+        }
+
+        List<Cluster<T>> clusters = new ArrayList<>(groups.size());
+        for (Map.Entry<Long, Accumulator> entry : groups.entrySet()) {
+            Accumulator group = entry.getValue();
+            List<T> members = new ArrayList<>(group.count);
+            for (int j = 0; j < group.count; j++) {
+                members.add(items.get(group.members[j]));
+            }
+            clusters.add(new Cluster<>(entry.getKey(),
+                    GeoUtils.latitude(group.sumY / group.count),
+                    GeoUtils.longitude(group.sumX / group.count),
+                    Collections.unmodifiableList(members)));
+        }
+        return clusters;
+    }
+
+    // Indices of all items within the normalised bounds, visiting only the index cells they overlap
+    private int[] query(double minX, double minY, double maxX, double maxY) {
+        int minColumn = cell(minX, INDEX_SIZE);
+        int maxColumn = cell(maxX, INDEX_SIZE);
+        int minRow = cell(minY, INDEX_SIZE);
+        int maxRow = cell(maxY, INDEX_SIZE);
+
+        int[] result = new int[16];
+        int count = 0;
+        long cellsInRange = (long) (maxColumn - minColumn + 1) * (maxRow - minRow + 1);
+        if (cellsInRange > index.size()) {
+            // Zoomed far out: cheaper to walk the occupied cells than every cell in range
+            for (Map.Entry<Long, int[]> entry : index.entrySet()) {
+                int column = (int) (entry.getKey() >> 32);
+                int row = (int) (long) entry.getKey();
+                if (column >= minColumn && column <= maxColumn && row >= minRow && row <= maxRow) {
+                    for (int i : entry.getValue()) {
+                        if (contains(i, minX, minY, maxX, maxY)) {
+                            if (count == result.length) result = Arrays.copyOf(result, count * 2);
+                            result[count++] = i;
+                        }
+                    }
+                }
+            }
+        } else {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                for (int row = minRow; row <= maxRow; row++) {
+                    int[] members = index.get(cellKey(column, row));
+                    if (members == null) continue;
+                    for (int i : members) {
+                        if (contains(i, minX, minY, maxX, maxY)) {
+                            if (count == result.length) result = Arrays.copyOf(result, count * 2);
+                            result[count++] = i;
+                        }
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private boolean contains(int i, double minX, double minY, double maxX, double maxY) {
+        return xs[i] >= minX && xs[i] <= maxX && ys[i] >= minY && ys[i] <= maxY;
+    }
+
+    private static final class Accumulator {
+        int[] members = new int[4];
+        int count;
+        double sumX;
+        double sumY;
+
+        void add(int i, double x, double y) {
+            if (count == members.length) {
+                members = Arrays.copyOf(members, count * 2);
+            }
+            members[count++] = i;
+            sumX += x;
+            sumY += y;
+        }
+    }
+
+    private static int cell(double normalised, long cellsPerSide) {
+        long cell = (long) Math.floor(normalised * cellsPerSide);
+        return (int) Math.max(0, Math.min(cellsPerSide - 1, cell));
+    }
+
+    private static long cellKey(int column, int row) {
+        return ((long) column << 32) | (row & 0xFFFFFFFFL);
+    }
+}
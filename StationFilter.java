@@ -0,0 +1,99 @@
+package com.fuellens.application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Radius filtering and distance ordering of stations.
+ *
+ * <p>Each station's distance is computed once instead of inside a sort comparator, and radius tests
+ * reject stations outside the circle's bounding box before paying for the haversine formula. This class
+ * has no Android dependencies.
+ */
+final class StationFilter {
+
+    private StationFilter() {
+    }
+
+    /** A reusable test for "within radius metres of a point". */
+    static final class Radius {
+        private final double lat;
+        private final double lng;
+        private final double radiusMeters;
+        private final double latSpan;
+        // Negative when the circle reaches a pole, where only the exact test is reliable
+        private final double lngSpan;
+
+        Radius(double lat, double lng, double radiusMeters) {
+            this.lat = lat;
+            this.lng = lng;
+            this.radiusMeters = radiusMeters;
+            // 1% padding keeps the box a strict superset of the circle despite rounding
+            this.latSpan = Math.toDegrees(radiusMeters / GeoUtils.EARTH_RADIUS_METERS) * 1.01;
+            double widestLat = Math.abs(lat) + latSpan;
+            this.lngSpan = widestLat >= 89
+                    ? -1 : Math.toDegrees(radiusMeters / (GeoUtils.EARTH_RADIUS_METERS
+                    * Math.cos(Math.toRadians(widestLat)))) * 1.01;
+        }
+
+        boolean contains(double stationLat, double stationLng) {
+            if (Math.abs(stationLat - lat) > latSpan) return false;
+            if (lngSpan >= 0) {
+                double lngDelta = Math.abs(stationLng - lng);
+                if (lngDelta > 180) lngDelta = 360 - lngDelta;
+                if (lngDelta > lngSpan) return false;
+            }
+            return GeoUtils.distanceMeters(lat, lng, stationLat, stationLng) <= radiusMeters;
+        }
+    }
+
+    /** Returns the stations ordered nearest first. */
+    static List<FuelStationInfo> sortByDistance(List<FuelStationInfo> stations, double lat, double lng) {
+        int count = stations.size();
+        double[] distances = new double[count];
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            FuelStationInfo station = stations.get(i);
+            distances[i] = GeoUtils.distanceMeters(lat, lng, station.lat, station.lng);
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingDouble(i -> distances[i]));
+
+        List<FuelStationInfo> sorted = new ArrayList<>(count);
+        for (int i : order) {
+            sorted.add(stations.get(i));
+        }
+        return sorted;
+    }
+
+    /** Returns at most {@code limit} stations nearest to the point, nearest first, in O(n log limit). */
+    static List<FuelStationInfo> nearest(List<FuelStationInfo> stations, double lat, double lng, int limit) {
+        if (limit <= 0) return Collections.emptyList();
+
+        int count = stations.size();
+        double[] distances = new double[count];
+        // Max-heap on distance, so the farthest of the current best is evicted first
+        PriorityQueue<Integer> best = new PriorityQueue<>(Math.min(count, limit) + 1,
+                (a, b) -> Double.compare(distances[b], distances[a]));
+        for (int i = 0; i < count; i++) {
+            FuelStationInfo station = stations.get(i);
+            distances[i] = GeoUtils.distanceMeters(lat, lng, station.lat, station.lng);
+            if (best.size() < limit) {
+                best.add(i);
+            } else if (distances[i] < distances[best.peek()]) {
+                best.poll();
+                best.add(i);
+            }
+        }
+
+        FuelStationInfo[] nearest = new FuelStationInfo[best.size()];
+        for (int slot = nearest.length - 1; slot >= 0; slot--) {
+            nearest[slot] = stations.get(best.poll());
+        }
+        return Arrays.asList(nearest);
+    }
+}
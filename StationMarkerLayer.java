@@ -0,0 +1,109 @@
+package com.fuellens.application;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.Marker;
+import com.google.android.gms.maps.model.MarkerOptions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the fuel station markers on the map in sync with the latest station list.
+ *
+ * <p>Markers are keyed by place id. Each {@link #render} call diffs the new list against what is already
+ * shown: markers for stations that disappeared are removed, new stations get a marker, and stations
+ * whose details changed are updated in place. Unchanged markers are left untouched.
+ */
+final class StationMarkerLayer {
+
+    /** Builds the marker options for a station; also used to restyle markers whose station changed. */
+    interface MarkerFactory {
+        MarkerOptions create(FuelStationInfo station);
+    }
+
+    private final GoogleMap map;
+    private final MarkerFactory factory;
+    private final Map<String, Marker> markers = new HashMap<>();
+
+    StationMarkerLayer(GoogleMap map, MarkerFactory factory) {
+        this.map = map;
+        this.factory = factory;
+    }
+
+    void render(List<FuelStationInfo> stations) {
+        Map<String, FuelStationInfo> incoming = new HashMap<>(stations.size() * 2);
+        for (FuelStationInfo station : stations) {
+            incoming.put(station.placeId, station);
+        }
+
+        Iterator<Map.Entry<String, Marker>> iterator = markers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Marker> entry = iterator.next();
+            if (!incoming.containsKey(entry.getKey())) {
+                entry.getValue().remove();
+                iterator.remove();
+            }
+        }
+
+        for (FuelStationInfo station : incoming.values()) {
+            Marker marker = markers.get(station.placeId);
+            if (marker == null) {
+                marker = map.addMarker(factory.create(station));
+                if (marker != null) {
+                    PerfMetrics.global().count("markers.created");
+                    marker.setTag(station);
+                    markers.put(station.placeId, marker);
+                }
+            } else if (!station.equals(marker.getTag())) {
+                update(marker, station);
+            }
+        }
+    }
+
+    /** Restyles the markers of the given stations, e.g. after state the factory reads has changed. */
+    void refresh(Collection<String> placeIds) {
+        for (String placeId : placeIds) {
+            Marker marker = markers.get(placeId);
+            if (marker != null) {
+                update(marker, (FuelStationInfo) marker.getTag());
+            }
+        }
+    }
+
+    // Reapplies the factory's options to an existing marker, e.g. after its station's details changed
+    private void update(Marker marker, FuelStationInfo station) {
+        MarkerOptions options = factory.create(station);
+        marker.setPosition(options.getPosition());
+        marker.setTitle(options.getTitle());
+        marker.setSnippet(options.getSnippet());
+        marker.setAlpha(options.getAlpha());
+        marker.setZIndex(options.getZIndex());
+        if (options.getIcon() != null) {
+            marker.setIcon(options.getIcon());
+        }
+        marker.setTag(station);
+        if (marker.isInfoWindowShown()) {
+            marker.showInfoWindow();
+        }
+    }
+
+    /** Place ids of the stations that currently have a marker. */
+    List<String> placeIds() {
+        return new ArrayList<>(markers.keySet());
+    }
+
+    int size() {
+        return markers.size();
+    }
+
+    void clear() {
+        for (Marker marker : markers.values()) {
+            marker.remove();
+        }
+        markers.clear();
+    }
+}
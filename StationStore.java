@@ -0,0 +1,209 @@
+package com.fuellens.application;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import androidx.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local SQLite store of every station ever fetched, used when the network is unavailable.
+ *
+ * <p>Rows carry the key of the ~1 km {@link GeoUtils} tile they fall in, and that column is indexed, so a
+ * radius query reads only the tiles overlapping the search circle before the exact distance filter.
+ * Unlike {@link StationCache} entries never expire; newer fetches simply overwrite older rows.
+ */
+final class StationStore extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "stations.db";
+    private static final int DATABASE_VERSION = 2;
+
+    // SQLite's default limit on bound parameters is 999, far above the tiles of any realistic radius
+    private static final int MAX_ARGS_PER_QUERY = 900;
+
+    StationStore(Context context) {
+        super(context.getApplicationContext(), DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE stations ("
+                + "place_id TEXT PRIMARY KEY, "
+                + "name TEXT NOT NULL, "
+                + "vicinity TEXT NOT NULL, "
+                + "rating REAL NOT NULL, "
+                + "user_ratings_total INTEGER NOT NULL, "
+                + "lat REAL NOT NULL, "
+                + "lng REAL NOT NULL, "
+                + "tile_key INTEGER NOT NULL, "
+                + "updated_at INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX stations_tile ON stations (tile_key)");
+        createAvailabilityTable(db);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            createAvailabilityTable(db);
+        }
+    }
+
+    // Last known fuel availability per station, so offline markers can still show a status badge
+    private static void createAvailabilityTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE availability ("
+                + "place_id TEXT PRIMARY KEY, "
+                + "petrol TEXT NOT NULL, "
+                + "diesel TEXT NOT NULL, "
+                + "cng TEXT NOT NULL, "
+                + "version INTEGER NOT NULL, "
+                + "updated_at INTEGER NOT NULL)");
+    }
+
+    /** Inserts new stations and overwrites changed ones in a single transaction. */
+    @WorkerThread
+    void upsert(List<FuelStationInfo> stations) {
+        if (stations.isEmpty()) return;
+
+        long now = System.currentTimeMillis();
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try (SQLiteStatement insert = db.compileStatement("INSERT OR REPLACE INTO stations "
+                + "(place_id, name, vicinity, rating, user_ratings_total, lat, lng, tile_key, updated_at) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (FuelStationInfo station : stations) {
+                insert.clearBindings();
+                insert.bindString(1, station.placeId);
+                insert.bindString(2, station.name);
+                insert.bindString(3, station.vicinity);
+                insert.bindDouble(4, station.rating);
+                insert.bindLong(5, station.userRatingsTotal);
+                insert.bindDouble(6, station.lat);
+                insert.bindDouble(7, station.lng);
+                insert.bindLong(8, GeoUtils.tileKey(station.lat, station.lng));
+                insert.bindLong(9, now);
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /** Returns the stored stations within the radius, nearest first. */
+    @WorkerThread
+    List<FuelStationInfo> queryRadius(double lat, double lng, int radiusMeters) {
+        long[] tiles = GeoUtils.tilesIntersecting(lat, lng, radiusMeters);
+        if (tiles.length > MAX_ARGS_PER_QUERY) {
+            throw new IllegalArgumentException("Radius too large for a local query: " + radiusMeters);
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT place_id, name, vicinity, rating, user_ratings_total, lat, lng "
+                + "FROM stations WHERE tile_key IN (");
+        String[] args = new String[tiles.length];
+        for (int i = 0; i < tiles.length; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+            args[i] = Long.toString(tiles[i]);
+        }
+        sql.append(')');
+
+        StationFilter.Radius radius = new StationFilter.Radius(lat, lng, radiusMeters);
+        List<FuelStationInfo> stations = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().rawQuery(sql.toString(), args)) {
+            while (cursor.moveToNext()) {
+                double stationLat = cursor.getDouble(5);
+                double stationLng = cursor.getDouble(6);
+                if (radius.contains(stationLat, stationLng)) {
+                    stations.add(new FuelStationInfo(cursor.getString(0), cursor.getString(1),
+                            cursor.getString(2), cursor.getDouble(3), cursor.getInt(4), stationLat, stationLng));
+                }
+            }
+        }
+
+        return Collections.unmodifiableList(StationFilter.sortByDistance(stations, lat, lng));
+    }
+
+    /**
+     * Stores availability snapshots that are newer than the stored row by {@link FuelAvailability#isNewerThan},
+     * so pumps written without a version still update.
+     */
+    @WorkerThread
+    void upsertAvailability(Collection<FuelAvailability> availabilities) {
+        if (availabilities.isEmpty()) return;
+
+        List<String> placeIds = new ArrayList<>(availabilities.size());
+        for (FuelAvailability availability : availabilities) {
+            placeIds.add(availability.placeId);
+        }
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            // Reading the held rows in the same transaction keeps a concurrent writer from slipping in between
+            Map<String, FuelAvailability> held = new HashMap<>();
+            for (FuelAvailability availability : queryAvailability(db, placeIds)) {
+                held.put(availability.placeId, availability);
+            }
+            List<FuelAvailability> newer = FuelAvailability.keepNewer(availabilities, held);
+            try (SQLiteStatement insert = db.compileStatement("INSERT OR REPLACE INTO availability "
+                    + "(place_id, petrol, diesel, cng, version, updated_at) VALUES (?, ?, ?, ?, ?, ?)")) {
+                for (FuelAvailability availability : newer) {
+                    insert.clearBindings();
+                    insert.bindString(1, availability.placeId);
+                    insert.bindString(2, availability.petrol.name());
+                    insert.bindString(3, availability.diesel.name());
+                    insert.bindString(4, availability.cng.name());
+                    insert.bindLong(5, availability.version);
+                    insert.bindLong(6, availability.updatedAt);
+                    insert.executeInsert();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /** Returns the stored availability of those of the given stations that have any. */
+    @WorkerThread
+    List<FuelAvailability> queryAvailability(List<FuelStationInfo> stations) {
+        List<String> placeIds = new ArrayList<>(stations.size());
+        for (FuelStationInfo station : stations) {
+            placeIds.add(station.placeId);
+        }
+        return queryAvailability(getReadableDatabase(), placeIds);
+    }
+
+    private static List<FuelAvailability> queryAvailability(SQLiteDatabase db, List<String> placeIds) {
+        List<FuelAvailability> result = new ArrayList<>();
+        for (int start = 0; start < placeIds.size(); start += MAX_ARGS_PER_QUERY) {
+            int end = Math.min(placeIds.size(), start + MAX_ARGS_PER_QUERY);
+            StringBuilder sql = new StringBuilder("SELECT place_id, petrol, diesel, cng, version, updated_at "
+                    + "FROM availability WHERE place_id IN (");
+            String[] args = new String[end - start];
+            for (int i = start; i < end; i++) {
+                sql.append(i == start ? "?" : ", ?");
+                args[i - start] = placeIds.get(i);
+            }
+            sql.append(')');
+
+            try (Cursor cursor = db.rawQuery(sql.toString(), args)) {
+                while (cursor.moveToNext()) {
+                    result.add(new FuelAvailability(cursor.getString(0),
+                            FuelAvailability.Level.parse(cursor.getString(1)),
+                            FuelAvailability.Level.parse(cursor.getString(2)),
+                            FuelAvailability.Level.parse(cursor.getString(3)),
+                            cursor.getLong(4), cursor.getLong(5)));
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,242 @@
+package com.fuellens.application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column-oriented storage for large numbers of stations.
+ *
+ * <p>Each station is a row: an int index into parallel primitive arrays for coordinates and ratings, with
+ * names and vicinities stored as ints into a pool that holds each distinct string once. Pool entries are
+ * reference counted, so a string no longer used by any row is dropped and its slot reused. Only the place
+ * id stays a String per row. Holding tens of thousands of stations therefore costs a handful of arrays rather
+ * than an object graph per station. Rows freed by {@link #remove} are reused by later additions, so row
+ * indexes are only stable while the row is live. Radius filtering and distance sorting work on caller
+ * supplied int and double arrays without allocating, and {@link #station} builds a {@link FuelStationInfo}
+ * only for rows that are actually shown. Not thread-safe; owners synchronise access.
+ */
+final class StationTable {
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private String[] placeIds = new String[INITIAL_CAPACITY];
+    private double[] lats = new double[INITIAL_CAPACITY];
+    private double[] lngs = new double[INITIAL_CAPACITY];
+    private int[] nameIds = new int[INITIAL_CAPACITY];
+    private int[] vicinityIds = new int[INITIAL_CAPACITY];
+    private double[] ratings = new double[INITIAL_CAPACITY];
+    private int[] userRatingsTotals = new int[INITIAL_CAPACITY];
+    // Rows below this index have been used; free ones have a null place id and are on the free stack
+    private int rowLimit;
+    private int[] freeRows = new int[16];
+    private int freeCount;
+
+    // Pooled strings by id and how many name or vicinity columns refer to each; released ids are reused
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private int[] stringRefs = new int[INITIAL_CAPACITY];
+    private int[] freeStrings = new int[16];
+    private int freeStringCount;
+
+    int add(FuelStationInfo station) {
+        return add(station.placeId, station.name, station.vicinity, station.rating, station.userRatingsTotal,
+                station.lat, station.lng);
+    }
+
+    int add(String placeId, String name, String vicinity, double rating, int userRatingsTotal,
+            double lat, double lng) {
+        int row;
+        if (freeCount > 0) {
+            row = freeRows[--freeCount];
+        } else {
+            if (rowLimit == placeIds.length) grow();
+            row = rowLimit++;
+        }
+        placeIds[row] = placeId;
+        lats[row] = lat;
+        lngs[row] = lng;
+        nameIds[row] = intern(name);
+        vicinityIds[row] = intern(vicinity);
+        ratings[row] = rating;
+        userRatingsTotals[row] = userRatingsTotal;
+        return row;
+    }
+
+    void remove(int row) {
+        if (placeIds[row] == null) return;
+        placeIds[row] = null;
+        release(nameIds[row]);
+        release(vicinityIds[row]);
+        if (freeCount == freeRows.length) freeRows = Arrays.copyOf(freeRows, freeCount * 2);
+        freeRows[freeCount++] = row;
+    }
+
+    /** Drops every row and the string pool. */
+    void clear() {
+        Arrays.fill(placeIds, 0, rowLimit, null);
+        rowLimit = 0;
+        freeCount = 0;
+        strings.clear();
+        stringIds.clear();
+        Arrays.fill(stringRefs, 0);
+        freeStringCount = 0;
+    }
+
+    int size() {
+        return rowLimit - freeCount;
+    }
+
+    /** Distinct names and vicinities held by live rows. */
+    int pooledStrings() {
+        return stringIds.size();
+    }
+
+    String placeId(int row) {
+        return placeIds[row];
+    }
+
+    double lat(int row) {
+        return lats[row];
+    }
+
+    double lng(int row) {
+        return lngs[row];
+    }
+
+    String name(int row) {
+        return strings.get(nameIds[row]);
+    }
+
+    String vicinity(int row) {
+        return strings.get(vicinityIds[row]);
+    }
+
+    double rating(int row) {
+        return ratings[row];
+    }
+
+    int userRatingsTotal(int row) {
+        return userRatingsTotals[row];
+    }
+
+    /** A standalone copy of one row, for the stations that are rendered or handed to other components. */
+    FuelStationInfo station(int row) {
+        return new FuelStationInfo(placeIds[row], name(row), vicinity(row), ratings[row], userRatingsTotals[row],
+                lats[row], lngs[row]);
+    }
+
+    /**
+     * Copies into {@code out} those of the first {@code count} rows that lie within the radius, keeping
+     * their order, and returns how many there were. {@code out} may be {@code rows} itself.
+     */
+    int filterWithin(int[] rows, int count, StationFilter.Radius radius, int[] out) {
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            if (radius.contains(lats[row], lngs[row])) {
+                out[kept++] = row;
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Orders the first {@code count} rows nearest first. {@code distances} needs room for {@code count}
+     * values and receives each row's distance in metres, in the same order as the sorted rows.
+     */
+    void sortByDistance(int[] rows, int count, double lat, double lng, double[] distances) {
+        for (int i = 0; i < count; i++) {
+            distances[i] = GeoUtils.distanceMeters(lat, lng, lats[rows[i]], lngs[rows[i]]);
+        }
+        sort(rows, distances, 0, count - 1);
+    }
+
+    private int intern(String value) {
+        Integer id = stringIds.get(value);
+        if (id == null) {
+            if (freeStringCount > 0) {
+                id = freeStrings[--freeStringCount];
+                strings.set(id, value);
+            } else {
+                id = strings.size();
+                strings.add(value);
+                if (id == stringRefs.length) stringRefs = Arrays.copyOf(stringRefs, id * 2);
+            }
+            stringIds.put(value, id);
+        }
+        stringRefs[id]++;
+        return id;
+    }
+
+    private void release(int id) {
+        if (--stringRefs[id] > 0) return;
+        stringIds.remove(strings.set(id, null));
+        if (freeStringCount == freeStrings.length) freeStrings = Arrays.copyOf(freeStrings, freeStringCount * 2);
+        freeStrings[freeStringCount++] = id;
+    }
+
+    private void grow() {
+        int capacity = placeIds.length * 2;
+        placeIds = Arrays.copyOf(placeIds, capacity);
+        lats = Arrays.copyOf(lats, capacity);
+        lngs = Arrays.copyOf(lngs, capacity);
+        nameIds = Arrays.copyOf(nameIds, capacity);
+        vicinityIds = Arrays.copyOf(vicinityIds, capacity);
+        ratings = Arrays.copyOf(ratings, capacity);
+        userRatingsTotals = Arrays.copyOf(userRatingsTotals, capacity);
+    }
+
+    // Quicksort of rows keyed by distances, moving both arrays together
+    private static void sort(int[] rows, double[] keys, int low, int high) {
+        while (high - low >= INSERTION_SORT_THRESHOLD) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] < keys[low]) swap(rows, keys, middle, low);
+            if (keys[high] < keys[low]) swap(rows, keys, high, low);
+            if (keys[high] < keys[middle]) swap(rows, keys, high, middle);
+            double pivot = keys[middle];
+
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (keys[i] < pivot) i++;
+                while (keys[j] > pivot) j--;
+                if (i <= j) {
+                    swap(rows, keys, i++, j--);
+                }
+            }
+            // Recurse into the smaller half so the stack stays logarithmic
+            if (j - low < high - i) {
+                sort(rows, keys, low, j);
+                low = i;
+            } else {
+                sort(rows, keys, i, high);
+                high = j;
+            }
+        }
+        for (int i = low + 1; i <= high; i++) {
+            int row = rows[i];
+            double key = keys[i];
+            int j = i - 1;
+            while (j >= low && keys[j] > key) {
+                rows[j + 1] = rows[j];
+                keys[j + 1] = keys[j];
+                j--;
+            }
+            rows[j + 1] = row;
+            keys[j + 1] = key;
+        }
+    }
+
+    private static void swap(int[] rows, double[] keys, int a, int b) {
+        int row = rows[a];
+        rows[a] = rows[b];
+        rows[b] = row;
+        double key = keys[a];
+        keys[a] = keys[b];
+        keys[b] = key;
+    }
+}
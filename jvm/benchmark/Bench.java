@@ -0,0 +1,76 @@
+package com.fuellens.application;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Timing loop shared by the JVM benchmarks. An operation is first run until a round takes about
+ * {@value #ROUND_MS} ms and the JIT has settled, then timed over {@value #ROUNDS} rounds. The median time
+ * per call is reported, together with the fastest round and the bytes allocated per call. Results go into
+ * a sink so the JIT cannot drop the work. It is no JMH: use it to compare runs on the same machine, not
+ * as absolute figures.
+ */
+final class Bench {
+
+    private static final long ROUND_MS = 100;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+
+    /** One benchmarked call; its result is consumed so the work cannot be optimised away. */
+    interface Op {
+        Object run() throws Exception;
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static int sink;
+
+    private Bench() {
+    }
+
+    static void section(String title) {
+        System.out.println();
+        System.out.println(title);
+    }
+
+    /** Times {@code op} and prints one line; returns the median microseconds per call. */
+    static double measure(String name, Op op) throws Exception {
+        int iterations = 1;
+        while (true) {
+            long start = System.nanoTime();
+            runRound(op, iterations);
+            long elapsed = System.nanoTime() - start;
+            if (elapsed >= ROUND_MS * 1_000_000 / 4 || iterations >= 1 << 24) {
+                iterations = (int) Math.max(1, Math.min(1 << 24, iterations * (ROUND_MS * 1_000_000.0 / elapsed)));
+                break;
+            }
+            iterations *= 4;
+        }
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            runRound(op, iterations);
+        }
+
+        double[] micros = new double[ROUNDS];
+        long allocated = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long bytesBefore = THREADS.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            runRound(op, iterations);
+            micros[round] = (System.nanoTime() - start) / 1000.0 / iterations;
+            allocated += THREADS.getCurrentThreadAllocatedBytes() - bytesBefore;
+        }
+        Arrays.sort(micros);
+        double median = micros[ROUNDS / 2];
+        System.out.printf(Locale.ROOT, "  %-44s %11.3f us/op  (min %.3f)  %,12d B/op%n", name, median, micros[0],
+                allocated / ((long) ROUNDS * iterations));
+        return median;
+    }
+
+    private static void runRound(Op op, int iterations) throws Exception {
+        for (int i = 0; i < iterations; i++) {
+            Object result = op.run();
+            sink += result != null ? System.identityHashCode(result) & 1 : 0;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.fuellens.application;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Scaling of {@link StationClusterer} at 1k, 10k and 100k stations spread over the Delhi region, about
+ * 2 by 2 degrees. For each size it times building the index and clustering three viewports the map
+ * shows: the whole region at zoom 9, a city view at zoom 12 and a street view at zoom 16. The index is
+ * rebuilt whenever the station list changes and clustering runs on every camera idle, both off the
+ * main thread.
+ *
+ * <p>Usage: {@code jvm/run.sh ClustererBenchmark [sizes=1000,10000,100000]}.
+ */
+public final class ClustererBenchmark {
+
+    private static final double LAT = 28.6315;
+    private static final double LNG = 77.2167;
+    private static final double REGION_METERS = 220000;
+
+    public static void main(String[] args) throws Exception {
+        String sizes = args.length > 0 ? args[0] : "1000,10000,100000";
+        for (String size : sizes.split(",")) {
+            int count = Integer.parseInt(size.trim());
+            List<FuelStationInfo> stations = Fixtures.scatteredStations(count, LAT, LNG, REGION_METERS, count);
+            StationClusterer<FuelStationInfo> clusterer =
+                    new StationClusterer<>(stations, station -> station.lat, station -> station.lng);
+
+            Bench.section(String.format(Locale.ROOT, "%,d stations", count));
+            Bench.measure("build index",
+                    () -> new StationClusterer<>(stations, station -> station.lat, station -> station.lng));
+            measureView(clusterer, "region at zoom 9", 9f, 1.0, 1.2);
+            measureView(clusterer, "city at zoom 12", 12f, 0.15, 0.2);
+            measureView(clusterer, "street at zoom 16", 16f, 0.01, 0.012);
+        }
+    }
+
+    private static void measureView(StationClusterer<FuelStationInfo> clusterer, String label, float zoom,
+                                    double halfLat, double halfLng) throws Exception {
+        List<StationClusterer.Cluster<FuelStationInfo>> clusters =
+                clusterer.cluster(zoom, LAT - halfLat, LNG - halfLng, LAT + halfLat, LNG + halfLng);
+        int visible = 0;
+        for (StationClusterer.Cluster<FuelStationInfo> cluster : clusters) {
+            visible += cluster.size();
+        }
+        Bench.measure(String.format(Locale.ROOT, "%s: %,d in view, %,d markers", label, visible, clusters.size()),
+                () -> clusterer.cluster(zoom, LAT - halfLat, LNG - halfLng, LAT + halfLat, LNG + halfLng));
+    }
+}
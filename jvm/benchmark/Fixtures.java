@@ -0,0 +1,60 @@
+package com.fuellens.application;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Loads the response fixtures in {@code jvm/fixtures} and builds synthetic station sets for sizes beyond
+ * what the fixtures hold. Paths are relative to the repository root, where {@code jvm/run.sh} runs.
+ */
+final class Fixtures {
+
+    private static final Path DIR = Paths.get(System.getProperty("fuellens.fixtures", "jvm/fixtures"));
+
+    private Fixtures() {
+    }
+
+    static String text(String name) throws IOException {
+        return new String(bytes(name), StandardCharsets.UTF_8);
+    }
+
+    static byte[] bytes(String name) throws IOException {
+        return Files.readAllBytes(DIR.resolve(name));
+    }
+
+    static Reader reader(String name) throws IOException {
+        return new StringReader(text(name));
+    }
+
+    /** The 60 stations of the three Delhi nearby search pages, in response order. */
+    static List<FuelStationInfo> delhiStations() throws IOException {
+        List<FuelStationInfo> stations = new ArrayList<>();
+        for (int page = 1; page <= 3; page++) {
+            stations.addAll(PlacesJsonParser.parseNearbySearch(reader("nearbysearch-delhi-page" + page + ".json"))
+                    .stations);
+        }
+        return stations;
+    }
+
+    /** {@code count} stations scattered uniformly over a square of {@code sideMeters} around a point. */
+    static List<FuelStationInfo> scatteredStations(int count, double lat, double lng, double sideMeters, long seed) {
+        Random random = new Random(seed);
+        double latSpan = sideMeters / 111320.0;
+        double lngSpan = latSpan / Math.cos(Math.toRadians(lat));
+        List<FuelStationInfo> stations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            stations.add(new FuelStationInfo("synthetic-" + i, "Pump " + i, "Sector " + (i % 200) + ", New Delhi",
+                    3 + random.nextInt(20) / 10.0, random.nextInt(2000),
+                    lat + (random.nextDouble() - 0.5) * latSpan, lng + (random.nextDouble() - 0.5) * lngSpan));
+        }
+        return stations;
+    }
+}
@@ -0,0 +1,99 @@
+package com.fuellens.application;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compares the streaming decoder in {@link PlacesJsonParser} with the {@code org.json} tree parsing the
+ * activity used to do on the main thread, on the recorded nearby search and Directions responses. Each
+ * fixture is first decoded both ways and the results compared, so the two paths are known to do the same
+ * work before they are timed.
+ *
+ * <p>Usage: {@code jvm/run.sh ParseBenchmark}.
+ */
+public final class ParseBenchmark {
+
+    private static final String[] NEARBY_FIXTURES = {
+            "nearbysearch-delhi-page1.json", "nearbysearch-delhi-page2.json", "nearbysearch-rural.json"};
+
+    public static void main(String[] args) throws Exception {
+        for (String name : NEARBY_FIXTURES) {
+            String response = Fixtures.text(name);
+            List<FuelStationInfo> streamed = PlacesJsonParser.parseNearbySearch(new StringReader(response)).stations;
+            check(name, streamed.equals(treeNearbySearch(response)));
+
+            Bench.section(String.format(Locale.ROOT, "%s, %d results, %d KB", name, streamed.size(),
+                    response.length() / 1024));
+            Bench.measure("tree (org.json)", () -> treeNearbySearch(response));
+            Bench.measure("streaming (PlacesJsonParser)",
+                    () -> PlacesJsonParser.parseNearbySearch(new StringReader(response)));
+        }
+
+        String directions = Fixtures.text("directions-delhi-jaipur.json");
+        PlacesJsonParser.RouteResult streamed = PlacesJsonParser.parseDirections(new StringReader(directions));
+        TreeRoute tree = treeDirections(directions);
+        check("directions", streamed.path.equals(tree.path) && streamed.distanceText.equals(tree.distanceText)
+                && streamed.durationText.equals(tree.durationText));
+
+        Bench.section(String.format(Locale.ROOT, "directions, %d points, %d KB", streamed.path.size(),
+                directions.length() / 1024));
+        Bench.measure("tree (org.json) and decode", () -> treeDirections(directions));
+        Bench.measure("streaming (PlacesJsonParser)",
+                () -> PlacesJsonParser.parseDirections(new StringReader(directions)));
+    }
+
+    private static void check(String fixture, boolean same) {
+        if (!same) {
+            throw new AssertionError("Tree and streaming decoders disagree on " + fixture);
+        }
+    }
+
+    // The nearby search handling MainActivity had before the streaming parser
+    private static List<FuelStationInfo> treeNearbySearch(String response) throws Exception {
+        JSONObject jsonResponse = new JSONObject(response);
+        JSONArray results = jsonResponse.getJSONArray("results");
+        List<FuelStationInfo> stations = new ArrayList<>(results.length());
+        for (int i = 0; i < results.length(); i++) {
+            JSONObject place = results.getJSONObject(i);
+            JSONObject location = place.getJSONObject("geometry").getJSONObject("location");
+            stations.add(new FuelStationInfo(
+                    place.optString("place_id"),
+                    place.getString("name"),
+                    place.optString("vicinity", ""),
+                    place.optDouble("rating", 0.0),
+                    place.optInt("user_ratings_total", 0),
+                    location.getDouble("lat"),
+                    location.getDouble("lng")));
+        }
+        return stations;
+    }
+
+    private static final class TreeRoute {
+        final List<LatLng> path;
+        final String distanceText;
+        final String durationText;
+
+        TreeRoute(List<LatLng> path, String distanceText, String durationText) {
+            this.path = path;
+            this.distanceText = distanceText;
+            this.durationText = durationText;
+        }
+    }
+
+    // The Directions handling MainActivity had before the streaming parser; both decode the same polyline
+    private static TreeRoute treeDirections(String response) throws Exception {
+        JSONObject jsonResponse = new JSONObject(response);
+        JSONObject route = jsonResponse.getJSONArray("routes").getJSONObject(0);
+        String encodedPolyline = route.getJSONObject("overview_polyline").getString("points");
+        JSONObject leg = route.getJSONArray("legs").getJSONObject(0);
+        return new TreeRoute(PlacesJsonParser.decodePolyline(encodedPolyline),
+                leg.getJSONObject("distance").getString("text"), leg.getJSONObject("duration").getString("text"));
+    }
+}
@@ -0,0 +1,147 @@
+package com.fuellens.application;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Baseline for the station pipeline on a plain JVM. It times each step from a response arriving to pumps
+ * and routes being ready to draw, on the recorded fixtures and on a synthetic stress set:
+ * <ul>
+ *   <li>decoding nearby search, Directions and Distance Matrix responses;</li>
+ *   <li>decoding an overview polyline and a dense 280 km route;</li>
+ *   <li>radius filtering, nearest-k selection and sorting by distance;</li>
+ *   <li>ranking pumps by drive time from a Distance Matrix answer;</li>
+ *   <li>building the cluster index and clustering a viewport;</li>
+ *   <li>building a route's level-of-detail pyramid;</li>
+ *   <li>the haversine distance and the tile cover of a 5 km search.</li>
+ * </ul>
+ *
+ * <p>Usage: {@code jvm/run.sh PipelineBenchmark [stressStations=100000]}.
+ */
+public final class PipelineBenchmark {
+
+    private static final double CENTER_LAT = 28.6315;
+    private static final double CENTER_LNG = 77.2167;
+    private static final int SEARCH_RADIUS_METERS = 5000;
+    // RouteService needs the Android SDK; these mirror MAX_DESTINATIONS_PER_REQUEST and ROUTE_TOLERANCE_PX
+    private static final int RANKED = 25;
+    private static final double ROUTE_TOLERANCE_PX = 0.5;
+
+    public static void main(String[] args) throws Exception {
+        int stressCount = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+        String page = Fixtures.text("nearbysearch-delhi-page1.json");
+        String directions = Fixtures.text("directions-delhi-jaipur.json");
+        String matrix = Fixtures.text("distancematrix-delhi-peak.json");
+        String denseRoute = Fixtures.text("route-delhi-jaipur.polyline").trim();
+        String overview = overviewPolyline(directions);
+        List<FuelStationInfo> delhi = Fixtures.delhiStations();
+        // A city-wide set at about the density of central Delhi, to show how each step scales
+        List<FuelStationInfo> stress = Fixtures.scatteredStations(stressCount, CENTER_LAT, CENTER_LNG, 40000, 1);
+        List<LatLng> densePath = PlacesJsonParser.decodePolyline(denseRoute);
+
+        Bench.section("decode");
+        Bench.measure(String.format(Locale.ROOT, "nearbysearch page, 20 results, %d KB", page.length() / 1024),
+                () -> PlacesJsonParser.parseNearbySearch(new StringReader(page)));
+        Bench.measure(String.format(Locale.ROOT, "directions, %d KB", directions.length() / 1024),
+                () -> PlacesJsonParser.parseDirections(new StringReader(directions)));
+        Bench.measure("distance matrix, 25 elements",
+                () -> PlacesJsonParser.parseDistanceMatrix(new StringReader(matrix)));
+
+        Bench.section("polyline decode");
+        Bench.measure(String.format(Locale.ROOT, "overview, %d points", PlacesJsonParser.decodePolyline(overview).size()),
+                () -> PlacesJsonParser.decodePolyline(overview));
+        Bench.measure(String.format(Locale.ROOT, "dense route, %d points", densePath.size()),
+                () -> PlacesJsonParser.decodePolyline(denseRoute));
+
+        Bench.section("filter within 5 km");
+        StationFilter.Radius radius = new StationFilter.Radius(CENTER_LAT, CENTER_LNG, SEARCH_RADIUS_METERS);
+        Bench.measure(delhi.size() + " stations", () -> within(delhi, radius));
+        Bench.measure(stress.size() + " stations", () -> within(stress, radius));
+
+        Bench.section("rank");
+        Bench.measure("nearest " + RANKED + " of " + delhi.size(),
+                () -> StationFilter.nearest(delhi, CENTER_LAT, CENTER_LNG, RANKED));
+        Bench.measure("nearest " + RANKED + " of " + stress.size(),
+                () -> StationFilter.nearest(stress, CENTER_LAT, CENTER_LNG, RANKED));
+        Bench.measure("sort " + delhi.size() + " by distance",
+                () -> StationFilter.sortByDistance(delhi, CENTER_LAT, CENTER_LNG));
+        Bench.measure("sort " + stress.size() + " by distance",
+                () -> StationFilter.sortByDistance(stress, CENTER_LAT, CENTER_LNG));
+        List<FuelStationInfo> destinations = StationFilter.nearest(delhi, CENTER_LAT, CENTER_LNG, RANKED);
+        Bench.measure("by drive time: decode matrix, score, rank",
+                () -> rankByDriveTime(matrix, destinations));
+
+        Bench.section("cluster");
+        Bench.measure("index " + delhi.size(),
+                () -> new StationClusterer<>(delhi, station -> station.lat, station -> station.lng));
+        Bench.measure("index " + stress.size(),
+                () -> new StationClusterer<>(stress, station -> station.lat, station -> station.lng));
+        StationClusterer<FuelStationInfo> delhiIndex =
+                new StationClusterer<>(delhi, station -> station.lat, station -> station.lng);
+        StationClusterer<FuelStationInfo> stressIndex =
+                new StationClusterer<>(stress, station -> station.lat, station -> station.lng);
+        Bench.measure("cluster " + delhi.size() + ", city view at zoom 12",
+                () -> clusterCityView(delhiIndex, 12f));
+        Bench.measure("cluster " + stress.size() + ", city view at zoom 12",
+                () -> clusterCityView(stressIndex, 12f));
+        Bench.measure("cluster " + stress.size() + ", street view at zoom 16",
+                () -> stressIndex.cluster(16f, CENTER_LAT - 0.01, CENTER_LNG - 0.01,
+                        CENTER_LAT + 0.01, CENTER_LNG + 0.01));
+
+        Bench.section("route level of detail");
+        Bench.measure("pyramid for " + densePath.size() + " points",
+                () -> new RouteLevelOfDetail<>(densePath, point -> point.latitude, point -> point.longitude,
+                        ROUTE_TOLERANCE_PX));
+
+        Bench.section("geo");
+        Bench.measure("haversine distance",
+                () -> GeoUtils.distanceMeters(CENTER_LAT, CENTER_LNG, 28.55, 77.25));
+        Bench.measure("tiles covering 5 km",
+                () -> GeoUtils.tilesCovering(CENTER_LAT, CENTER_LNG, SEARCH_RADIUS_METERS));
+    }
+
+    private static String overviewPolyline(String directions) {
+        String marker = "\"overview_polyline\"";
+        int start = directions.indexOf('"', directions.indexOf("\"points\"", directions.indexOf(marker)) + 8) + 1;
+        // Fixture polylines contain no escaped characters, so the next quote ends the value
+        return directions.substring(start, directions.indexOf('"', start));
+    }
+
+    private static List<FuelStationInfo> within(List<FuelStationInfo> stations, StationFilter.Radius radius) {
+        List<FuelStationInfo> kept = new ArrayList<>();
+        for (FuelStationInfo station : stations) {
+            if (radius.contains(station.lat, station.lng)) kept.add(station);
+        }
+        return kept;
+    }
+
+    // What MainActivity does with a matrix answer: pair elements with pumps, then rank by time to fuel
+    private static List<String> rankByDriveTime(String matrix, List<FuelStationInfo> destinations)
+            throws Exception {
+        PlacesJsonParser.DistanceMatrixResult result =
+                PlacesJsonParser.parseDistanceMatrix(new StringReader(matrix));
+        CongestionScores scores = new CongestionScores(Long.MAX_VALUE);
+        List<CongestionScores.Sample> samples = new ArrayList<>(destinations.size());
+        List<String> placeIds = new ArrayList<>(destinations.size());
+        for (int i = 0; i < destinations.size() && i < result.elements.size(); i++) {
+            PlacesJsonParser.MatrixElement element = result.elements.get(i);
+            String placeId = destinations.get(i).placeId;
+            placeIds.add(placeId);
+            samples.add(element.isFound()
+                    ? new CongestionScores.Sample(placeId, element.durationSeconds, element.durationInTrafficSeconds,
+                    element.distanceMeters, 0)
+                    : CongestionScores.Sample.unreachable(placeId, 0));
+        }
+        scores.put(CENTER_LAT, CENTER_LNG, samples);
+        return scores.rank(placeIds, placeId -> null, 0);
+    }
+
+    private static Object clusterCityView(StationClusterer<FuelStationInfo> index, float zoom) {
+        return index.cluster(zoom, CENTER_LAT - 0.15, CENTER_LNG - 0.2, CENTER_LAT + 0.15, CENTER_LNG + 0.2);
+    }
+}
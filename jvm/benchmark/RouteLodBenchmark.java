@@ -0,0 +1,42 @@
+package com.fuellens.application;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Cost and effect of {@link RouteLevelOfDetail} on the recorded Delhi to Jaipur route: the time to
+ * build the pyramid for the dense path and the Directions overview, and the number of points the map
+ * draws at each zoom compared with drawing every decoded point. The drawn point count is what the
+ * polyline renderer's per-frame work scales with.
+ *
+ * <p>Usage: {@code jvm/run.sh RouteLodBenchmark}.
+ */
+public final class RouteLodBenchmark {
+
+    // Mirrors RouteService.ROUTE_TOLERANCE_PX, which needs the Android SDK to compile
+    private static final double TOLERANCE_PX = 0.5;
+
+    public static void main(String[] args) throws Exception {
+        List<LatLng> dense = PlacesJsonParser.decodePolyline(Fixtures.text("route-delhi-jaipur.polyline").trim());
+        List<LatLng> overview = PlacesJsonParser.parseDirections(Fixtures.reader("directions-delhi-jaipur.json")).path;
+
+        Bench.section("build pyramid");
+        Bench.measure(String.format(Locale.ROOT, "dense route, %,d points", dense.size()), () -> pyramid(dense));
+        Bench.measure(String.format(Locale.ROOT, "overview, %,d points", overview.size()), () -> pyramid(overview));
+        RouteLevelOfDetail<LatLng> lod = pyramid(dense);
+        Bench.measure("level lookup on camera idle", () -> lod.forZoom(13.4f));
+
+        Bench.section("points drawn, dense route");
+        for (int zoom = 4; zoom <= RouteLevelOfDetail.MAX_ZOOM; zoom += 2) {
+            int drawn = lod.forZoom(zoom).size();
+            System.out.printf(Locale.ROOT, "  zoom %-2d %,8d of %,d  (%.1f%%)%n", zoom, drawn, dense.size(),
+                    100.0 * drawn / dense.size());
+        }
+    }
+
+    private static RouteLevelOfDetail<LatLng> pyramid(List<LatLng> path) {
+        return new RouteLevelOfDetail<>(path, point -> point.latitude, point -> point.longitude, TOLERANCE_PX);
+    }
+}
@@ -0,0 +1,108 @@
+package com.fuellens.application;
+
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Memory footprint and query time of holding stations as {@link FuelStationInfo} objects against holding
+ * them as rows of a {@link StationTable}.
+ *
+ * <p>The stations are Places shaped: a handful of brand names and a few hundred vicinities, each parsed
+ * into its own String as a JSON decoder would. Footprint is the heap retained after a full GC once the
+ * holder is built, divided by the station count. Query time is a 5 km radius filter followed by a
+ * nearest-first sort, as a cache query does.
+ *
+ * <p>Usage: {@code jvm/run.sh StationTableBenchmark [sizes=20000,100000]}.
+ */
+public final class StationTableBenchmark {
+
+    private static final double CENTER_LAT = 28.6315;
+    private static final double CENTER_LNG = 77.2167;
+    private static final int SEARCH_RADIUS_METERS = 5000;
+    private static final String[] BRANDS = {"Indian Oil", "Bharat Petroleum", "HP Petrol Pump", "Shell",
+            "Nayara Energy", "Jio-bp", "IndianOil COCO Outlet", "Essar"};
+
+    public static void main(String[] args) throws Exception {
+        String[] sizes = (args.length > 0 ? args[0] : "20000,100000").split(",");
+
+        Bench.section("retained heap per station");
+        for (String size : sizes) {
+            int count = Integer.parseInt(size);
+            long objects = retainedBytes(() -> stations(count));
+            long table = retainedBytes(() -> table(stations(count)));
+            System.out.printf(Locale.ROOT, "  %,8d stations  objects %4d B (%5.1f MB)  table %4d B (%5.1f MB)%n",
+                    count, objects / count, objects / 1e6, table / count, table / 1e6);
+        }
+
+        StationFilter.Radius radius = new StationFilter.Radius(CENTER_LAT, CENTER_LNG, SEARCH_RADIUS_METERS);
+        for (String size : sizes) {
+            int count = Integer.parseInt(size);
+            List<FuelStationInfo> stations = stations(count);
+            StationTable table = table(stations);
+            int[] rows = new int[count];
+            double[] distances = new double[count];
+
+            Bench.section(String.format(Locale.ROOT, "filter within 5 km and sort, %,d stations", count));
+            Bench.measure("objects (StationFilter)", () -> StationFilter.sortByDistance(
+                    within(stations, radius), CENTER_LAT, CENTER_LNG));
+            Bench.measure("table rows", () -> {
+                for (int i = 0; i < count; i++) {
+                    rows[i] = i;
+                }
+                int kept = table.filterWithin(rows, count, radius, rows);
+                table.sortByDistance(rows, kept, CENTER_LAT, CENTER_LNG, distances);
+                return kept;
+            });
+        }
+    }
+
+    // A city-wide set at the density StationCache holds when the driver has covered a metro area
+    private static List<FuelStationInfo> stations(int count) {
+        List<FuelStationInfo> scattered = Fixtures.scatteredStations(count, CENTER_LAT, CENTER_LNG, 40000, 1);
+        List<FuelStationInfo> stations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            FuelStationInfo station = scattered.get(i);
+            // New String instances, since each decoded response brings its own copies
+            stations.add(new FuelStationInfo(station.placeId, new String(BRANDS[i % BRANDS.length]),
+                    new String(station.vicinity), station.rating, station.userRatingsTotal, station.lat,
+                    station.lng));
+        }
+        return stations;
+    }
+
+    private static StationTable table(List<FuelStationInfo> stations) {
+        StationTable table = new StationTable();
+        for (FuelStationInfo station : stations) {
+            table.add(station);
+        }
+        return table;
+    }
+
+    private static List<FuelStationInfo> within(List<FuelStationInfo> stations, StationFilter.Radius radius) {
+        List<FuelStationInfo> kept = new ArrayList<>();
+        for (FuelStationInfo station : stations) {
+            if (radius.contains(station.lat, station.lng)) kept.add(station);
+        }
+        return kept;
+    }
+
+    private static long retainedBytes(Supplier<Object> build) {
+        long before = usedAfterGc();
+        Object held = build.get();
+        long after = usedAfterGc();
+        // Keeps the holder reachable until the second measurement
+        Reference.reachabilityFence(held);
+        return after - before;
+    }
+
+    private static long usedAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,72 @@
+package com.fuellens.application;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Compares decoding one pump service {@code /pumps} answer in the binary wire format with decoding the same
+ * answer as JSON. Both fixtures were recorded from one PumpServer: a 5 km search over 400 seeded Delhi pumps,
+ * fetched once with and once without {@code Accept: application/x-fuellens-wire}. The two decodes are first
+ * compared, so they are known to produce the same pumps and availability before they are timed.
+ *
+ * <p>Each path starts from the response bytes, as ApiClient hands them over, and ends at the
+ * {@link PumpServiceClient.NearbyResult} the app uses. The wire path is also timed without building that
+ * model, which is what the decoder itself costs.
+ *
+ * <p>Usage: {@code jvm/run.sh WireDecodeBenchmark}.
+ */
+public final class WireDecodeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        byte[] json = Fixtures.bytes("pumps-delhi.json");
+        byte[] wire = Fixtures.bytes("pumps-delhi.bin");
+
+        PumpServiceClient.NearbyResult fromJson = decodeJson(json);
+        PumpServiceClient.NearbyResult fromWire = decodeWire(wire);
+        check(fromJson, fromWire);
+
+        Bench.section(String.format(Locale.ROOT, "/pumps answer, %d pumps, %d with availability",
+                fromJson.stations.size(), fromJson.availability.size()));
+        Bench.measure(String.format(Locale.ROOT, "JSON, %d bytes (parseNearby)", json.length),
+                () -> decodeJson(json));
+        Bench.measure(String.format(Locale.ROOT, "wire, %d bytes (decodePumps and model)", wire.length),
+                () -> decodeWire(wire));
+        Bench.measure("wire, decodePumps only", () -> PumpWireDecoder.decodePumps(ByteBuffer.wrap(wire)));
+    }
+
+    private static PumpServiceClient.NearbyResult decodeJson(byte[] body) throws Exception {
+        return PumpServiceClient.parseNearby(
+                new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8));
+    }
+
+    // What PumpServiceClient.nearby does with a binary answer
+    private static PumpServiceClient.NearbyResult decodeWire(byte[] body) throws Exception {
+        PumpWireDecoder.Pumps pumps = PumpWireDecoder.decodePumps(ByteBuffer.wrap(body));
+        return new PumpServiceClient.NearbyResult(pumps.toStations(), pumps.availability());
+    }
+
+    private static void check(PumpServiceClient.NearbyResult json, PumpServiceClient.NearbyResult wire) {
+        boolean same = json.stations.size() == wire.stations.size()
+                && json.availability.size() == wire.availability.size();
+        for (int i = 0; same && i < json.stations.size(); i++) {
+            FuelStationInfo a = json.stations.get(i);
+            FuelStationInfo b = wire.stations.get(i);
+            // The wire format carries coordinates as micro-degrees, which is also all the JSON prints
+            same = a.placeId.equals(b.placeId) && a.name.equals(b.name) && a.vicinity.equals(b.vicinity)
+                    && a.rating == b.rating && a.userRatingsTotal == b.userRatingsTotal
+                    && Math.round(a.lat * 1e6) == Math.round(b.lat * 1e6)
+                    && Math.round(a.lng * 1e6) == Math.round(b.lng * 1e6);
+        }
+        for (int i = 0; same && i < json.availability.size(); i++) {
+            FuelAvailability a = json.availability.get(i);
+            FuelAvailability b = wire.availability.get(i);
+            same = a.sameState(b) && a.updatedAt == b.updatedAt;
+        }
+        if (!same) {
+            throw new AssertionError("JSON and wire decoders disagree on the /pumps fixtures");
+        }
+    }
+}
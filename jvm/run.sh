@@ -0,0 +1,60 @@
+#!/bin/sh
+# Compiles the app's Android-free classes against the stand-ins in jvm/shims, together with the JVM tests
+# and benchmarks, then runs them. Dependencies are fetched from Maven Central into jvm/lib on first use.
+#
+#   jvm/run.sh test                      run every test in jvm/test
+#   jvm/run.sh test StationTableTest     run one test class
+#   jvm/run.sh PipelineBenchmark [args]  run a benchmark from jvm/benchmark
+set -e
+
+root=$(cd "$(dirname "$0")/.." && pwd)
+lib="$root/jvm/lib"
+out="$root/jvm/out"
+
+# App classes that compile without the Android SDK once the shims stand in for the few platform calls
+app_sources="ApiClient AvailabilityChannel AvailabilitySync AvailabilityWriter CongestionScores
+FuelAvailability FuelStationInfo GeoUtils PerfMetrics PlacesJsonParser PumpServiceAvailabilityWriter
+PumpServiceClient PumpWireDecoder RouteLevelOfDetail SearchRings StationCache StationClusterer
+StationFilter StationTable"
+
+jars="com/google/code/gson/gson/2.10.1/gson-2.10.1.jar
+com/squareup/okhttp3/okhttp/4.12.0/okhttp-4.12.0.jar
+com/squareup/okio/okio-jvm/3.6.0/okio-jvm-3.6.0.jar
+org/jetbrains/kotlin/kotlin-stdlib/1.9.10/kotlin-stdlib-1.9.10.jar
+org/json/json/20231013/json-20231013.jar
+junit/junit/4.13.2/junit-4.13.2.jar
+org/hamcrest/hamcrest-core/1.3/hamcrest-core-1.3.jar"
+
+mkdir -p "$lib"
+classpath=""
+for jar in $jars; do
+    file="$lib/$(basename "$jar")"
+    if [ ! -f "$file" ]; then
+        curl -sfL -o "$file" "https://repo1.maven.org/maven2/$jar"
+    fi
+    classpath="$classpath:$file"
+done
+
+rm -rf "$out"
+mkdir -p "$out"
+{
+    for name in $app_sources; do echo "$root/$name.java"; done
+    for dir in shims test benchmark; do
+        if [ -d "$root/jvm/$dir" ]; then find "$root/jvm/$dir" -name '*.java'; fi
+    done
+} > "$out/sources.txt"
+javac -encoding UTF-8 -nowarn -d "$out" -cp "$classpath" @"$out/sources.txt"
+
+cd "$root"
+if [ "$1" = test ]; then
+    shift
+    if [ $# -eq 0 ]; then
+        set -- $(cd "$root/jvm/test" && ls *Test.java | sed 's/\.java$//')
+    fi
+    classes=""
+    for name in "$@"; do classes="$classes com.fuellens.application.$name"; done
+    exec java -cp "$out$classpath" org.junit.runner.JUnitCore $classes
+fi
+main="$1"
+shift
+exec java -cp "$out$classpath" "com.fuellens.application.$main" "$@"
@@ -0,0 +1,11 @@
+package android.content;
+
+import java.io.File;
+
+/** JVM stand-in for the little of Context the JVM-compiled classes use. */
+public abstract class Context {
+
+    public abstract Context getApplicationContext();
+
+    public abstract File getCacheDir();
+}
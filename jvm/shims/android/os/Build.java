@@ -0,0 +1,16 @@
+package android.os;
+
+/** JVM stand-in; reports an API level below every version check, so platform-only paths are skipped. */
+public final class Build {
+
+    private Build() {
+    }
+
+    public static final class VERSION {
+        public static final int SDK_INT = 0;
+    }
+
+    public static final class VERSION_CODES {
+        public static final int Q = 29;
+    }
+}
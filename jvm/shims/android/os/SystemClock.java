@@ -0,0 +1,16 @@
+package android.os;
+
+/** JVM stand-in backed by the monotonic {@link System#nanoTime()}. */
+public final class SystemClock {
+
+    private SystemClock() {
+    }
+
+    public static long elapsedRealtime() {
+        return System.nanoTime() / 1_000_000;
+    }
+
+    public static long elapsedRealtimeNanos() {
+        return System.nanoTime();
+    }
+}
@@ -0,0 +1,20 @@
+package android.os;
+
+/** JVM stand-in; there is no system trace to write to. */
+public final class Trace {
+
+    private Trace() {
+    }
+
+    public static void beginSection(String sectionName) {
+    }
+
+    public static void endSection() {
+    }
+
+    public static void beginAsyncSection(String methodName, int cookie) {
+    }
+
+    public static void endAsyncSection(String methodName, int cookie) {
+    }
+}
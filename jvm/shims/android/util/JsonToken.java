@@ -0,0 +1,15 @@
+package android.util;
+
+/** JVM stand-in; the constants match Gson's, which {@link JsonReader} maps them from by name. */
+public enum JsonToken {
+    BEGIN_ARRAY,
+    END_ARRAY,
+    BEGIN_OBJECT,
+    END_OBJECT,
+    NAME,
+    STRING,
+    NUMBER,
+    BOOLEAN,
+    NULL,
+    END_DOCUMENT
+}
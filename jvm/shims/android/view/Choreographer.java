@@ -0,0 +1,40 @@
+package android.view;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JVM stand-in. There is no display, so frames only happen when the caller runs one with
+ * {@link #runFrame(long)}, which lets tests and benchmarks decide where frame boundaries fall.
+ */
+public final class Choreographer {
+
+    public interface FrameCallback {
+        void doFrame(long frameTimeNanos);
+    }
+
+    private static final ThreadLocal<Choreographer> INSTANCE = ThreadLocal.withInitial(Choreographer::new);
+
+    private List<FrameCallback> callbacks = new ArrayList<>();
+
+    public static Choreographer getInstance() {
+        return INSTANCE.get();
+    }
+
+    public void postFrameCallback(FrameCallback callback) {
+        callbacks.add(callback);
+    }
+
+    public void removeFrameCallback(FrameCallback callback) {
+        callbacks.remove(callback);
+    }
+
+    /** Runs the callbacks posted before this frame; ones they post wait for the next. Stand-in only. */
+    public void runFrame(long frameTimeNanos) {
+        List<FrameCallback> due = callbacks;
+        callbacks = new ArrayList<>();
+        for (FrameCallback callback : due) {
+            callback.doFrame(frameTimeNanos);
+        }
+    }
+}
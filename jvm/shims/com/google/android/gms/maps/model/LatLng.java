@@ -0,0 +1,31 @@
+package com.google.android.gms.maps.model;
+
+/** JVM stand-in with the fields and value semantics of the Maps SDK class. */
+public final class LatLng {
+
+    public final double latitude;
+    public final double longitude;
+
+    public LatLng(double latitude, double longitude) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof LatLng)) return false;
+        LatLng other = (LatLng) o;
+        return Double.compare(latitude, other.latitude) == 0 && Double.compare(longitude, other.longitude) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Double.hashCode(latitude) + Double.hashCode(longitude);
+    }
+
+    @Override
+    public String toString() {
+        return "lat/lng: (" + latitude + "," + longitude + ")";
+    }
+}
@@ -0,0 +1,242 @@
+package com.fuellens.application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import okhttp3.Cache;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * Runs {@link ApiClient} against a local JDK HTTP server that serves the recorded responses, covering
+ * gzip, the HTTP cache with ETag revalidation, error statuses, parse failures and cancellation.
+ */
+public class ApiClientTest {
+
+    private static final String NEARBY_PATH = "/maps/api/place/nearbysearch/json";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final List<Map<String, String>> requestHeaders = new CopyOnWriteArrayList<>();
+    private final Map<String, Handler> handlers = new ConcurrentHashMap<>();
+    private final List<ApiClient.Timing> timings = new CopyOnWriteArrayList<>();
+    private ApiClient apiClient;
+
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    /** Collects one callback; callbacks run on the OkHttp thread, as the executor is direct. */
+    private static final class Outcome<T> implements ApiClient.Callback<T> {
+        final LinkedBlockingQueue<Object> results = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onResult(T result) {
+            results.add(result);
+        }
+
+        @Override
+        public void onError(Exception error) {
+            results.add(error);
+        }
+
+        Object await() throws InterruptedException {
+            Object result = results.poll(10, TimeUnit.SECONDS);
+            if (result == null) throw new AssertionError("No callback within 10 s");
+            return result;
+        }
+    }
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            hits.incrementAndGet();
+            Map<String, String> headers = new ConcurrentHashMap<>();
+            exchange.getRequestHeaders().forEach((name, values) -> headers.put(name.toLowerCase(Locale.ROOT), values.get(0)));
+            requestHeaders.add(headers);
+            Handler handler = handlers.get(exchange.getRequestURI().getPath());
+            if (handler == null) {
+                exchange.sendResponseHeaders(404, -1);
+            } else {
+                handler.handle(exchange);
+            }
+            exchange.close();
+        });
+        server.start();
+
+        OkHttpClient client = new OkHttpClient.Builder()
+                .cache(new Cache(folder.newFolder("http"), 1024 * 1024))
+                .build();
+        apiClient = new ApiClient(client, "http://127.0.0.1:" + server.getAddress().getPort(), Runnable::run);
+        apiClient.setTimingListener(timings::add);
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void parsesAGzippedResponse() throws Exception {
+        byte[] page = Fixtures.bytes("nearbysearch-delhi-page1.json");
+        handlers.put(NEARBY_PATH, exchange -> respond(exchange, 200, gzip(page), "Content-Encoding", "gzip"));
+
+        Object result = fetchNearby("?location=28.63,77.21");
+
+        assertEquals(20, ((PlacesJsonParser.NearbySearchResult) result).stations.size());
+        assertEquals("gzip", requestHeaders.get(0).get("accept-encoding"));
+        assertEquals(ApiClient.Source.NETWORK, timings.get(0).source);
+        assertEquals(Protocol.HTTP_1_1, timings.get(0).protocol);
+        assertEquals(NEARBY_PATH, timings.get(0).path);
+    }
+
+    @Test
+    public void freshResponseIsServedFromTheCache() throws Exception {
+        byte[] page = Fixtures.bytes("nearbysearch-delhi-page2.json");
+        handlers.put(NEARBY_PATH, exchange -> respond(exchange, 200, page, "Cache-Control", "max-age=60"));
+
+        fetchNearby("?page=2");
+        Object second = fetchNearby("?page=2");
+
+        assertEquals(1, hits.get());
+        assertEquals(20, ((PlacesJsonParser.NearbySearchResult) second).stations.size());
+        assertEquals(ApiClient.Source.CACHE, timings.get(1).source);
+    }
+
+    @Test
+    public void staleResponseIsRevalidatedWithItsETag() throws Exception {
+        byte[] page = Fixtures.bytes("nearbysearch-rural.json");
+        handlers.put(NEARBY_PATH, exchange -> {
+            if ("\"rural-1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.getResponseHeaders().add("ETag", "\"rural-1\"");
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                respond(exchange, 200, page, "ETag", "\"rural-1\"", "Cache-Control", "no-cache");
+            }
+        });
+
+        fetchNearby("?location=27.2,76.6");
+        Object second = fetchNearby("?location=27.2,76.6");
+
+        assertEquals(2, hits.get());
+        assertEquals("\"rural-1\"", requestHeaders.get(1).get("if-none-match"));
+        assertEquals(3, ((PlacesJsonParser.NearbySearchResult) second).stations.size());
+        assertEquals(ApiClient.Source.CONDITIONAL, timings.get(1).source);
+    }
+
+    @Test
+    public void errorStatusIsReported() throws Exception {
+        handlers.put(NEARBY_PATH, exchange -> respond(exchange, 503, "busy".getBytes(StandardCharsets.UTF_8)));
+
+        Object result = fetchNearby("");
+
+        assertTrue(result instanceof IOException);
+        assertEquals("HTTP 503 for " + NEARBY_PATH, ((IOException) result).getMessage());
+        assertTrue(timings.isEmpty());
+    }
+
+    @Test
+    public void parseFailureIsReported() throws Exception {
+        byte[] page = Fixtures.bytes("nearbysearch-delhi-page1.json");
+        byte[] truncated = new byte[page.length / 2];
+        System.arraycopy(page, 0, truncated, 0, truncated.length);
+        handlers.put(NEARBY_PATH, exchange -> respond(exchange, 200, truncated));
+
+        assertTrue(fetchNearby("") instanceof IOException);
+    }
+
+    @Test
+    public void binaryRequestSendsItsAcceptHeader() throws Exception {
+        handlers.put("/pumps", exchange -> respond(exchange, 200, new byte[]{1, 2, 3}));
+
+        Outcome<Integer> outcome = new Outcome<>();
+        apiClient.get("/pumps", "application/x-fuellens-wire", "tag", ByteBuffer::remaining, outcome);
+
+        assertEquals(3, outcome.await());
+        assertEquals("application/x-fuellens-wire", requestHeaders.get(0).get("accept"));
+    }
+
+    @Test
+    public void cancelledRequestReportsNothing() throws Exception {
+        CountDownLatch arrived = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        handlers.put(NEARBY_PATH, exchange -> {
+            arrived.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, 200, Fixtures.bytes("nearbysearch-rural.json"));
+        });
+
+        Outcome<PlacesJsonParser.NearbySearchResult> outcome = new Outcome<>();
+        Object tag = new Object();
+        apiClient.get(NEARBY_PATH, tag, PlacesJsonParser::parseNearbySearch, outcome);
+        assertTrue(arrived.await(10, TimeUnit.SECONDS));
+        apiClient.cancel(tag);
+        release.countDown();
+
+        assertNull(outcome.results.poll(500, TimeUnit.MILLISECONDS));
+        assertFalse(timings.stream().anyMatch(timing -> timing.path.equals(NEARBY_PATH)));
+    }
+
+    private Object fetchNearby(String query) throws InterruptedException {
+        Outcome<PlacesJsonParser.NearbySearchResult> outcome = new Outcome<>();
+        apiClient.get(NEARBY_PATH + query, "tag", PlacesJsonParser::parseNearbySearch, outcome);
+        return outcome.await();
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body, String... headers)
+            throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+        for (int i = 0; i < headers.length; i += 2) {
+            exchange.getResponseHeaders().add(headers[i], headers[i + 1]);
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(body);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,171 @@
+package com.fuellens.application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.view.Choreographer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Drives {@link AvailabilitySync} with thousands of pump updates per minute from a stand-in channel,
+ * frame by frame at 60 fps, while the viewport pans across the pumps. Redelivered and out-of-order
+ * versions are mixed in the way a real listener produces them.
+ */
+public class AvailabilitySyncLoadTest {
+
+    private static final int PUMPS = 2000;
+    private static final int VISIBLE = 300;
+    private static final int FRAMES_PER_SECOND = 60;
+    private static final long FRAME_NANOS = 1_000_000_000L / FRAMES_PER_SECOND;
+
+    /** Delivers updates only to subscribed pumps, like a Firestore snapshot listener. */
+    private static final class FakeChannel implements AvailabilityChannel {
+        final Map<String, Listener> listeners = new HashMap<>();
+        int subscribes;
+
+        @Override
+        public Subscription subscribe(String placeId, Listener listener) {
+            subscribes++;
+            listeners.put(placeId, listener);
+            return () -> listeners.remove(placeId);
+        }
+
+        boolean deliver(FuelAvailability availability) {
+            Listener listener = listeners.get(availability.placeId);
+            if (listener == null) return false;
+            listener.onUpdate(availability);
+            return true;
+        }
+    }
+
+    private final FakeChannel channel = new FakeChannel();
+    private final Choreographer choreographer = new Choreographer();
+    private final List<Map<String, FuelAvailability>> batches = new ArrayList<>();
+    private final AvailabilitySync sync = new AvailabilitySync(channel, choreographer, batches::add);
+    private final Random random = new Random(20261018);
+    private final long[] versions = new long[PUMPS];
+    private long frameTime;
+
+    @Test
+    public void fiveThousandUpdatesPerMinuteForTenMinutes() {
+        int updatesPerMinute = 5000;
+        int frames = 10 * 60 * FRAMES_PER_SECOND;
+        Map<String, Long> newestDelivered = new HashMap<>();
+        Set<String> visible = new HashSet<>();
+        int delivered = 0;
+        int framesWithUpdates = 0;
+        double dueUpdates = 0;
+
+        for (int frame = 0; frame < frames; frame++) {
+            // The driver pans every 5 seconds, moving a sixth of the viewport onto new pumps
+            if (frame % (5 * FRAMES_PER_SECOND) == 0) {
+                visible = viewport(frame / (5 * FRAMES_PER_SECOND) * (VISIBLE / 6));
+                sync.setVisiblePumps(visible);
+            }
+            dueUpdates += updatesPerMinute / (60.0 * FRAMES_PER_SECOND);
+            boolean any = false;
+            for (; dueUpdates >= 1; dueUpdates--) {
+                FuelAvailability update = nextUpdate();
+                if (channel.deliver(update)) {
+                    delivered++;
+                    any = true;
+                    newestDelivered.merge(update.placeId, update.version, Math::max);
+                }
+            }
+            if (any) framesWithUpdates++;
+            int before = batches.size();
+            choreographer.runFrame(frameTime += FRAME_NANOS);
+            assertTrue("at most one batch per frame", batches.size() - before <= 1);
+        }
+
+        assertTrue("only visible pumps deliver", delivered < updatesPerMinute * 10 / 2);
+        assertTrue(batches.size() <= framesWithUpdates);
+        assertEquals(VISIBLE, channel.listeners.size());
+        for (Map.Entry<String, Long> entry : newestDelivered.entrySet()) {
+            assertEquals(entry.getKey(), (long) entry.getValue(), sync.get(entry.getKey()).version);
+        }
+        assertBatchesOnlyMoveForward();
+    }
+
+    @Test
+    public void burstIsCoalescedIntoOneFrame() {
+        Set<String> visible = viewport(0);
+        sync.setVisiblePumps(visible);
+
+        for (int i = 0; i < 20000; i++) {
+            channel.deliver(nextUpdate());
+        }
+        choreographer.runFrame(frameTime += FRAME_NANOS);
+        choreographer.runFrame(frameTime += FRAME_NANOS);
+
+        assertEquals(1, batches.size());
+        assertTrue(batches.get(0).size() <= VISIBLE);
+        assertTrue(visible.containsAll(batches.get(0).keySet()));
+    }
+
+    @Test
+    public void pumpsThatLeaveTheViewportAreUnsubscribed() {
+        sync.setVisiblePumps(viewport(0));
+        sync.setVisiblePumps(viewport(VISIBLE));
+
+        assertEquals(2 * VISIBLE, channel.subscribes);
+        assertEquals(viewport(VISIBLE), channel.listeners.keySet());
+        assertTrue(!channel.deliver(availability(0, 1)));
+        choreographer.runFrame(frameTime += FRAME_NANOS);
+        assertNull(sync.get("pump-0"));
+        assertTrue(batches.isEmpty());
+    }
+
+    @Test
+    public void stopDropsWhatIsPending() {
+        sync.setVisiblePumps(viewport(0));
+        channel.deliver(availability(0, 1));
+        sync.stop();
+        choreographer.runFrame(frameTime += FRAME_NANOS);
+
+        assertTrue(batches.isEmpty());
+        assertTrue(channel.listeners.isEmpty());
+    }
+
+    private Set<String> viewport(int first) {
+        Set<String> visible = new HashSet<>();
+        for (int i = 0; i < VISIBLE; i++) {
+            visible.add("pump-" + (first + i) % PUMPS);
+        }
+        return visible;
+    }
+
+    // Mostly the next version of a random pump, sometimes an older or repeated one
+    private FuelAvailability nextUpdate() {
+        int pump = random.nextInt(PUMPS);
+        long version = random.nextInt(10) == 0 && versions[pump] > 1
+                ? versions[pump] - random.nextInt(2) : ++versions[pump];
+        return availability(pump, version);
+    }
+
+    private FuelAvailability availability(int pump, long version) {
+        FuelAvailability.Level[] levels = FuelAvailability.Level.values();
+        return new FuelAvailability("pump-" + pump, levels[random.nextInt(levels.length)],
+                levels[random.nextInt(levels.length)], levels[random.nextInt(levels.length)], version, version);
+    }
+
+    private void assertBatchesOnlyMoveForward() {
+        Map<String, Long> shown = new HashMap<>();
+        for (Map<String, FuelAvailability> batch : batches) {
+            for (FuelAvailability availability : batch.values()) {
+                Long previous = shown.put(availability.placeId, availability.version);
+                assertTrue(availability.placeId, previous == null || availability.version > previous);
+            }
+        }
+    }
+}
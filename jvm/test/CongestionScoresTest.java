@@ -0,0 +1,148 @@
+package com.fuellens.application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CongestionScoresTest {
+
+    private static final double LAT = 28.6315;
+    private static final double LNG = 77.2167;
+    private static final long TTL = 3 * 60 * 1000;
+    private static final long NOW = 1_000_000;
+
+    /**
+     * The samples MainActivity builds from {@code distancematrix-thresholds.json}, as pumps p0 to p10. Its
+     * elements sit on and around both congestion thresholds, and include one without a traffic time, two
+     * without a route and one with a zero free-flow time.
+     */
+    private static List<CongestionScores.Sample> recordedSamples() throws Exception {
+        PlacesJsonParser.DistanceMatrixResult result =
+                PlacesJsonParser.parseDistanceMatrix(Fixtures.reader("distancematrix-thresholds.json"));
+        assertTrue(result.isSuccessful());
+        List<CongestionScores.Sample> samples = new ArrayList<>();
+        for (int i = 0; i < result.elements.size(); i++) {
+            PlacesJsonParser.MatrixElement element = result.elements.get(i);
+            samples.add(element.isFound()
+                    ? new CongestionScores.Sample("p" + i, element.durationSeconds, element.durationInTrafficSeconds,
+                    element.distanceMeters, NOW)
+                    : CongestionScores.Sample.unreachable("p" + i, NOW));
+        }
+        return samples;
+    }
+
+    private static List<String> ids(int count) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add("p" + i);
+        }
+        return ids;
+    }
+
+    private static FuelAvailability availability(String placeId, FuelAvailability.Level petrol) {
+        return new FuelAvailability(placeId, petrol, FuelAvailability.Level.UNKNOWN, FuelAvailability.Level.UNKNOWN,
+                1, NOW);
+    }
+
+    @Test
+    public void congestionFollowsTheTrafficRatioThresholds() throws Exception {
+        List<CongestionScores.Sample> samples = recordedSamples();
+        CongestionScores.Congestion[] expected = {
+                CongestionScores.Congestion.LIGHT,      // 600 / 600
+                CongestionScores.Congestion.LIGHT,      // 1249 / 1000, just under MODERATE_RATIO
+                CongestionScores.Congestion.MODERATE,   // 1250 / 1000, exactly MODERATE_RATIO
+                CongestionScores.Congestion.MODERATE,   // 1200 / 800
+                CongestionScores.Congestion.MODERATE,   // 1599 / 1000, just under HEAVY_RATIO
+                CongestionScores.Congestion.HEAVY,      // 1600 / 1000, exactly HEAVY_RATIO
+                CongestionScores.Congestion.HEAVY,      // 1500 / 500
+                CongestionScores.Congestion.LIGHT,      // no traffic time, so the free-flow time is used
+        };
+        for (int i = 0; i < expected.length; i++) {
+            assertTrue("p" + i, samples.get(i).isReachable());
+            assertEquals("p" + i, expected[i], samples.get(i).congestion());
+        }
+        assertEquals(700, samples.get(7).trafficSeconds);
+        assertFalse(samples.get(8).isReachable());
+        assertFalse(samples.get(9).isReachable());
+        // A zero free-flow time would divide by zero; it counts as light
+        assertEquals(CongestionScores.Congestion.LIGHT, samples.get(10).congestion());
+    }
+
+    @Test
+    public void samplesExpireAfterTheTtl() throws Exception {
+        CongestionScores scores = new CongestionScores(TTL);
+        scores.put(LAT, LNG, recordedSamples());
+
+        assertNotNull(scores.get("p0", NOW + TTL - 1));
+        assertNull(scores.get("p0", NOW + TTL));
+        assertEquals(Collections.emptyList(), scores.stale(ids(11), LAT, LNG, NOW + TTL - 1));
+        assertEquals(ids(11), scores.stale(ids(11), LAT, LNG, NOW + TTL));
+        assertEquals(Arrays.asList("p11"), scores.stale(ids(12), LAT, LNG, NOW));
+    }
+
+    @Test
+    public void movingAwayFromTheOriginDropsEverySample() throws Exception {
+        CongestionScores scores = new CongestionScores(TTL);
+        scores.stale(ids(11), LAT, LNG, NOW);
+        scores.put(LAT, LNG, recordedSamples());
+
+        // About 330 m north is still within ORIGIN_TOLERANCE_METERS
+        double nearLat = LAT + 0.003;
+        assertEquals(Collections.emptyList(), scores.stale(ids(11), nearLat, LNG, NOW));
+        assertNotNull(scores.get("p0", NOW));
+
+        // About 670 m north is past it, so the samples no longer describe the user's trip
+        double farLat = LAT + 0.006;
+        assertTrue(GeoUtils.distanceMeters(LAT, LNG, farLat, LNG) > CongestionScores.ORIGIN_TOLERANCE_METERS);
+        assertEquals(ids(11), scores.stale(ids(11), farLat, LNG, NOW));
+        assertNull(scores.get("p0", NOW));
+
+        // Samples that were taken at the old origin and arrive late are not stored
+        scores.put(LAT, LNG, recordedSamples());
+        assertNull(scores.get("p0", NOW));
+        scores.put(farLat, LNG, recordedSamples());
+        assertNotNull(scores.get("p0", NOW));
+    }
+
+    @Test
+    public void ranksByTrafficTimePlusFuelPenalty() throws Exception {
+        CongestionScores scores = new CongestionScores(TTL);
+        scores.put(LAT, LNG, recordedSamples());
+        Map<String, FuelAvailability> availability = new HashMap<>();
+        availability.put("p0", availability("p0", FuelAvailability.Level.EMPTY));
+        availability.put("p3", availability("p3", FuelAvailability.Level.LOW));
+        availability.put("p6", availability("p6", FuelAvailability.Level.FULL));
+
+        List<String> ranked = scores.rank(ids(12), availability::get, NOW);
+
+        // Effective seconds: p10 180, p7 820, p1 1369, p2 1370, p3 and p6 1500 (tie keeps the given
+        // order), p4 1719, p5 1720, then the empty p0 and the unreachable p8 and p9. p11 has no sample.
+        assertEquals(Arrays.asList("p10", "p7", "p1", "p2", "p3", "p6", "p4", "p5", "p0", "p8", "p9"), ranked);
+    }
+
+    @Test
+    public void effectiveTimeAddsThePenaltyForWhatIsKnown() {
+        CongestionScores.Sample sample = new CongestionScores.Sample("p", 600, 900, 5000, NOW);
+
+        assertEquals(900, CongestionScores.effectiveSeconds(sample, availability("p", FuelAvailability.Level.FULL)));
+        assertEquals(900 + CongestionScores.LOW_FUEL_PENALTY_SECONDS,
+                CongestionScores.effectiveSeconds(sample, availability("p", FuelAvailability.Level.LOW)));
+        assertEquals(900 + CongestionScores.UNKNOWN_FUEL_PENALTY_SECONDS,
+                CongestionScores.effectiveSeconds(sample, null));
+        assertEquals(CongestionScores.UNREACHABLE,
+                CongestionScores.effectiveSeconds(sample, availability("p", FuelAvailability.Level.EMPTY)));
+        assertEquals(CongestionScores.UNREACHABLE,
+                CongestionScores.effectiveSeconds(CongestionScores.Sample.unreachable("p", NOW), null));
+    }
+}
@@ -0,0 +1,48 @@
+package com.fuellens.application;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FuelAvailabilityTest {
+
+    private static FuelAvailability availability(FuelAvailability.Level petrol, long version, long updatedAt) {
+        return new FuelAvailability("pump", petrol, FuelAvailability.Level.UNKNOWN, FuelAvailability.Level.UNKNOWN,
+                version, updatedAt);
+    }
+
+    @Test
+    public void anythingReplacesNothing() {
+        assertTrue(availability(FuelAvailability.Level.FULL, 0, 0).isNewerThan(null));
+    }
+
+    @Test
+    public void versionsDecideWhenBothHaveOne() {
+        FuelAvailability older = availability(FuelAvailability.Level.FULL, 3, 2000);
+        FuelAvailability newer = availability(FuelAvailability.Level.LOW, 4, 1000);
+
+        assertTrue(newer.isNewerThan(older));
+        assertFalse(older.isNewerThan(newer));
+        assertFalse(older.isNewerThan(older));
+    }
+
+    @Test
+    public void versionlessDocumentsAreOrderedByTime() {
+        FuelAvailability first = availability(FuelAvailability.Level.FULL, 0, 1000);
+        FuelAvailability second = availability(FuelAvailability.Level.EMPTY, 0, 2000);
+
+        assertTrue(second.isNewerThan(first));
+        assertFalse(first.isNewerThan(second));
+        // Also against a versioned value, e.g. an admin edit followed by a plain document write
+        assertTrue(second.isNewerThan(availability(FuelAvailability.Level.LOW, 5, 1500)));
+    }
+
+    @Test
+    public void versionlessDocumentsWithoutTimeUpdateWhenTheyChange() {
+        FuelAvailability held = availability(FuelAvailability.Level.FULL, 0, 0);
+
+        assertTrue(availability(FuelAvailability.Level.EMPTY, 0, 0).isNewerThan(held));
+        assertFalse(availability(FuelAvailability.Level.FULL, 0, 0).isNewerThan(held));
+    }
+}
@@ -0,0 +1,106 @@
+package com.fuellens.application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+public class PlacesJsonParserTest {
+
+    @Test
+    public void decodesTheReferencePolyline() {
+        // The worked example from the encoded polyline format documentation
+        List<LatLng> path = PlacesJsonParser.decodePolyline("_p~iF~ps|U_ulLnnqC_mqNvxq`@");
+
+        assertEquals(3, path.size());
+        assertPoint(38.5, -120.2, path.get(0));
+        assertPoint(40.7, -120.95, path.get(1));
+        assertPoint(43.252, -126.453, path.get(2));
+    }
+
+    @Test
+    public void truncatedPolylineKeepsTheCompletePoints() {
+        List<LatLng> path = PlacesJsonParser.decodePolyline("_p~iF~ps|U_ulL");
+
+        assertEquals(1, path.size());
+        assertPoint(38.5, -120.2, path.get(0));
+    }
+
+    @Test
+    public void emptyPolylineDecodesToEmptyPath() {
+        assertTrue(PlacesJsonParser.decodePolyline("").isEmpty());
+    }
+
+    @Test
+    public void parsesNearbySearchPage() throws IOException {
+        PlacesJsonParser.NearbySearchResult result =
+                PlacesJsonParser.parseNearbySearch(Fixtures.reader("nearbysearch-delhi-page1.json"));
+
+        assertTrue(result.isSuccessful());
+        assertEquals(20, result.stations.size());
+        assertTrue(result.nextPageToken.startsWith("zAChE5T4tKRfmJSjeIMG"));
+        assertEquals(new HashSet<>(Arrays.asList("ChIJVP6gbtu_-tc2Gl5opTprnfh", "ChIJxqre3Q1hja6KTb_3Ok_HJQK",
+                "ChIJbxzQdQXQ-m6snU1SPD3Oc1m")), result.closedPlaceIds);
+        FuelStationInfo first = result.stations.get(0);
+        assertEquals("ChIJigXGeQOJcbIM-AJNVLFErOl", first.placeId);
+        assertEquals("Essar - Mayur Vihar", first.name);
+        assertEquals("35, Mathura Road, Saket, New Delhi", first.vicinity);
+        assertEquals(3.5, first.rating, 0);
+        assertEquals(94, first.userRatingsTotal);
+        assertEquals(28.6600419, first.lat, 0);
+        assertEquals(77.1927714, first.lng, 0);
+    }
+
+    @Test
+    public void lastPageHasNoToken() throws IOException {
+        PlacesJsonParser.NearbySearchResult result =
+                PlacesJsonParser.parseNearbySearch(Fixtures.reader("nearbysearch-delhi-page3.json"));
+
+        assertEquals(20, result.stations.size());
+        assertNull(result.nextPageToken);
+    }
+
+    @Test
+    public void parsesDirectionsRoute() throws IOException {
+        PlacesJsonParser.RouteResult result =
+                PlacesJsonParser.parseDirections(Fixtures.reader("directions-delhi-jaipur.json"));
+
+        assertTrue(result.hasRoute());
+        assertEquals(700, result.path.size());
+        assertEquals("281 km", result.distanceText);
+        assertEquals("4 hours 52 mins", result.durationText);
+    }
+
+    @Test
+    public void parsesDistanceMatrixStatuses() throws IOException {
+        PlacesJsonParser.DistanceMatrixResult result =
+                PlacesJsonParser.parseDistanceMatrix(Fixtures.reader("distancematrix-delhi-peak.json"));
+
+        assertTrue(result.isSuccessful());
+        assertEquals(25, result.elements.size());
+        int found = 0;
+        for (PlacesJsonParser.MatrixElement element : result.elements) {
+            if (element.isFound()) found++;
+        }
+        assertEquals(23, found);
+        assertFalse(result.elements.get(22).isFound());
+        assertFalse(result.elements.get(23).isFound());
+        // No traffic estimate falls back to the plain drive time
+        PlacesJsonParser.MatrixElement last = result.elements.get(24);
+        assertEquals(last.durationSeconds, last.durationInTrafficSeconds);
+    }
+
+    private static void assertPoint(double lat, double lng, LatLng point) {
+        assertEquals(lat, point.latitude, 1e-9);
+        assertEquals(lng, point.longitude, 1e-9);
+    }
+}
@@ -0,0 +1,144 @@
+package com.fuellens.application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class RouteLevelOfDetailTest {
+
+    private static final double TOLERANCE_PX = 0.5;
+
+    private static RouteLevelOfDetail<LatLng> pyramid(List<LatLng> path) {
+        return new RouteLevelOfDetail<>(path, point -> point.latitude, point -> point.longitude, TOLERANCE_PX);
+    }
+
+    private static List<LatLng> recordedRoute() throws IOException {
+        return PlacesJsonParser.decodePolyline(Fixtures.text("route-delhi-jaipur.polyline").trim());
+    }
+
+    @Test
+    public void everyDroppedPointStaysWithinTheTolerance() throws IOException {
+        List<LatLng> path = recordedRoute();
+        RouteLevelOfDetail<LatLng> lod = pyramid(path);
+
+        for (int zoom = 0; zoom <= RouteLevelOfDetail.MAX_ZOOM; zoom++) {
+            double worldPx = 256 * Math.pow(2, zoom);
+            List<LatLng> level = lod.forZoom(zoom);
+            int next = 0;
+            for (int i = 0; i < path.size(); i++) {
+                LatLng point = path.get(i);
+                if (point == level.get(next)) {
+                    next++;
+                    continue;
+                }
+                LatLng from = level.get(next - 1);
+                LatLng to = level.get(next);
+                double deviationPx = segmentDistance(point, from, to) * worldPx;
+                assertTrue("zoom " + zoom + ", point " + i + " is " + deviationPx + " px off",
+                        deviationPx <= TOLERANCE_PX + 1e-9);
+            }
+            assertEquals(level.size(), next);
+        }
+    }
+
+    @Test
+    public void levelsKeepEndpointsAndOnlyAddPointsWhenZoomingIn() throws IOException {
+        List<LatLng> path = recordedRoute();
+        RouteLevelOfDetail<LatLng> lod = pyramid(path);
+
+        List<LatLng> previous = Collections.emptyList();
+        for (int zoom = 0; zoom <= RouteLevelOfDetail.MAX_ZOOM; zoom++) {
+            List<LatLng> level = lod.forZoom(zoom);
+            assertSame(path.get(0), level.get(0));
+            assertSame(path.get(path.size() - 1), level.get(level.size() - 1));
+            assertTrue(isSubsequence(previous, level));
+            assertTrue(isSubsequence(level, path));
+            previous = level;
+        }
+        // A country-wide view needs a small fraction of the decoded points
+        assertTrue(lod.forZoom(6).size() < path.size() / 50);
+    }
+
+    @Test
+    public void equalLevelsShareOneList() throws IOException {
+        RouteLevelOfDetail<LatLng> lod = pyramid(recordedRoute());
+
+        for (int zoom = 0; zoom < RouteLevelOfDetail.MAX_ZOOM; zoom++) {
+            List<LatLng> level = lod.forZoom(zoom);
+            List<LatLng> finer = lod.forZoom(zoom + 1);
+            if (level.size() == finer.size()) {
+                assertSame(level, finer);
+            }
+        }
+    }
+
+    @Test
+    public void fractionalZoomRoundsUpAndOutOfRangeIsClamped() throws IOException {
+        RouteLevelOfDetail<LatLng> lod = pyramid(recordedRoute());
+
+        assertSame(lod.forZoom(11), lod.forZoom(10.2f));
+        assertSame(lod.forZoom(0), lod.forZoom(-3));
+        assertSame(lod.forZoom(RouteLevelOfDetail.MAX_ZOOM), lod.forZoom(30));
+    }
+
+    @Test
+    public void straightLineKeepsOnlyItsEnds() {
+        List<LatLng> line = new ArrayList<>();
+        for (int i = 0; i <= 100; i++) {
+            line.add(new LatLng(28.0, 77.0 + i * 0.001));
+        }
+        RouteLevelOfDetail<LatLng> lod = pyramid(line);
+
+        assertEquals(Arrays.asList(line.get(0), line.get(100)), lod.forZoom(RouteLevelOfDetail.MAX_ZOOM));
+    }
+
+    @Test
+    public void shortPaths() {
+        assertTrue(pyramid(Collections.<LatLng>emptyList()).forZoom(12).isEmpty());
+        LatLng only = new LatLng(28.0, 77.0);
+        assertEquals(Collections.singletonList(only), pyramid(Collections.singletonList(only)).forZoom(12));
+    }
+
+    @Test
+    public void veryLongPathDoesNotOverflowTheStack() {
+        // A zig-zag that never simplifies would recurse once per point in a recursive implementation. It is
+        // also Douglas-Peucker's quadratic worst case, hence the modest length.
+        List<LatLng> zigZag = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            zigZag.add(new LatLng(28.0 + (i % 2) * 0.01, 77.0 + i * 0.00001));
+        }
+        assertEquals(zigZag.size(), pyramid(zigZag).forZoom(RouteLevelOfDetail.MAX_ZOOM).size());
+    }
+
+    private static boolean isSubsequence(List<LatLng> part, List<LatLng> whole) {
+        int next = 0;
+        for (LatLng point : whole) {
+            if (next < part.size() && part.get(next) == point) next++;
+        }
+        return next == part.size();
+    }
+
+    // Distance in normalised Web Mercator units, the space the pyramid simplifies in
+    private static double segmentDistance(LatLng p, LatLng a, LatLng b) {
+        double px = GeoUtils.mercatorX(p.longitude);
+        double py = GeoUtils.mercatorY(p.latitude);
+        double ax = GeoUtils.mercatorX(a.longitude);
+        double ay = GeoUtils.mercatorY(a.latitude);
+        double dx = GeoUtils.mercatorX(b.longitude) - ax;
+        double dy = GeoUtils.mercatorY(b.latitude) - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : ((px - ax) * dx + (py - ay) * dy) / lengthSquared;
+        t = Math.max(0, Math.min(1, t));
+        return Math.hypot(px - (ax + t * dx), py - (ay + t * dy));
+    }
+}
@@ -0,0 +1,142 @@
+package com.fuellens.application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class StationCacheTest {
+
+    private static final double LAT = 28.6315;
+    private static final double LNG = 77.2167;
+    private static final long TTL = 60_000;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<FuelStationInfo> stations = Fixtures.scatteredStations(400, LAT, LNG, 12000, 7);
+
+    private StationCache newCache() {
+        return new StationCache(new File(folder.getRoot(), "stations.bin"), 3000, 100000);
+    }
+
+    @Test
+    public void answersTheSearchItStored() {
+        StationCache cache = newCache();
+        cache.put(LAT, LNG, 5000, stations, TTL);
+
+        List<FuelStationInfo> cached = cache.query(LAT, LNG, 5000);
+
+        assertNotNull(cached);
+        assertEquals(StationFilter.sortByDistance(within(5000), LAT, LNG), cached);
+        assertNotNull(cache.query(LAT + 0.01, LNG, 2000));
+    }
+
+    @Test
+    public void searchReachingPastTheCircleGoesToTheNetwork() {
+        StationCache cache = newCache();
+        cache.put(LAT, LNG, 5000, stations, TTL);
+
+        // Still centred inside the circle, but its edge crosses tiles only partly searched
+        assertNull(cache.query(LAT + 0.03, LNG, 2000));
+        assertFalse(cache.covers(LAT + 0.03, LNG, 2000));
+    }
+
+    @Test
+    public void smallSearchDoesNotCoverItsWholeTile() {
+        double tileLat = GeoUtils.tileCenterLat(GeoUtils.tileKey(LAT, LNG));
+        double tileLng = GeoUtils.tileCenterLng(GeoUtils.tileKey(LAT, LNG));
+        assertEquals(0, GeoUtils.tilesCovering(tileLat, tileLng, 300).length);
+
+        StationCache cache = newCache();
+        cache.put(tileLat, tileLng, 300, stations, TTL);
+
+        assertTrue(cache.covers(tileLat, tileLng, 300));
+        assertTrue(cache.covers(tileLat, tileLng, 200));
+        // Same tile, but mostly outside the 300 m that was searched
+        assertFalse(cache.covers(tileLat + 0.004, tileLng, 300));
+    }
+
+    @Test
+    public void edgeTileDoesNotReplaceAFullTile() {
+        StationCache cache = newCache();
+        cache.put(LAT, LNG, 5000, stations, TTL);
+        // A small empty search whose tile the first search covered entirely
+        cache.put(LAT, LNG, 100, Collections.emptyList(), TTL);
+
+        assertEquals(StationFilter.sortByDistance(within(5000), LAT, LNG), cache.query(LAT, LNG, 5000));
+    }
+
+    @Test
+    public void expiredTilesAreNotAnswered() {
+        StationCache cache = newCache();
+        cache.put(LAT, LNG, 5000, stations, -1);
+
+        assertNull(cache.query(LAT, LNG, 5000));
+    }
+
+    @Test
+    public void reloadKeepsEdgeTilesPartial() throws Exception {
+        StationCache cache = newCache();
+        cache.put(LAT, LNG, 5000, stations, TTL);
+        cache.save();
+
+        StationCache reloaded = newCache();
+        reloaded.load();
+
+        // Ratings are stored as floats, so the stations are compared by id
+        assertEquals(placeIds(cache.query(LAT, LNG, 5000)), placeIds(reloaded.query(LAT, LNG, 5000)));
+        assertNull(reloaded.query(LAT + 0.03, LNG, 2000));
+    }
+
+    @Test
+    public void loadKeepsWhatWasStoredWhileItRan() throws Exception {
+        StationCache saved = newCache();
+        saved.put(LAT, LNG, 2000, stations, TTL);
+        saved.save();
+
+        // A search answered before the file has been read
+        StationCache cache = newCache();
+        double otherLat = LAT + 0.04;
+        cache.put(otherLat, LNG, 2000, stations, TTL);
+        cache.load();
+
+        assertNotNull(cache.query(LAT, LNG, 2000));
+        assertEquals(placeIds(saved.query(LAT, LNG, 2000)), placeIds(cache.query(LAT, LNG, 2000)));
+        assertNotNull(cache.query(otherLat, LNG, 2000));
+
+        // The search made before the load has not been written yet
+        cache.save();
+        StationCache reloaded = newCache();
+        reloaded.load();
+        assertNotNull(reloaded.query(otherLat, LNG, 2000));
+        assertNotNull(reloaded.query(LAT, LNG, 2000));
+    }
+
+    private static List<String> placeIds(List<FuelStationInfo> stations) {
+        List<String> placeIds = new ArrayList<>();
+        for (FuelStationInfo station : stations) {
+            placeIds.add(station.placeId);
+        }
+        return placeIds;
+    }
+
+    private List<FuelStationInfo> within(int radiusMeters) {
+        StationFilter.Radius radius = new StationFilter.Radius(LAT, LNG, radiusMeters);
+        List<FuelStationInfo> kept = new ArrayList<>();
+        for (FuelStationInfo station : stations) {
+            if (radius.contains(station.lat, station.lng)) kept.add(station);
+        }
+        return kept;
+    }
+}
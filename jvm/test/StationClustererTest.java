@@ -0,0 +1,141 @@
+package com.fuellens.application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class StationClustererTest {
+
+    private static final double LAT = 28.6315;
+    private static final double LNG = 77.2167;
+
+    private final List<FuelStationInfo> stations = Fixtures.scatteredStations(2000, LAT, LNG, 40000, 3);
+    private final StationClusterer<FuelStationInfo> clusterer = index(stations);
+
+    private static StationClusterer<FuelStationInfo> index(List<FuelStationInfo> stations) {
+        return new StationClusterer<>(stations, station -> station.lat, station -> station.lng);
+    }
+
+    @Test
+    public void everyVisibleStationIsInExactlyOneCluster() {
+        double south = LAT - 0.08;
+        double west = LNG - 0.1;
+        double north = LAT + 0.05;
+        double east = LNG + 0.12;
+
+        for (float zoom : new float[]{3f, 10f, 12.5f, 15f, 21f}) {
+            List<FuelStationInfo> clustered = new ArrayList<>();
+            for (StationClusterer.Cluster<FuelStationInfo> cluster : clusterer.cluster(zoom, south, west, north,
+                    east)) {
+                clustered.addAll(cluster.items);
+            }
+            List<FuelStationInfo> expected = new ArrayList<>();
+            for (FuelStationInfo station : stations) {
+                if (station.lat >= south && station.lat <= north && station.lng >= west && station.lng <= east) {
+                    expected.add(station);
+                }
+            }
+            assertEquals("zoom " + zoom, expected.size(), clustered.size());
+            assertEquals("zoom " + zoom, new HashSet<>(expected), new HashSet<>(clustered));
+        }
+    }
+
+    @Test
+    public void worldViewMatchesTheNarrowQueryPath() {
+        // Far out the index walks its occupied cells instead of every cell in range
+        int total = 0;
+        for (StationClusterer.Cluster<FuelStationInfo> cluster : clusterer.cluster(2f, -85, -180, 85, 180)) {
+            total += cluster.size();
+        }
+        assertEquals(stations.size(), total);
+    }
+
+    @Test
+    public void zoomingOutMergesAndZoomingInSplits() {
+        List<StationClusterer.Cluster<FuelStationInfo>> far = clusterer.cluster(5f, LAT - 1, LNG - 1, LAT + 1,
+                LNG + 1);
+        List<StationClusterer.Cluster<FuelStationInfo>> city = clusterer.cluster(11f, LAT - 1, LNG - 1, LAT + 1,
+                LNG + 1);
+        List<StationClusterer.Cluster<FuelStationInfo>> street = clusterer.cluster(21f, LAT - 1, LNG - 1, LAT + 1,
+                LNG + 1);
+
+        assertEquals(1, far.size());
+        assertTrue(city.size() > 1 && city.size() < stations.size());
+        // A 96 px cell is about 6 m across here at zoom 21; no two of these seeded stations are that close
+        assertEquals(stations.size(), street.size());
+    }
+
+    @Test
+    public void clusterIdsAreStableAcrossPans() {
+        Map<Long, Set<String>> before = membersById(clusterer.cluster(13f, LAT - 0.05, LNG - 0.05, LAT + 0.05,
+                LNG + 0.05));
+        Map<Long, Set<String>> after = membersById(clusterer.cluster(13f, LAT - 0.06, LNG - 0.04, LAT + 0.04,
+                LNG + 0.06));
+
+        int shared = 0;
+        for (Map.Entry<Long, Set<String>> entry : after.entrySet()) {
+            Set<String> previous = before.get(entry.getKey());
+            // Cells fully inside both viewports hold the same stations under the same id
+            if (previous != null && previous.equals(entry.getValue())) shared++;
+        }
+        assertTrue(shared > after.size() / 2);
+    }
+
+    @Test
+    public void clusterSitsAtTheCentreOfItsMembers() {
+        FuelStationInfo a = station("a", LAT, LNG);
+        FuelStationInfo b = station("b", LAT + 0.001, LNG + 0.002);
+        List<StationClusterer.Cluster<FuelStationInfo>> clusters =
+                index(Arrays.asList(a, b)).cluster(10f, LAT - 1, LNG - 1, LAT + 1, LNG + 1);
+
+        assertEquals(1, clusters.size());
+        assertEquals(LAT + 0.0005, clusters.get(0).lat, 1e-6);
+        assertEquals(LNG + 0.001, clusters.get(0).lng, 1e-9);
+    }
+
+    @Test
+    public void viewportAcrossTheAntimeridianFindsBothSides() {
+        FuelStationInfo east = station("east", -17.7, 179.9);
+        FuelStationInfo west = station("west", -17.7, -179.9);
+        List<StationClusterer.Cluster<FuelStationInfo>> clusters =
+                index(Arrays.asList(east, west)).cluster(15f, -18, 179.5, -17.5, -179.5);
+
+        Set<FuelStationInfo> found = new HashSet<>();
+        for (StationClusterer.Cluster<FuelStationInfo> cluster : clusters) {
+            found.addAll(cluster.items);
+        }
+        assertEquals(new HashSet<>(Arrays.asList(east, west)), found);
+    }
+
+    @Test
+    public void emptyIndexGivesNoClusters() {
+        assertEquals(Collections.emptyList(),
+                index(Collections.<FuelStationInfo>emptyList()).cluster(12f, LAT - 1, LNG - 1, LAT + 1, LNG + 1));
+    }
+
+    private static Map<Long, Set<String>> membersById(List<StationClusterer.Cluster<FuelStationInfo>> clusters) {
+        Map<Long, Set<String>> members = new HashMap<>();
+        for (StationClusterer.Cluster<FuelStationInfo> cluster : clusters) {
+            Set<String> placeIds = new HashSet<>();
+            for (FuelStationInfo station : cluster.items) {
+                placeIds.add(station.placeId);
+            }
+            members.put(cluster.id, placeIds);
+        }
+        return members;
+    }
+
+    private static FuelStationInfo station(String placeId, double lat, double lng) {
+        return new FuelStationInfo(placeId, placeId, "", 0, 0, lat, lng);
+    }
+}
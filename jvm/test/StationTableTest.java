@@ -0,0 +1,131 @@
+package com.fuellens.application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class StationTableTest {
+
+    private static final double LAT = 28.6315;
+    private static final double LNG = 77.2167;
+
+    @Test
+    public void rowsReadBackAsTheStationsAdded() throws Exception {
+        StationTable table = new StationTable();
+        List<FuelStationInfo> stations = Fixtures.delhiStations();
+        List<Integer> rows = new ArrayList<>();
+        for (FuelStationInfo station : stations) {
+            rows.add(table.add(station));
+        }
+
+        for (int i = 0; i < stations.size(); i++) {
+            assertEquals(stations.get(i), table.station(rows.get(i)));
+        }
+        assertEquals(stations.size(), table.size());
+    }
+
+    @Test
+    public void sharedStringsArePooledOnce() {
+        StationTable table = new StationTable();
+        table.add(station("a", "Indian Oil", "Karol Bagh"));
+        table.add(station("b", "Indian Oil", "Saket"));
+        table.add(station("c", "Shell", "Saket"));
+
+        assertEquals(4, table.pooledStrings());
+    }
+
+    @Test
+    public void removingTheLastUserDropsAString() {
+        StationTable table = new StationTable();
+        int first = table.add(station("a", "Indian Oil", "Karol Bagh"));
+        int second = table.add(station("b", "Indian Oil", "Saket"));
+
+        table.remove(first);
+        assertEquals(2, table.pooledStrings());
+        assertEquals("Indian Oil", table.name(second));
+
+        table.remove(second);
+        assertEquals(0, table.pooledStrings());
+        assertNull(table.placeId(second));
+    }
+
+    @Test
+    public void poolStaysBoundedUnderChurn() {
+        StationTable table = new StationTable();
+        int[] rows = new int[100];
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < rows.length; i++) {
+                // Every round brings new vicinities, as when the cache moves on to another area
+                rows[i] = table.add(station("p" + round + "-" + i, "Brand " + (i % 5), "Street " + round + "-" + i));
+            }
+            for (int row : rows) {
+                table.remove(row);
+            }
+        }
+        assertEquals(0, table.size());
+        assertEquals(0, table.pooledStrings());
+
+        int row = table.add(station("last", "Shell", "Saket"));
+        assertEquals(new FuelStationInfo("last", "Shell", "Saket", 4.0, 10, LAT, LNG), table.station(row));
+    }
+
+    @Test
+    public void stringNamingAndLocatingAStationIsKeptUntilBothGo() {
+        StationTable table = new StationTable();
+        int row = table.add(station("a", "Sector 5", "Sector 5"));
+        int other = table.add(station("b", "Shell", "Sector 5"));
+
+        table.remove(other);
+        assertEquals("Sector 5", table.name(row));
+        assertEquals("Sector 5", table.vicinity(row));
+        assertEquals(1, table.pooledStrings());
+    }
+
+    @Test
+    public void clearResetsThePool() {
+        StationTable table = new StationTable();
+        table.add(station("a", "Indian Oil", "Karol Bagh"));
+        table.clear();
+        int row = table.add(station("b", "Shell", "Saket"));
+
+        assertEquals(1, table.size());
+        assertEquals(2, table.pooledStrings());
+        assertEquals("Shell", table.name(row));
+        assertEquals("Saket", table.vicinity(row));
+    }
+
+    @Test
+    public void filtersAndSortsRowsNearestFirst() {
+        StationTable table = new StationTable();
+        List<FuelStationInfo> stations = Fixtures.scatteredStations(2000, LAT, LNG, 20000, 3);
+        int[] rows = new int[stations.size()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = table.add(stations.get(i));
+        }
+        StationFilter.Radius radius = new StationFilter.Radius(LAT, LNG, 5000);
+
+        int kept = table.filterWithin(rows, rows.length, radius, rows);
+        double[] distances = new double[kept];
+        table.sortByDistance(rows, kept, LAT, LNG, distances);
+
+        List<FuelStationInfo> expected = new ArrayList<>();
+        for (FuelStationInfo station : stations) {
+            if (radius.contains(station.lat, station.lng)) expected.add(station);
+        }
+        expected = StationFilter.sortByDistance(expected, LAT, LNG);
+        assertEquals(expected.size(), kept);
+        for (int i = 0; i < kept; i++) {
+            assertEquals(expected.get(i), table.station(rows[i]));
+            assertTrue(i == 0 || distances[i - 1] <= distances[i]);
+        }
+    }
+
+    private static FuelStationInfo station(String placeId, String name, String vicinity) {
+        return new FuelStationInfo(placeId, name, vicinity, 4.0, 10, LAT, LNG);
+    }
+}
@@ -0,0 +1,78 @@
+package com.fuellens.application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The rule StationStore.upsertAvailability applies to the rows it holds, through
+ * {@link FuelAvailability#keepNewer}. The store itself needs SQLite, so {@code held} stands in for its
+ * availability table.
+ */
+public class StoredAvailabilityTest {
+
+    private final Map<String, FuelAvailability> held = new HashMap<>();
+
+    private static FuelAvailability availability(FuelAvailability.Level petrol, long version, long updatedAt) {
+        return new FuelAvailability("pump", petrol, FuelAvailability.Level.UNKNOWN, FuelAvailability.Level.UNKNOWN,
+                version, updatedAt);
+    }
+
+    private List<FuelAvailability> store(FuelAvailability... batch) {
+        return FuelAvailability.keepNewer(Arrays.asList(batch), held);
+    }
+
+    @Test
+    public void versionlessPumpKeepsUpdating() {
+        FuelAvailability full = availability(FuelAvailability.Level.FULL, 0, 1000);
+        FuelAvailability empty = availability(FuelAvailability.Level.EMPTY, 0, 2000);
+        FuelAvailability low = availability(FuelAvailability.Level.LOW, 0, 3000);
+
+        assertEquals(Collections.singletonList(full), store(full));
+        assertEquals(Collections.singletonList(empty), store(empty));
+        assertEquals(Collections.singletonList(low), store(low));
+        assertEquals(low, held.get("pump"));
+    }
+
+    @Test
+    public void versionlessPumpIgnoresAnOlderWrite() {
+        store(availability(FuelAvailability.Level.EMPTY, 0, 2000));
+
+        assertTrue(store(availability(FuelAvailability.Level.FULL, 0, 1000)).isEmpty());
+        assertEquals(FuelAvailability.Level.EMPTY, held.get("pump").petrol);
+    }
+
+    @Test
+    public void versionlessPumpWithoutTimeUpdatesWhenItChanges() {
+        store(availability(FuelAvailability.Level.FULL, 0, 0));
+
+        assertTrue(store(availability(FuelAvailability.Level.FULL, 0, 0)).isEmpty());
+        assertEquals(1, store(availability(FuelAvailability.Level.EMPTY, 0, 0)).size());
+        assertEquals(FuelAvailability.Level.EMPTY, held.get("pump").petrol);
+    }
+
+    @Test
+    public void versionsStillDecideWhenBothHaveOne() {
+        store(availability(FuelAvailability.Level.FULL, 5, 1000));
+
+        assertTrue(store(availability(FuelAvailability.Level.EMPTY, 5, 2000)).isEmpty());
+        assertTrue(store(availability(FuelAvailability.Level.EMPTY, 4, 3000)).isEmpty());
+        assertEquals(1, store(availability(FuelAvailability.Level.LOW, 6, 500)).size());
+    }
+
+    @Test
+    public void laterSnapshotsInOneBatchAreComparedWithEarlierOnes() {
+        FuelAvailability newer = availability(FuelAvailability.Level.EMPTY, 0, 2000);
+        FuelAvailability older = availability(FuelAvailability.Level.FULL, 0, 1000);
+
+        assertEquals(Collections.singletonList(newer), store(newer, older));
+        assertEquals(newer, held.get("pump"));
+    }
+}
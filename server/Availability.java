@@ -0,0 +1,60 @@
+package com.fuellens.server;
+
+import java.util.Locale;
+
+/**
+ * Immutable Petrol/Diesel/CNG availability of one pump at a given version. Mirrors the app's
+ * FuelAvailability: versions only grow, and a lower version than the one held is stale.
+ */
+final class Availability {
+
+    static final String UNKNOWN = "UNKNOWN";
+
+    final String placeId;
+    final String petrol;
+    final String diesel;
+    final String cng;
+    final long version;
+    final long updatedAt;
+
+    Availability(String placeId, String petrol, String diesel, String cng, long version, long updatedAt) {
+        this.placeId = placeId;
+        this.petrol = petrol;
+        this.diesel = diesel;
+        this.cng = cng;
+        this.version = version;
+        this.updatedAt = updatedAt;
+    }
+
+    // Same rule as the app: version 0 means none was sent, and such updates are ordered by time instead
+    boolean isNewerThan(Availability other) {
+        if (other == null) return true;
+        if (version > 0 && other.version > 0) return version > other.version;
+        return updatedAt > other.updatedAt;
+    }
+
+    /**
+     * Parses one ingest line: {@code placeId, petrol, diesel, cng, version} separated by tabs, levels being
+     * EMPTY, LOW or FULL. The update time is taken from the server clock.
+     */
+    static Availability parse(String line, long now) {
+        String[] fields = line.split("\t", -1);
+        if (fields.length != 5 || fields[0].isEmpty()) {
+            throw new IllegalArgumentException("Expected placeId, petrol, diesel, cng and version: " + line);
+        }
+        return new Availability(fields[0], level(fields[1]), level(fields[2]), level(fields[3]),
+                Long.parseLong(fields[4]), now);
+    }
+
+    private static String level(String value) {
+        String level = value.toUpperCase(Locale.ROOT);
+        switch (level) {
+            case "EMPTY":
+            case "LOW":
+            case "FULL":
+                return level;
+            default:
+                return UNKNOWN;
+        }
+    }
+}
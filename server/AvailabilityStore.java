@@ -0,0 +1,170 @@
+package com.fuellens.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Latest availability per pump plus a change feed that clients follow with a cursor.
+ *
+ * <p>Accepted updates are appended to a fixed ring of the last {@code feedCapacity} changes, each with a
+ * sequence number that serves as the cursor. A client that asks for changes past its cursor gets only the
+ * pumps it follows, and a client whose cursor has fallen out of the ring gets a fresh snapshot instead.
+ * Waiters are registered per pump, so an update only wakes the clients that follow that pump rather than
+ * every open long poll. Updates with a version no newer than the one held are dropped. Thread-safe.
+ */
+final class AvailabilityStore {
+
+    /** Changes for a set of pumps and the cursor to continue from. */
+    static final class Changes {
+        final List<Availability> changes;
+        final long cursor;
+
+        Changes(List<Availability> changes, long cursor) {
+            this.changes = changes;
+            this.cursor = cursor;
+        }
+    }
+
+    /** Cancels a registered wait; harmless after it has fired. */
+    interface Wait {
+        void cancel();
+    }
+
+    private final ConcurrentHashMap<String, Availability> current = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<Runnable>> waiters = new ConcurrentHashMap<>();
+    private final Set<Runnable> allWaiters = ConcurrentHashMap.newKeySet();
+
+    // Guarded by this
+    private final Availability[] feed;
+    private long nextSequence;
+
+    AvailabilityStore(int feedCapacity) {
+        this.feed = new Availability[feedCapacity];
+    }
+
+    Availability get(String placeId) {
+        return current.get(placeId);
+    }
+
+    /** Applies an update if it is newer than the held one; returns whether it was accepted. */
+    boolean update(Availability availability) {
+        AtomicBoolean accepted = new AtomicBoolean();
+        // Appending inside compute keeps the feed order consistent with the version order of each pump
+        current.compute(availability.placeId, (id, held) -> {
+            if (!availability.isNewerThan(held)) return held;
+            synchronized (this) {
+                feed[(int) (nextSequence % feed.length)] = availability;
+                nextSequence++;
+            }
+            accepted.set(true);
+            return availability;
+        });
+        if (accepted.get()) {
+            wake(waiters.get(availability.placeId));
+            wake(allWaiters);
+        }
+        return accepted.get();
+    }
+
+    synchronized long cursor() {
+        return nextSequence;
+    }
+
+    /**
+     * Current values of the given pumps, or of every pump when {@code placeIds} is empty, with the cursor to
+     * follow changes from. Changes racing with the snapshot may be delivered again later, which versions make
+     * harmless.
+     */
+    Changes snapshot(Collection<String> placeIds) {
+        long cursor = cursor();
+        List<Availability> values = new ArrayList<>();
+        if (placeIds.isEmpty()) {
+            values.addAll(current.values());
+        } else {
+            for (String placeId : placeIds) {
+                Availability availability = current.get(placeId);
+                if (availability != null) values.add(availability);
+            }
+        }
+        return new Changes(values, cursor);
+    }
+
+    /** Changes to the given pumps (all if empty) after the cursor; a snapshot if the cursor is too old or unknown. */
+    Changes since(long cursor, Set<String> placeIds) {
+        List<Availability> changes = new ArrayList<>();
+        long next;
+        synchronized (this) {
+            next = nextSequence;
+            // A cursor from before a server restart can be ahead of the feed; it gets a snapshot too
+            if (cursor >= 0 && cursor <= next && next - cursor <= feed.length) {
+                for (long sequence = cursor; sequence < next; sequence++) {
+                    Availability change = feed[(int) (sequence % feed.length)];
+                    if (placeIds.isEmpty() || placeIds.contains(change.placeId)) {
+                        changes.add(change);
+                    }
+                }
+                return new Changes(changes, next);
+            }
+        }
+        return snapshot(placeIds);
+    }
+
+    /** Runs {@code wake} once, on the updating thread, after any of the given pumps (or any pump) changes. */
+    Wait await(Set<String> placeIds, Runnable wake) {
+        AtomicBoolean fired = new AtomicBoolean();
+        Runnable once = new Runnable() {
+            @Override
+            public void run() {
+                if (fired.compareAndSet(false, true)) {
+                    unregister(placeIds, this);
+                    wake.run();
+                }
+            }
+        };
+        if (placeIds.isEmpty()) {
+            allWaiters.add(once);
+        } else {
+            for (String placeId : placeIds) {
+                // Adding inside compute, so the set cannot be dropped as empty between lookup and add
+                waiters.compute(placeId, (id, set) -> {
+                    Set<Runnable> registered = set != null ? set : ConcurrentHashMap.<Runnable>newKeySet();
+                    registered.add(once);
+                    return registered;
+                });
+            }
+        }
+        return () -> {
+            if (fired.compareAndSet(false, true)) {
+                unregister(placeIds, once);
+            }
+        };
+    }
+
+    private void unregister(Set<String> placeIds, Runnable waiter) {
+        if (placeIds.isEmpty()) {
+            allWaiters.remove(waiter);
+            return;
+        }
+        for (String placeId : placeIds) {
+            waiters.computeIfPresent(placeId, (id, set) -> {
+                set.remove(waiter);
+                return set.isEmpty() ? null : set;
+            });
+        }
+    }
+
+    private static void wake(Set<Runnable> toWake) {
+        if (toWake == null) return;
+        for (Runnable waiter : toWake.toArray(new Runnable[0])) {
+            waiter.run();
+        }
+    }
+
+    int size() {
+        return current.size();
+    }
+}
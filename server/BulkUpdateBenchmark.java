@@ -0,0 +1,149 @@
+package com.fuellens.server;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Throughput test for bulk admin updates through {@code POST /availability}. Starts a server in-process and
+ * runs {@code admins} closed-loop writers that each post batches of {@code batchSize} random pumps, the way
+ * the app's admin mode does. Every writer sends the version it last saw plus one, so writers that pick the
+ * same pump in overlapping batches produce real conflicts. From the conflicts it gets back, a writer learns
+ * the held versions, just as the app would. It prints batch latency and how many updates per second were
+ * stored or rejected.
+ *
+ * <p>Usage: {@code BulkUpdateBenchmark [admins=4] [batchSize=500] [seconds=10] [pumps=20000]}.
+ */
+public final class BulkUpdateBenchmark {
+
+    private static final String[] LEVELS = {"EMPTY", "LOW", "FULL"};
+    private static final Pattern ACCEPTED = Pattern.compile("\"accepted\":(\\d+)");
+    private static final Pattern CONFLICT = Pattern.compile("\"placeId\":\"([^\"]+)\"[^}]*\"version\":(\\d+)");
+
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final String baseUrl;
+    private final int pumps;
+    private final int batchSize;
+    private final LoadGenerator.LatencyRecorder batches = new LoadGenerator.LatencyRecorder();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile boolean running = true;
+
+    private BulkUpdateBenchmark(String baseUrl, int pumps, int batchSize) {
+        this.baseUrl = baseUrl;
+        this.pumps = pumps;
+        this.batchSize = batchSize;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int admins = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int pumpCount = args.length > 3 ? Integer.parseInt(args[3]) : 20000;
+
+        AvailabilityStore availability = new AvailabilityStore(PumpServer.FEED_CAPACITY);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < pumpCount; i++) {
+            availability.update(new Availability(placeId(i), "FULL", "FULL", "FULL", 1, now));
+        }
+        PumpServer server = new PumpServer(new InetSocketAddress("127.0.0.1", 0), new PumpIndex(), availability);
+        server.start();
+        BulkUpdateBenchmark benchmark = new BulkUpdateBenchmark("http://127.0.0.1:" + server.port(), pumpCount,
+                batchSize);
+        System.out.printf(Locale.ROOT, "%d pumps, %d admins posting %d updates per batch for %d s%n",
+                pumpCount, admins, batchSize, seconds);
+
+        Thread[] threads = new Thread[admins];
+        for (int i = 0; i < admins; i++) {
+            threads[i] = new Thread(benchmark::runAdmin, "admin-" + i);
+            threads[i].start();
+        }
+        long start = System.nanoTime();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        benchmark.running = false;
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        System.out.println("batches   " + benchmark.batches.summary(elapsed));
+        System.out.printf(Locale.ROOT, "stored    %d (%.0f/s)%n", benchmark.accepted.get(),
+                benchmark.accepted.get() / elapsed);
+        System.out.printf(Locale.ROOT, "conflicts %d (%.2f%% of updates)%n", benchmark.conflicts.get(),
+                100.0 * benchmark.conflicts.get() / Math.max(1, benchmark.accepted.get() + benchmark.conflicts.get()));
+        System.out.println("errors    " + benchmark.errors.get());
+        server.stop();
+    }
+
+    private static String placeId(int i) {
+        return "pump-" + i;
+    }
+
+    // One admin: posts a batch, learns versions from the answer, and posts the next straight away
+    private void runAdmin() {
+        // Version this admin last saw per pump; everything starts at the seeded version 1
+        Map<String, Long> seen = new HashMap<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (running) {
+            Set<String> ids = new LinkedHashSet<>();
+            while (ids.size() < Math.min(batchSize, pumps)) {
+                ids.add(placeId(random.nextInt(pumps)));
+            }
+            StringBuilder body = new StringBuilder();
+            for (String id : ids) {
+                body.append(id).append('\t')
+                        .append(LEVELS[random.nextInt(3)]).append('\t')
+                        .append(LEVELS[random.nextInt(3)]).append('\t')
+                        .append(LEVELS[random.nextInt(3)]).append('\t')
+                        .append(seen.getOrDefault(id, 1L) + 1).append('\n');
+            }
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/availability"))
+                    .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                    .build();
+
+            long sentAt = System.nanoTime();
+            String response;
+            try {
+                HttpResponse<String> answer = http.send(request, HttpResponse.BodyHandlers.ofString());
+                if (answer.statusCode() != 200) {
+                    errors.incrementAndGet();
+                    continue;
+                }
+                response = answer.body();
+            } catch (Exception e) {
+                errors.incrementAndGet();
+                continue;
+            }
+            if (!running) break;
+            batches.record(System.nanoTime() - sentAt);
+
+            for (String id : ids) {
+                seen.merge(id, 2L, (held, two) -> held + 1);
+            }
+            Matcher stored = ACCEPTED.matcher(response);
+            if (stored.find()) accepted.addAndGet(Long.parseLong(stored.group(1)));
+            Matcher conflict = CONFLICT.matcher(response);
+            while (conflict.find()) {
+                conflicts.incrementAndGet();
+                seen.put(conflict.group(1), Long.parseLong(conflict.group(2)));
+            }
+        }
+    }
+}
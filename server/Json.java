@@ -0,0 +1,71 @@
+package com.fuellens.server;
+
+/**
+ * Minimal JSON output for the handful of response shapes the server produces, appended straight into one
+ * StringBuilder per response.
+ */
+final class Json {
+
+    private Json() {
+    }
+
+    static void string(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    static void pump(StringBuilder out, Pump pump, Availability availability) {
+        out.append("{\"placeId\":");
+        string(out, pump.placeId);
+        out.append(",\"name\":");
+        string(out, pump.name);
+        out.append(",\"vicinity\":");
+        string(out, pump.vicinity);
+        out.append(",\"rating\":").append(pump.rating)
+                .append(",\"userRatingsTotal\":").append(pump.userRatingsTotal)
+                .append(",\"lat\":").append(pump.lat)
+                .append(",\"lng\":").append(pump.lng);
+        if (availability != null) {
+            out.append(",\"availability\":");
+            availability(out, availability);
+        }
+        out.append('}');
+    }
+
+    static void availability(StringBuilder out, Availability availability) {
+        out.append("{\"placeId\":");
+        string(out, availability.placeId);
+        out.append(",\"petrol\":\"").append(availability.petrol)
+                .append("\",\"diesel\":\"").append(availability.diesel)
+                .append("\",\"cng\":\"").append(availability.cng)
+                .append("\",\"version\":").append(availability.version)
+                .append(",\"updatedAt\":").append(availability.updatedAt)
+                .append('}');
+    }
+}
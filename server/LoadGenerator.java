@@ -0,0 +1,276 @@
+package com.fuellens.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Load test for {@link PumpServer}: starts a server in-process on a free port, or targets the one at
+ * {@code baseUrl}, seeds it with pumps spread over one degree of a city, and then for a fixed duration runs
+ * <ul>
+ *   <li>{@code clients} closed-loop searchers, each sending {@code GET /pumps} with a 5 km radius at a
+ *   random point as soon as its previous answer arrives, so that many requests are always in flight;</li>
+ *   <li>{@code followers} long-polling clients, each following the 30 pumps nearest a random point;</li>
+ *   <li>one admin posting availability updates for random pumps at {@code updatesPerSecond}.</li>
+ * </ul>
+ * It prints throughput and p50/p95/p99/max of search latency and of the delay between an update being
+ * accepted and a follower receiving it.
+ *
+ * <p>Usage: {@code LoadGenerator [clients=2000] [followers=1000] [seconds=20] [pumps=20000]
+ * [updatesPerSecond=200] [baseUrl]}. A remote server should be freshly started, since the seed posts
+ * availability at version 1. Raise the open file limit first when going past a few thousand clients.
+ */
+public final class LoadGenerator {
+
+    private static final double CENTER_LAT = 28.6;
+    private static final double CENTER_LNG = 77.2;
+    private static final double SPREAD_DEGREES = 1.0;
+    private static final int SEARCH_RADIUS_METERS = 5000;
+    private static final int FOLLOWED_PUMPS = 30;
+    private static final int SEED_BATCH = 5000;
+    private static final String[] LEVELS = {"EMPTY", "LOW", "FULL"};
+
+    private static final Pattern CURSOR = Pattern.compile("\"cursor\":(\\d+)");
+    private static final Pattern UPDATED_AT = Pattern.compile("\"updatedAt\":(\\d+)");
+    private static final Pattern PLACE_ID = Pattern.compile("\"placeId\":\"([^\"]+)\"");
+
+    /** Collects samples in milliseconds; percentiles are exact since every sample is kept. */
+    static final class LatencyRecorder {
+        private long[] micros = new long[1 << 16];
+        private int count;
+
+        synchronized void record(long nanos) {
+            if (count == micros.length) micros = Arrays.copyOf(micros, count * 2);
+            micros[count++] = nanos / 1000;
+        }
+
+        synchronized String summary(double seconds) {
+            long[] sorted = Arrays.copyOf(micros, count);
+            Arrays.sort(sorted);
+            return String.format(Locale.ROOT, "n=%d (%.0f/s) p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms",
+                    count, count / seconds, percentile(sorted, 0.50), percentile(sorted, 0.95),
+                    percentile(sorted, 0.99), count == 0 ? 0 : sorted[count - 1] / 1000.0);
+        }
+
+        private static double percentile(long[] sorted, double quantile) {
+            if (sorted.length == 0) return 0;
+            return sorted[(int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1)] / 1000.0;
+        }
+    }
+
+    private final HttpClient http;
+    private final String baseUrl;
+    private final int pumps;
+    private final LatencyRecorder searches = new LatencyRecorder();
+    private final LatencyRecorder deliveries = new LatencyRecorder();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile boolean running = true;
+
+    private LoadGenerator(String baseUrl, int pumps) {
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newFixedThreadPool(4))
+                .build();
+        this.baseUrl = baseUrl;
+        this.pumps = pumps;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int followers = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int pumpCount = args.length > 3 ? Integer.parseInt(args[3]) : 20000;
+        int updatesPerSecond = args.length > 4 ? Integer.parseInt(args[4]) : 200;
+
+        String target = args.length > 5 ? args[5] : null;
+
+        List<Pump> seedPumps = new ArrayList<>(pumpCount);
+        List<Availability> seedAvailability = new ArrayList<>(pumpCount);
+        Random random = new Random(42);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < pumpCount; i++) {
+            seedPumps.add(new Pump(placeId(i), "Pump " + i, "Sector " + (i % 100), 3 + random.nextInt(20) / 10.0,
+                    random.nextInt(500), CENTER_LAT + (random.nextDouble() - 0.5) * SPREAD_DEGREES,
+                    CENTER_LNG + (random.nextDouble() - 0.5) * SPREAD_DEGREES));
+            seedAvailability.add(new Availability(placeId(i), LEVELS[random.nextInt(3)], LEVELS[random.nextInt(3)],
+                    LEVELS[random.nextInt(3)], 1, now));
+        }
+
+        PumpServer server = null;
+        LoadGenerator generator;
+        if (target == null) {
+            PumpIndex index = new PumpIndex();
+            AvailabilityStore availability = new AvailabilityStore(PumpServer.FEED_CAPACITY);
+            for (int i = 0; i < pumpCount; i++) {
+                index.put(seedPumps.get(i));
+                availability.update(seedAvailability.get(i));
+            }
+            server = new PumpServer(new InetSocketAddress("127.0.0.1", 0), index, availability);
+            server.start();
+            generator = new LoadGenerator("http://127.0.0.1:" + server.port(), pumpCount);
+        } else {
+            generator = new LoadGenerator(target.endsWith("/") ? target.substring(0, target.length() - 1) : target,
+                    pumpCount);
+            generator.seed(seedPumps, seedAvailability);
+        }
+        System.out.printf(Locale.ROOT, "%d pumps, %d searchers, %d followers, %d updates/s for %d s%n",
+                pumpCount, clients, followers, updatesPerSecond, seconds);
+
+        for (int i = 0; i < followers; i++) {
+            generator.startFollower();
+        }
+        for (int i = 0; i < clients; i++) {
+            generator.search();
+        }
+        ScheduledExecutorService admin = Executors.newSingleThreadScheduledExecutor();
+        long[] version = {1};
+        admin.scheduleAtFixedRate(() -> generator.postUpdates(updatesPerSecond / 10, ++version[0]),
+                100, 100, TimeUnit.MILLISECONDS);
+
+        long start = System.nanoTime();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        generator.running = false;
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        admin.shutdownNow();
+
+        System.out.println("search   " + generator.searches.summary(elapsed));
+        System.out.println("delivery " + generator.deliveries.summary(elapsed));
+        System.out.println("errors   " + generator.errors.get());
+        if (server != null) server.stop();
+        System.exit(0);
+    }
+
+    // Posts the seed in batches, the same way an admin tool would load a fresh server
+    private void seed(List<Pump> seedPumps, List<Availability> seedAvailability)
+            throws IOException, InterruptedException {
+        for (int start = 0; start < seedPumps.size(); start += SEED_BATCH) {
+            StringBuilder pumpLines = new StringBuilder();
+            StringBuilder availabilityLines = new StringBuilder();
+            for (int i = start; i < Math.min(seedPumps.size(), start + SEED_BATCH); i++) {
+                Pump pump = seedPumps.get(i);
+                pumpLines.append(String.format(Locale.ROOT, "%s\t%.6f\t%.6f\t%s\t%s\t%.1f\t%d%n", pump.placeId,
+                        pump.lat, pump.lng, pump.name, pump.vicinity, pump.rating, pump.userRatingsTotal));
+                Availability state = seedAvailability.get(i);
+                availabilityLines.append(state.placeId).append('\t').append(state.petrol).append('\t')
+                        .append(state.diesel).append('\t').append(state.cng).append('\t')
+                        .append(state.version).append('\n');
+            }
+            post("/pumps", pumpLines.toString());
+            post("/availability", availabilityLines.toString());
+        }
+    }
+
+    private void post(String path, String body) throws IOException, InterruptedException {
+        HttpResponse<String> response = http.send(HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("POST " + path + " failed with " + response.statusCode() + ": " + response.body());
+        }
+    }
+
+    private static String placeId(int i) {
+        return "pump-" + i;
+    }
+
+    private static double randomLat() {
+        return CENTER_LAT + (ThreadLocalRandom.current().nextDouble() - 0.5) * SPREAD_DEGREES;
+    }
+
+    private static double randomLng() {
+        return CENTER_LNG + (ThreadLocalRandom.current().nextDouble() - 0.5) * SPREAD_DEGREES;
+    }
+
+    private void search() {
+        if (!running) return;
+        HttpRequest request = HttpRequest.newBuilder(URI.create(String.format(Locale.ROOT,
+                        "%s/pumps?lat=%.5f&lng=%.5f&radius=%d", baseUrl, randomLat(), randomLng(),
+                        SEARCH_RADIUS_METERS)))
+                .header("Accept-Encoding", "gzip")
+                .build();
+        long sentAt = System.nanoTime();
+        http.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()).whenComplete((response, error) -> {
+            if (error != null || response.statusCode() != 200) {
+                errors.incrementAndGet();
+            } else if (running) {
+                searches.record(System.nanoTime() - sentAt);
+            }
+            search();
+        });
+    }
+
+    // Finds the pumps nearest a random point, then follows them from a snapshot onwards
+    private void startFollower() throws IOException, InterruptedException {
+        HttpRequest nearby = HttpRequest.newBuilder(URI.create(String.format(Locale.ROOT,
+                "%s/pumps?lat=%.5f&lng=%.5f&radius=%d&limit=%d", baseUrl, randomLat(), randomLng(),
+                SEARCH_RADIUS_METERS, FOLLOWED_PUMPS))).build();
+        Matcher ids = PLACE_ID.matcher(http.send(nearby, HttpResponse.BodyHandlers.ofString()).body());
+        StringBuilder followed = new StringBuilder();
+        while (ids.find()) {
+            // Each pump object carries its id twice, once more inside its availability
+            String id = ids.group(1);
+            if (followed.indexOf(id + ",") < 0) followed.append(id).append(',');
+        }
+        follow(followed.toString(), -1);
+    }
+
+    private void follow(String ids, long cursor) {
+        if (!running) return;
+        String url = baseUrl + "/availability?ids=" + ids + (cursor < 0 ? "" : "&cursor=" + cursor);
+        http.sendAsync(HttpRequest.newBuilder(URI.create(url)).build(), HttpResponse.BodyHandlers.ofString())
+                .whenComplete((response, error) -> {
+                    if (error != null || response.statusCode() != 200) {
+                        errors.incrementAndGet();
+                        if (running) follow(ids, -1);
+                        return;
+                    }
+                    String body = response.body();
+                    // The snapshot that starts a follow is not a delivery
+                    if (cursor >= 0) {
+                        long receivedAt = System.currentTimeMillis();
+                        Matcher updatedAt = UPDATED_AT.matcher(body);
+                        while (updatedAt.find()) {
+                            deliveries.record(TimeUnit.MILLISECONDS.toNanos(
+                                    receivedAt - Long.parseLong(updatedAt.group(1))));
+                        }
+                    }
+                    Matcher next = CURSOR.matcher(body);
+                    follow(ids, next.find() ? Long.parseLong(next.group(1)) : -1);
+                });
+    }
+
+    private void postUpdates(int count, long version) {
+        StringBuilder body = new StringBuilder();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < count; i++) {
+            body.append(placeId(random.nextInt(pumps))).append('\t')
+                    .append(LEVELS[random.nextInt(3)]).append('\t')
+                    .append(LEVELS[random.nextInt(3)]).append('\t')
+                    .append(LEVELS[random.nextInt(3)]).append('\t')
+                    .append(version).append('\n');
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/availability"))
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .build();
+        http.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+            if (error != null || response.statusCode() != 200) errors.incrementAndGet();
+        });
+    }
+}
@@ -0,0 +1,49 @@
+package com.fuellens.server;
+
+/**
+ * Immutable location and details of one pump, keyed by its Places place id so the app can merge server
+ * results with its own Places data.
+ */
+final class Pump {
+
+    final String placeId;
+    final String name;
+    final String vicinity;
+    final double rating;
+    final int userRatingsTotal;
+    final double lat;
+    final double lng;
+
+    Pump(String placeId, String name, String vicinity, double rating, int userRatingsTotal,
+         double lat, double lng) {
+        this.placeId = placeId;
+        this.name = name;
+        this.vicinity = vicinity;
+        this.rating = rating;
+        this.userRatingsTotal = userRatingsTotal;
+        this.lat = lat;
+        this.lng = lng;
+    }
+
+    /**
+     * Parses one ingest line: {@code placeId, lat, lng, name, vicinity, rating, userRatingsTotal}
+     * separated by tabs. Everything after the coordinates is optional.
+     */
+    static Pump parse(String line) {
+        String[] fields = line.split("\t", -1);
+        if (fields.length < 3 || fields[0].isEmpty()) {
+            throw new IllegalArgumentException("Expected placeId, lat and lng: " + line);
+        }
+        double lat = Double.parseDouble(fields[1]);
+        double lng = Double.parseDouble(fields[2]);
+        if (Math.abs(lat) > 90 || Math.abs(lng) > 180) {
+            throw new IllegalArgumentException("Coordinates out of range: " + line);
+        }
+        return new Pump(fields[0],
+                fields.length > 3 ? fields[3] : "",
+                fields.length > 4 ? fields[4] : "",
+                fields.length > 5 && !fields[5].isEmpty() ? Double.parseDouble(fields[5]) : 0,
+                fields.length > 6 && !fields[6].isEmpty() ? Integer.parseInt(fields[6]) : 0,
+                lat, lng);
+    }
+}
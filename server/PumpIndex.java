@@ -0,0 +1,148 @@
+package com.fuellens.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory geospatial index of pumps on a fixed grid of {@value #CELL_DEGREES} degree cells, the same
+ * tiling the app uses for its station cache.
+ *
+ * <p>Each cell holds an immutable array that writers replace inside {@link ConcurrentHashMap#compute}, so
+ * updates lock only the bin of the cell they touch and never block readers: a query reads whichever array
+ * is current for each cell without taking any lock. Writes to the same pump are serialised on its id, so a
+ * pump that moves is never left in two cells. Thread-safe.
+ */
+final class PumpIndex {
+
+    static final double CELL_DEGREES = 0.01;
+
+    private static final double EARTH_RADIUS_METERS = 6371000.0;
+    private static final double METERS_PER_DEGREE_LAT = 111320.0;
+    private static final int COLUMNS = (int) Math.round(360 / CELL_DEGREES);
+    private static final Pump[] EMPTY = new Pump[0];
+
+    /** A pump found by a query and its distance from the query point. */
+    static final class Hit {
+        final Pump pump;
+        final double distanceMeters;
+
+        Hit(Pump pump, double distanceMeters) {
+            this.pump = pump;
+            this.distanceMeters = distanceMeters;
+        }
+    }
+
+    private final ConcurrentHashMap<Long, Pump[]> cells = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Pump> byId = new ConcurrentHashMap<>();
+
+    /** Adds a pump or replaces the one with the same place id, moving it between cells if needed. */
+    void put(Pump pump) {
+        byId.compute(pump.placeId, (id, previous) -> {
+            long cell = cellKey(pump.lat, pump.lng);
+            if (previous != null && cellKey(previous.lat, previous.lng) != cell) {
+                cells.computeIfPresent(cellKey(previous.lat, previous.lng), (key, pumps) -> without(pumps, id));
+            }
+            cells.compute(cell, (key, pumps) -> with(pumps == null ? EMPTY : pumps, pump));
+            return pump;
+        });
+    }
+
+    void remove(String placeId) {
+        byId.computeIfPresent(placeId, (id, previous) -> {
+            cells.computeIfPresent(cellKey(previous.lat, previous.lng), (key, pumps) -> without(pumps, id));
+            return null;
+        });
+    }
+
+    Pump get(String placeId) {
+        return byId.get(placeId);
+    }
+
+    int size() {
+        return byId.size();
+    }
+
+    /** Returns at most {@code limit} pumps within the radius, nearest first. */
+    List<Hit> query(double lat, double lng, double radiusMeters, int limit) {
+        double latSpan = radiusMeters / METERS_PER_DEGREE_LAT;
+        double lngSpan = radiusMeters / (METERS_PER_DEGREE_LAT * Math.max(0.01, Math.cos(Math.toRadians(lat))));
+        int minRow = row(Math.max(-90, lat - latSpan));
+        int maxRow = row(Math.min(90, lat + latSpan));
+        int minColumn = column(lng - lngSpan);
+        // Never visit a column twice when the box is wider than the world
+        int maxColumn = Math.min(column(lng + lngSpan), minColumn + COLUMNS - 1);
+
+        List<Hit> hits = new ArrayList<>();
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                Pump[] pumps = cells.get(cellKey(row, column));
+                if (pumps == null) continue;
+                for (Pump pump : pumps) {
+                    double distance = distanceMeters(lat, lng, pump.lat, pump.lng);
+                    if (distance <= radiusMeters) {
+                        hits.add(new Hit(pump, distance));
+                    }
+                }
+            }
+        }
+        hits.sort(Comparator.comparingDouble(hit -> hit.distanceMeters));
+        return hits.size() > limit ? new ArrayList<>(hits.subList(0, limit)) : hits;
+    }
+
+    private static Pump[] with(Pump[] pumps, Pump pump) {
+        for (int i = 0; i < pumps.length; i++) {
+            if (pumps[i].placeId.equals(pump.placeId)) {
+                Pump[] replaced = pumps.clone();
+                replaced[i] = pump;
+                return replaced;
+            }
+        }
+        Pump[] added = Arrays.copyOf(pumps, pumps.length + 1);
+        added[pumps.length] = pump;
+        return added;
+    }
+
+    // Returns null once the cell is empty, which removes it from the map
+    private static Pump[] without(Pump[] pumps, String placeId) {
+        for (int i = 0; i < pumps.length; i++) {
+            if (pumps[i].placeId.equals(placeId)) {
+                if (pumps.length == 1) return null;
+                Pump[] removed = new Pump[pumps.length - 1];
+                System.arraycopy(pumps, 0, removed, 0, i);
+                System.arraycopy(pumps, i + 1, removed, i, pumps.length - i - 1);
+                return removed;
+            }
+        }
+        return pumps;
+    }
+
+    private static int row(double lat) {
+        return (int) Math.floor(lat / CELL_DEGREES);
+    }
+
+    private static int column(double lng) {
+        return (int) Math.floor(lng / CELL_DEGREES);
+    }
+
+    // Columns wrap at the antimeridian, so a query box crossing it reads cells from both sides
+    private static long cellKey(int row, int column) {
+        int wrapped = Math.floorMod(column + COLUMNS / 2, COLUMNS) - COLUMNS / 2;
+        return ((long) row << 32) | (wrapped & 0xFFFFFFFFL);
+    }
+
+    private static long cellKey(double lat, double lng) {
+        return cellKey(row(lat), column(lng));
+    }
+
+    private static double distanceMeters(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+}
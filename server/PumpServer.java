@@ -0,0 +1,312 @@
+package com.fuellens.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * HTTP front end of the pump aggregation service. Runs on the JDK's built-in server with no outside
+ * dependencies.
+ *
+ * <ul>
+ *   <li>{@code GET /pumps?lat&lng&radius[&limit]} returns pumps within the radius, nearest first, each with
+ *   its current availability.</li>
+ *   <li>{@code GET /availability?ids[&cursor][&wait]} follows availability changes. Without a cursor it
+ *   answers at once with the current values of the comma separated place ids (all pumps if omitted). With
+ *   a cursor it long-polls for up to {@code wait} milliseconds until one of them changes. Every response
+ *   carries the cursor for the next request.</li>
+ *   <li>{@code POST /pumps} and {@code POST /availability} ingest tab separated lines, see
+ *   {@link Pump#parse} and {@link Availability#parse}. An availability line whose version is not newer than
+ *   the held one is rejected, and the held value is returned in {@code conflicts}, so a writer that sends
+ *   the version it saw plus one cannot overwrite a change it has not seen.</li>
+ * </ul>
+ *
+ * <p>Waiting polls hold no thread: a poll parks its exchange with the {@link AvailabilityStore} and is
+ * resumed on the worker pool when a followed pump changes or the wait runs out, so thousands of clients
+ * can follow changes at once. Clients that accept {@value WireFormat#CONTENT_TYPE} get the compact
+ * {@link WireFormat} instead of JSON. Responses over {@value #GZIP_MIN_BYTES} bytes are gzipped for clients
+ * that accept it.
+ */
+public final class PumpServer {
+
+    static final int DEFAULT_PORT = 8080;
+    static final int MAX_RADIUS_METERS = 50000;
+    static final int DEFAULT_LIMIT = 60;
+    static final int MAX_LIMIT = 500;
+    // Below the app's 15 s read timeout
+    static final long MAX_WAIT_MS = 10000;
+    static final int FEED_CAPACITY = 1 << 16;
+
+    private static final int GZIP_MIN_BYTES = 1024;
+    private static final int BACKLOG = 4096;
+
+    private final PumpIndex index;
+    private final AvailabilityStore availability;
+    private final HttpServer server;
+    private final ExecutorService workers;
+    private final ScheduledThreadPoolExecutor timeouts;
+
+    PumpServer(InetSocketAddress address, PumpIndex index, AvailabilityStore availability) throws IOException {
+        this.index = index;
+        this.availability = availability;
+        this.workers = Executors.newFixedThreadPool(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+        this.timeouts = new ScheduledThreadPoolExecutor(1);
+        this.timeouts.setRemoveOnCancelPolicy(true);
+
+        server = HttpServer.create(address, BACKLOG);
+        server.setExecutor(workers);
+        server.createContext("/pumps", this::handlePumps);
+        server.createContext("/availability", this::handleAvailability);
+    }
+
+    void start() {
+        server.start();
+    }
+
+    void stop() {
+        server.stop(0);
+        timeouts.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    private void handlePumps(HttpExchange exchange) throws IOException {
+        try {
+            if ("POST".equals(exchange.getRequestMethod())) {
+                int accepted = 0;
+                for (String line : readLines(exchange)) {
+                    index.put(Pump.parse(line));
+                    accepted++;
+                }
+                respond(exchange, 200, "{\"accepted\":" + accepted + "}");
+                return;
+            }
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "{\"error\":\"GET or POST only\"}");
+                return;
+            }
+
+            Map<String, String> query = query(exchange);
+            double lat = Double.parseDouble(required(query, "lat"));
+            double lng = Double.parseDouble(required(query, "lng"));
+            double radius = Math.min(MAX_RADIUS_METERS, Double.parseDouble(required(query, "radius")));
+            int limit = query.containsKey("limit")
+                    ? Math.min(MAX_LIMIT, Integer.parseInt(query.get("limit"))) : DEFAULT_LIMIT;
+
+            List<PumpIndex.Hit> hits = index.query(lat, lng, radius, limit);
+            if (WireFormat.accepts(exchange.getRequestHeaders().getFirst("Accept"))) {
+                respond(exchange, 200, WireFormat.encodePumps(lat, lng, hits, availability), WireFormat.CONTENT_TYPE);
+                return;
+            }
+            StringBuilder out = new StringBuilder(64 + hits.size() * 256);
+            out.append("{\"pumps\":[");
+            for (int i = 0; i < hits.size(); i++) {
+                if (i > 0) out.append(',');
+                Pump pump = hits.get(i).pump;
+                Json.pump(out, pump, availability.get(pump.placeId));
+            }
+            out.append("]}");
+            respond(exchange, 200, out);
+        } catch (IllegalArgumentException e) {
+            respondError(exchange, e);
+        }
+    }
+
+    private void handleAvailability(HttpExchange exchange) throws IOException {
+        try {
+            if ("POST".equals(exchange.getRequestMethod())) {
+                long now = System.currentTimeMillis();
+                // Parse everything first so a malformed line rejects the whole batch
+                List<Availability> updates = new ArrayList<>();
+                for (String line : readLines(exchange)) {
+                    updates.add(Availability.parse(line, now));
+                }
+                int accepted = 0;
+                StringBuilder conflicts = new StringBuilder();
+                for (Availability update : updates) {
+                    if (availability.update(update)) {
+                        accepted++;
+                        continue;
+                    }
+                    // The held version is at least as new; the writer needs it to resolve its edit
+                    if (conflicts.length() > 0) conflicts.append(',');
+                    Json.availability(conflicts, availability.get(update.placeId));
+                }
+                respond(exchange, 200, "{\"accepted\":" + accepted + ",\"conflicts\":[" + conflicts + "]}");
+                return;
+            }
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "{\"error\":\"GET or POST only\"}");
+                return;
+            }
+
+            Map<String, String> query = query(exchange);
+            Set<String> ids = query.containsKey("ids")
+                    ? new LinkedHashSet<>(Arrays.asList(query.get("ids").split(","))) : Collections.emptySet();
+            ids.remove("");
+            if (!query.containsKey("cursor")) {
+                respondChanges(exchange, ids, availability.snapshot(ids));
+                return;
+            }
+            long cursor = Long.parseLong(query.get("cursor"));
+            long waitMillis = query.containsKey("wait")
+                    ? Math.max(0, Math.min(MAX_WAIT_MS, Long.parseLong(query.get("wait")))) : MAX_WAIT_MS;
+            poll(exchange, ids, cursor, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis));
+        } catch (IllegalArgumentException e) {
+            respondError(exchange, e);
+        }
+    }
+
+    // Answers once there are changes for the ids or the deadline has passed; otherwise parks the exchange
+    private void poll(HttpExchange exchange, Set<String> ids, long cursor, long deadline) {
+        AvailabilityStore.Changes changes = availability.since(cursor, ids);
+        long remaining = deadline - System.nanoTime();
+        if (!changes.changes.isEmpty() || remaining <= 0) {
+            respondChanges(exchange, ids, changes);
+            return;
+        }
+
+        AtomicBoolean resumed = new AtomicBoolean();
+        ScheduledFuture<?>[] timeout = new ScheduledFuture<?>[1];
+        Runnable resume = () -> {
+            if (!resumed.compareAndSet(false, true)) return;
+            if (timeout[0] != null) timeout[0].cancel(false);
+            workers.execute(() -> poll(exchange, ids, changes.cursor, deadline));
+        };
+        AvailabilityStore.Wait wait = availability.await(ids, resume);
+        timeout[0] = timeouts.schedule(() -> {
+            wait.cancel();
+            resume.run();
+        }, remaining, TimeUnit.NANOSECONDS);
+        // An update between since() and await() would not have woken this poll
+        if (availability.cursor() != changes.cursor) {
+            wait.cancel();
+            resume.run();
+        }
+    }
+
+    private void respondChanges(HttpExchange exchange, Set<String> ids, AvailabilityStore.Changes changes) {
+        try {
+            if (WireFormat.accepts(exchange.getRequestHeaders().getFirst("Accept"))) {
+                respond(exchange, 200, WireFormat.encodeChanges(changes, new ArrayList<>(ids)),
+                        WireFormat.CONTENT_TYPE);
+                return;
+            }
+            StringBuilder out = new StringBuilder(64 + changes.changes.size() * 128);
+            out.append("{\"cursor\":").append(changes.cursor).append(",\"changes\":[");
+            for (int i = 0; i < changes.changes.size(); i++) {
+                if (i > 0) out.append(',');
+                Json.availability(out, changes.changes.get(i));
+            }
+            out.append("]}");
+            respond(exchange, 200, out);
+        } catch (IOException e) {
+            // The client went away while waiting
+            exchange.close();
+        }
+    }
+
+    private static void respondError(HttpExchange exchange, IllegalArgumentException error) throws IOException {
+        StringBuilder out = new StringBuilder("{\"error\":");
+        Json.string(out, String.valueOf(error.getMessage()));
+        respond(exchange, 400, out.append('}'));
+    }
+
+    private static void respond(HttpExchange exchange, int status, CharSequence json) throws IOException {
+        respond(exchange, status, json.toString().getBytes(StandardCharsets.UTF_8), "application/json; charset=utf-8");
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body, String contentType)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        try (OutputStream out = exchange.getResponseBody()) {
+            if (body.length >= GZIP_MIN_BYTES && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                exchange.sendResponseHeaders(status, 0);
+                try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                    gzip.write(body);
+                }
+            } else {
+                exchange.sendResponseHeaders(status, body.length);
+                out.write(body);
+            }
+        }
+    }
+
+    private static List<String> readLines(HttpExchange exchange) throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+            List<String> lines = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty() && !line.startsWith("#")) lines.add(line);
+            }
+            return lines;
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) return params;
+        for (String pair : raw.split("&")) {
+            int split = pair.indexOf('=');
+            if (split <= 0) continue;
+            params.put(URLDecoder.decode(pair.substring(0, split), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(split + 1), StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static String required(Map<String, String> query, String name) {
+        String value = query.get(name);
+        if (value == null) throw new IllegalArgumentException("Missing parameter " + name);
+        return value;
+    }
+
+    /** Usage: {@code PumpServer [port] [pumps.tsv]}; the optional file is ingested like {@code POST /pumps}. */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        PumpIndex index = new PumpIndex();
+        if (args.length > 1) {
+            Path seed = Paths.get(args[1]);
+            for (String line : Files.readAllLines(seed, StandardCharsets.UTF_8)) {
+                if (!line.isEmpty() && !line.startsWith("#")) index.put(Pump.parse(line));
+            }
+        }
+
+        PumpServer server = new PumpServer(new InetSocketAddress(port), index, new AvailabilityStore(FEED_CAPACITY));
+        server.start();
+        System.out.println("Serving " + index.size() + " pumps on port " + server.port());
+    }
+}
@@ -0,0 +1,198 @@
+package com.fuellens.server;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of {@code /pumps} and {@code /availability} responses, sent to clients whose
+ * Accept header names {@value #CONTENT_TYPE}. The app's PumpWireDecoder reads it back.
+ *
+ * <p>All integers are big-endian; "varint" is unsigned LEB128 and "svarint" a zigzag varint. Strings are
+ * a varint byte length followed by UTF-8. Every message starts with 'F', 'L', {@value #VERSION} and a kind.
+ * <ul>
+ *   <li>{@link #KIND_PUMPS}: int32 centre lat and lng in microdegrees, int64 base update time, varint count
+ *   and the strings of a dictionary holding every name and vicinity once, varint pump count, then per pump
+ *   its place id string, svarint lat and lng offsets from the centre in microdegrees, varint name and
+ *   vicinity dictionary indexes, a byte of rating tenths, varint rating count, a fuel status byte and, if
+ *   its top bit is set, varint version and svarint update time offset from the base.</li>
+ *   <li>{@link #KIND_CHANGES}: varint cursor, int64 base update time, varint change count, then per change
+ *   a varint reference to the request's ids (position plus one, or 0 followed by the place id string), the
+ *   fuel status byte, varint version and svarint update time offset.</li>
+ * </ul>
+ * The fuel status byte packs petrol, diesel and CNG as two bits each from the low end, 0 unknown, 1 empty,
+ * 2 low, 3 full; bit 7 marks that availability is known.
+ */
+final class WireFormat {
+
+    static final String CONTENT_TYPE = "application/x-fuellens-wire";
+    static final int VERSION = 1;
+    static final int KIND_PUMPS = 1;
+    static final int KIND_CHANGES = 2;
+
+    private static final int HAS_AVAILABILITY = 0x80;
+
+    private WireFormat() {
+    }
+
+    static boolean accepts(String acceptHeader) {
+        return acceptHeader != null && acceptHeader.contains(CONTENT_TYPE);
+    }
+
+    static byte[] encodePumps(double centerLat, double centerLng, List<PumpIndex.Hit> hits,
+                              AvailabilityStore availability) {
+        int size = hits.size();
+        Availability[] known = new Availability[size];
+        long baseUpdatedAt = 0;
+        Map<String, Integer> dictionary = new HashMap<>();
+        Output strings = new Output(size * 16);
+        int[] nameIndexes = new int[size];
+        int[] vicinityIndexes = new int[size];
+        for (int i = 0; i < size; i++) {
+            Pump pump = hits.get(i).pump;
+            known[i] = availability.get(pump.placeId);
+            if (known[i] != null) baseUpdatedAt = Math.max(baseUpdatedAt, known[i].updatedAt);
+            nameIndexes[i] = intern(dictionary, strings, pump.name);
+            vicinityIndexes[i] = intern(dictionary, strings, pump.vicinity);
+        }
+
+        int centerLatE6 = microdegrees(centerLat);
+        int centerLngE6 = microdegrees(centerLng);
+        Output out = new Output(64 + strings.size() + size * 48);
+        out.header(KIND_PUMPS);
+        out.int32(centerLatE6);
+        out.int32(centerLngE6);
+        out.int64(baseUpdatedAt);
+        out.varint(dictionary.size());
+        out.write(strings.toByteArray(), 0, strings.size());
+        out.varint(size);
+        for (int i = 0; i < size; i++) {
+            Pump pump = hits.get(i).pump;
+            out.string(pump.placeId);
+            out.svarint(microdegrees(pump.lat) - centerLatE6);
+            out.svarint(microdegrees(pump.lng) - centerLngE6);
+            out.varint(nameIndexes[i]);
+            out.varint(vicinityIndexes[i]);
+            out.write((int) Math.round(Math.max(0, Math.min(5, pump.rating)) * 10));
+            out.varint(pump.userRatingsTotal);
+            if (known[i] == null) {
+                out.write(0);
+            } else {
+                out.write(status(known[i]));
+                out.varint(known[i].version);
+                out.svarint(known[i].updatedAt - baseUpdatedAt);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /** Encodes changes, referring to pumps by their position in {@code requestedIds} where possible. */
+    static byte[] encodeChanges(AvailabilityStore.Changes changes, List<String> requestedIds) {
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < requestedIds.size(); i++) {
+            positions.put(requestedIds.get(i), i);
+        }
+        long baseUpdatedAt = 0;
+        for (Availability change : changes.changes) {
+            baseUpdatedAt = Math.max(baseUpdatedAt, change.updatedAt);
+        }
+
+        Output out = new Output(32 + changes.changes.size() * 16);
+        out.header(KIND_CHANGES);
+        out.varint(changes.cursor);
+        out.int64(baseUpdatedAt);
+        out.varint(changes.changes.size());
+        for (Availability change : changes.changes) {
+            Integer position = positions.get(change.placeId);
+            if (position != null) {
+                out.varint(position + 1);
+            } else {
+                out.varint(0);
+                out.string(change.placeId);
+            }
+            out.write(status(change));
+            out.varint(change.version);
+            out.svarint(change.updatedAt - baseUpdatedAt);
+        }
+        return out.toByteArray();
+    }
+
+    private static int intern(Map<String, Integer> dictionary, Output strings, String value) {
+        Integer index = dictionary.get(value);
+        if (index == null) {
+            index = dictionary.size();
+            dictionary.put(value, index);
+            strings.string(value);
+        }
+        return index;
+    }
+
+    private static int microdegrees(double degrees) {
+        return (int) Math.round(degrees * 1e6);
+    }
+
+    private static int status(Availability availability) {
+        return HAS_AVAILABILITY | level(availability.petrol) | level(availability.diesel) << 2
+                | level(availability.cng) << 4;
+    }
+
+    private static int level(String level) {
+        switch (level) {
+            case "EMPTY":
+                return 1;
+            case "LOW":
+                return 2;
+            case "FULL":
+                return 3;
+            default:
+                return 0;
+        }
+    }
+
+    /** Growable byte buffer with the primitive writers of the format. */
+    private static final class Output extends ByteArrayOutputStream {
+
+        Output(int capacity) {
+            super(capacity);
+        }
+
+        void header(int kind) {
+            write('F');
+            write('L');
+            write(VERSION);
+            write(kind);
+        }
+
+        void int32(int value) {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+
+        void int64(long value) {
+            int32((int) (value >>> 32));
+            int32((int) value);
+        }
+
+        void varint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void svarint(long value) {
+            varint((value << 1) ^ (value >> 63));
+        }
+
+        void string(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+    }
+}
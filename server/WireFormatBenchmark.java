@@ -0,0 +1,133 @@
+package com.fuellens.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compares JSON and {@link WireFormat} responses: bytes on the wire, raw and gzipped, and encode time for
+ * a typical 5 km {@code /pumps} answer and a change poll.
+ *
+ * <p>Decode time is measured where the decoder lives: {@code jvm/run.sh WireDecodeBenchmark} times the
+ * app's JSON and wire decoders on one recorded answer, and the "http.pumps.parse" histogram that ApiClient
+ * records gives the figure on a real device.
+ *
+ * <p>Usage: {@code WireFormatBenchmark [pumpsPerResponse=60] [changesPerPoll=30]}.
+ */
+public final class WireFormatBenchmark {
+
+    private static final String[] BRANDS = {"Indian Oil", "Bharat Petroleum", "HP Petrol Pump", "Shell",
+            "Nayara Energy", "Jio-bp", "IndianOil COCO Outlet", "Essar"};
+    private static final String[] LEVELS = {"EMPTY", "LOW", "FULL"};
+    private static final String PLACE_ID_CHARS =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+    private static final int ITERATIONS = 20000;
+
+    public static void main(String[] args) throws IOException {
+        int pumpCount = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+        int changeCount = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+
+        Random random = new Random(7);
+        PumpIndex index = new PumpIndex();
+        AvailabilityStore availability = new AvailabilityStore(PumpServer.FEED_CAPACITY);
+        List<String> ids = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < pumpCount; i++) {
+            String placeId = placeId(random);
+            ids.add(placeId);
+            index.put(new Pump(placeId, BRANDS[random.nextInt(BRANDS.length)],
+                    "Sector " + random.nextInt(20) + ", New Delhi", 3 + random.nextInt(20) / 10.0,
+                    random.nextInt(2000), 28.6 + (random.nextDouble() - 0.5) * 0.08,
+                    77.2 + (random.nextDouble() - 0.5) * 0.08));
+            // Most pumps have had a report in the last hour
+            if (random.nextInt(10) < 8) {
+                availability.update(new Availability(placeId, LEVELS[random.nextInt(3)], LEVELS[random.nextInt(3)],
+                        LEVELS[random.nextInt(3)], 1 + random.nextInt(500), now - random.nextInt(3600000)));
+            }
+        }
+        List<PumpIndex.Hit> hits = index.query(28.6, 77.2, 5000, pumpCount);
+
+        long cursor = availability.cursor();
+        for (int i = 0; i < changeCount; i++) {
+            availability.update(new Availability(ids.get(i % ids.size()), LEVELS[random.nextInt(3)],
+                    LEVELS[random.nextInt(3)], LEVELS[random.nextInt(3)], 1000 + i, now + i));
+        }
+        AvailabilityStore.Changes changes = availability.since(cursor, new HashSet<>(ids));
+
+        System.out.printf(Locale.ROOT, "/pumps with %d pumps%n", hits.size());
+        compare(() -> pumpsJson(hits, availability), () -> WireFormat.encodePumps(28.6, 77.2, hits, availability));
+        System.out.printf(Locale.ROOT, "/availability poll with %d changes%n", changes.changes.size());
+        compare(() -> changesJson(changes), () -> WireFormat.encodeChanges(changes, ids));
+    }
+
+    private interface Encoder {
+        byte[] encode();
+    }
+
+    private static void compare(Encoder json, Encoder binary) throws IOException {
+        byte[] jsonBytes = json.encode();
+        byte[] binaryBytes = binary.encode();
+        System.out.printf(Locale.ROOT, "  json   %6d B, gzip %6d B, encode %6.1f us%n",
+                jsonBytes.length, gzip(jsonBytes), encodeMicros(json));
+        System.out.printf(Locale.ROOT, "  binary %6d B, gzip %6d B, encode %6.1f us (%.1fx smaller gzipped)%n",
+                binaryBytes.length, gzip(binaryBytes), encodeMicros(binary),
+                gzip(jsonBytes) / (double) gzip(binaryBytes));
+    }
+
+    private static double encodeMicros(Encoder encoder) {
+        long sink = 0;
+        // First pass warms up the JIT
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += encoder.encode().length;
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += encoder.encode().length;
+        }
+        double micros = (System.nanoTime() - start) / 1e3 / ITERATIONS;
+        return sink == 0 ? -1 : micros;
+    }
+
+    private static int gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.size();
+    }
+
+    // The same bodies PumpServer writes for JSON clients
+    private static byte[] pumpsJson(List<PumpIndex.Hit> hits, AvailabilityStore availability) {
+        StringBuilder out = new StringBuilder("{\"pumps\":[");
+        for (int i = 0; i < hits.size(); i++) {
+            if (i > 0) out.append(',');
+            Pump pump = hits.get(i).pump;
+            Json.pump(out, pump, availability.get(pump.placeId));
+        }
+        return out.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] changesJson(AvailabilityStore.Changes changes) {
+        StringBuilder out = new StringBuilder("{\"cursor\":").append(changes.cursor).append(",\"changes\":[");
+        for (int i = 0; i < changes.changes.size(); i++) {
+            if (i > 0) out.append(',');
+            Json.availability(out, changes.changes.get(i));
+        }
+        return out.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Shaped like a real place id: "ChIJ" and 23 base64url characters
+    private static String placeId(Random random) {
+        StringBuilder id = new StringBuilder("ChIJ");
+        for (int i = 0; i < 23; i++) {
+            id.append(PLACE_ID_CHARS.charAt(random.nextInt(PLACE_ID_CHARS.length())));
+        }
+        return id.toString();
+    }
+}
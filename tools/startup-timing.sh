@@ -0,0 +1,67 @@
+#!/bin/sh
+# Cold-start timing of the installed app on a connected device or emulator, for comparing builds until
+# a Macrobenchmark module exists. Each run force-stops the app, starts MainActivity and records:
+#
+#   initial display  TotalTime from `am start -W`, the time to the first frame (TTID)
+#   fully drawn      the "Fully drawn" logcat line; the app reports it once the first stations are on the
+#                    map or a search found none (TTFD)
+#
+#   tools/startup-timing.sh [runs=20] [package=com.fuellens.application]
+#
+# Fully drawn depends on location and network, so give the emulator a fixed location and keep the
+# network steady between the builds being compared. Debug builds also write their own spans, including
+# fetch.to_first_marker, to files/perf/metrics.txt when the app is stopped.
+set -e
+
+runs=${1:-20}
+package=${2:-com.fuellens.application}
+component="$package/.MainActivity"
+results=$(mktemp)
+trap 'rm -f "$results"' EXIT
+
+# "+1s234ms" or "+850ms" to milliseconds
+to_millis() {
+    echo "$1" | sed 's/^+//' | awk '{
+        ms = 0
+        if (match($0, /[0-9]+s/)) ms += substr($0, RSTART, RLENGTH - 1) * 1000
+        if (match($0, /[0-9]+ms/)) ms += substr($0, RSTART, RLENGTH - 2)
+        print ms
+    }'
+}
+
+run=1
+while [ "$run" -le "$runs" ]; do
+    adb shell am force-stop "$package"
+    adb logcat -c
+    initial=$(adb shell am start -S -W -n "$component" | tr -d '\r' | awk -F': ' '/^TotalTime/ {print $2}')
+
+    fully=""
+    waited=0
+    while [ -z "$fully" ] && [ "$waited" -lt 30 ]; do
+        sleep 1
+        waited=$((waited + 1))
+        line=$(adb logcat -d | tr -d '\r' | grep "Fully drawn $component" | tail -n 1 || true)
+        if [ -n "$line" ]; then
+            fully=$(to_millis "$(echo "$line" | sed 's/.*: //' | awk '{print $1}')")
+        fi
+    done
+    if [ -z "$fully" ]; then
+        echo "run $run: initial display ${initial} ms, not fully drawn within 30 s" >&2
+    else
+        echo "run $run: initial display ${initial} ms, fully drawn ${fully} ms"
+        echo "$initial $fully" >> "$results"
+    fi
+    run=$((run + 1))
+done
+
+# The first launch after an install also compiles and warms caches, so it is left out of the summary
+for column in 1 2; do
+    label=$([ "$column" -eq 1 ] && echo "initial display" || echo "fully drawn")
+    tail -n +2 "$results" | awk -v c="$column" '{print $c}' | sort -n | awk -v label="$label" '
+        { v[NR] = $1 }
+        END {
+            if (NR == 0) { print label ": no runs"; exit }
+            printf "%-16s n=%d  p50=%d ms  p90=%d ms  max=%d ms\n", label, NR,
+                v[int((NR - 1) * 0.5 + 0.5) + 1], v[int((NR - 1) * 0.9 + 0.5) + 1], v[NR]
+        }'
+done